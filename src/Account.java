@@ -2,12 +2,12 @@ import java.io.Serializable;
 
 public class Account implements Serializable {
     private String accountNumber;
-    private double balance;
+    private long balance; // đơn vị nhỏ, xem Money
     
     public Account() {
     }
     
-    public Account(String accountNumber, double balance) {
+    public Account(String accountNumber, long balance) {
         this.accountNumber = accountNumber;
         this.balance = balance;
     }
@@ -20,11 +20,11 @@ public class Account implements Serializable {
         this.accountNumber = accountNumber;
     }
     
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
     
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
     
@@ -32,7 +32,7 @@ public class Account implements Serializable {
     public String toString() {
         return "Account{" +
                 "accountNumber='" + accountNumber + '\'' +
-                ", balance=" + balance +
+                ", balance=" + Money.toDouble(balance) +
                 '}';
     }
 }
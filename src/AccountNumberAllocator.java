@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cấp số tài khoản mới, không dùng khóa trên đường cấp số thông thường.
+ *
+ * Số được cấp theo khối: trước khi dùng khối tiếp theo, mốc cao nhất (high-water mark) của khối
+ * được ghi vào journal (bản ghi Reservation). Khi khởi động lại, việc cấp số bắt đầu từ mốc đã
+ * ghi, nên số đã cấp (kể cả trong khối đang dùng dở lúc server sập) không bao giờ bị cấp lại,
+ * và mỗi lần đăng ký không phải ghi đĩa chỉ để tăng bộ đếm.
+ *
+ * Mỗi server trong cụm được cấu hình một khoảng [rangeStart, rangeEnd) riêng, không giao nhau,
+ * nên các server cấp số độc lập mà không trùng.
+ */
+public class AccountNumberAllocator {
+    /**
+     * Bản ghi journal: mọi số tài khoản nhỏ hơn highWaterMark đã có thể được cấp
+     */
+    public static class Reservation {
+        final long highWaterMark;
+
+        public Reservation(long highWaterMark) {
+            this.highWaterMark = highWaterMark;
+        }
+
+        public long getHighWaterMark() {
+            return highWaterMark;
+        }
+    }
+
+    /**
+     * Ghi bền vững một khối mới trước khi dùng
+     */
+    public interface Reserver {
+        void reserve(Reservation reservation) throws IOException;
+    }
+
+    private final long rangeEnd;
+    private final int blockSize;
+    private final Reserver reserver;
+    private final AtomicLong next;
+    private volatile long reservedUpTo; // các số nhỏ hơn giá trị này đã được ghi nhận, dùng được ngay
+
+    /**
+     * @param highWaterMark mốc đã ghi nhận trước đó (từ checkpoint/journal)
+     * @param rangeStart số đầu tiên của khoảng dành cho server này
+     * @param rangeEnd số cuối (không bao gồm) của khoảng
+     * @param blockSize số lượng số tài khoản ghi nhận mỗi lần ghi journal
+     */
+    public AccountNumberAllocator(long highWaterMark, long rangeStart, long rangeEnd, int blockSize, Reserver reserver) {
+        if (rangeStart < 0 || rangeEnd <= rangeStart) {
+            throw new IllegalArgumentException("Khoảng số tài khoản không hợp lệ: " + rangeStart + "-" + rangeEnd);
+        }
+        long start = Math.max(rangeStart, highWaterMark);
+        this.next = new AtomicLong(start);
+        this.reservedUpTo = start;
+        this.rangeEnd = rangeEnd;
+        this.blockSize = Math.max(1, blockSize);
+        this.reserver = reserver;
+    }
+
+    /**
+     * Cấp một số tài khoản chưa từng được cấp
+     * @throws IOException nếu không ghi được khối mới hoặc đã hết số trong khoảng
+     */
+    public long allocate() throws IOException {
+        long number = next.getAndIncrement();
+        if (number < reservedUpTo) {
+            return number;
+        }
+        return reserveFor(number);
+    }
+
+    /**
+     * Ghi nhận khối mới chứa number (chỉ một luồng ghi, các luồng khác chờ khối này)
+     */
+    private synchronized long reserveFor(long number) throws IOException {
+        if (number < reservedUpTo) {
+            return number;
+        }
+        if (number >= rangeEnd) {
+            throw new IOException("Đã hết số tài khoản trong khoảng được cấp (đến " + rangeEnd + ")");
+        }
+        long highWaterMark = Math.min(rangeEnd, Math.max(number + 1, reservedUpTo + blockSize));
+        reserver.reserve(new Reservation(highWaterMark));
+        reservedUpTo = highWaterMark;
+        return number;
+    }
+
+    /**
+     * Mốc đã ghi nhận (các số nhỏ hơn có thể đã được cấp)
+     */
+    public long getReservedUpTo() {
+        return reservedUpTo;
+    }
+}
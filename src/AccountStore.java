@@ -0,0 +1,432 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Kho tài khoản lưu trên file ánh xạ bộ nhớ (memory-mapped), thay cho việc ghi lại
+ * toàn bộ accounts.json sau mỗi lần thay đổi số dư.
+ *
+ * Mỗi tài khoản nằm trong một slot cố định 32 byte (bảng băm địa chỉ mở):
+ *   [số tài khoản 16 byte][số dư 8 byte, đơn vị nhỏ - xem Money][version 8 byte]
+ * Nạp/rút/chuyển khoản chỉ cập nhật tại chỗ các slot liên quan, nên chi phí ghi
+ * không phụ thuộc vào tổng số tài khoản và heap không phải giữ toàn bộ tài khoản.
+ *
+ * Số dư được cập nhật bằng compare-and-swap trực tiếp trên vùng nhớ ánh xạ, không có khóa
+ * theo tài khoản: kiểm tra số dư đủ và trừ tiền là một thao tác nguyên tử. Các thao tác số dư
+ * vẫn giữ khóa đọc dùng chung (StampedLock) để bảng không bị thay thế giữa chừng, nên không phải
+ * lock-free; chỉ khi thêm tài khoản (có thể phải mở rộng bảng và ánh xạ lại file) mới cần khóa ghi độc quyền.
+ * Version của slot là bộ đếm số lần thay đổi, tăng ngay sau mỗi lần cập nhật số dư.
+ *
+ * Việc ghi xuống đĩa (flush) tách khỏi thao tác cập nhật: độ bền dữ liệu do journal
+ * đảm bảo, file này được dựng lại từ checkpoint + journal khi khởi động.
+ */
+public class AccountStore {
+    private static final int MAGIC = 0x524D4153; // "RMAS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int KEY_SIZE = 16;
+    private static final int BALANCE_OFFSET = 16;
+    private static final int VERSION_OFFSET = 24;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+    // Lũy thừa của 2 lớn nhất để vị trí slot (HEADER_SIZE + slot * SLOT_SIZE, kiểu int) không tràn
+    // và file nằm trong giới hạn 2GB của MappedByteBuffer: 2^25 slot, khoảng 1GB
+    private static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE);
+
+    /** Giá trị trả về khi tài khoản không tồn tại */
+    public static final long NO_ACCOUNT = Long.MIN_VALUE;
+    /** Giá trị trả về khi số dư không đủ để trừ */
+    public static final long INSUFFICIENT_FUNDS = Long.MIN_VALUE + 1;
+
+    // Truy cập long nguyên tử trên ByteBuffer (các offset số dư/version đều chia hết cho 8)
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final File file;
+    private final StampedLock tableLock = new StampedLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    public AccountStore(File file) throws IOException {
+        this.file = file;
+        open(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Mở file, tạo mới với dung lượng cho trước nếu file chưa tồn tại
+     */
+    private void open(int initialCapacity) throws IOException {
+        boolean exists = file.exists() && file.length() >= HEADER_SIZE;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("File " + file.getName() + " không phải kho tài khoản hợp lệ");
+            }
+            int version = header.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Không hỗ trợ phiên bản kho tài khoản: " + version);
+            }
+            capacity = header.getInt(8);
+            size = header.getInt(12);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        } else {
+            capacity = initialCapacity;
+            size = 0;
+            channel.truncate(0);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, size);
+        }
+    }
+
+    public int size() {
+        long stamp = tableLock.readLock();
+        try {
+            return size;
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    public boolean contains(String accountNumber) {
+        long stamp = tableLock.readLock();
+        try {
+            return findSlot(accountNumber) >= 0;
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Lấy bản sao thông tin tài khoản, null nếu không tồn tại
+     */
+    public Account get(String accountNumber) {
+        long balance = getBalance(accountNumber);
+        return balance == NO_ACCOUNT ? null : new Account(accountNumber, balance);
+    }
+
+    /**
+     * Số dư hiện tại (đơn vị nhỏ), NO_ACCOUNT nếu tài khoản không tồn tại
+     */
+    public long getBalance(String accountNumber) {
+        long stamp = tableLock.readLock();
+        try {
+            int slot = findSlot(accountNumber);
+            if (slot < 0) {
+                return NO_ACCOUNT;
+            }
+            return (long) LONGS.getVolatile(buffer, slotOffset(slot) + BALANCE_OFFSET);
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    public long getVersion(String accountNumber) {
+        long stamp = tableLock.readLock();
+        try {
+            int slot = findSlot(accountNumber);
+            return slot < 0 ? -1 : (long) LONGS.getVolatile(buffer, slotOffset(slot) + VERSION_OFFSET);
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Tạo tài khoản mới (hoặc ghi đè nếu đã tồn tại)
+     */
+    public void put(String accountNumber, long balance) throws IOException {
+        byte[] key = encodeKey(accountNumber);
+        long stamp = tableLock.writeLock();
+        try {
+            int slot = findSlot(key);
+            if (slot < 0) {
+                if (size + 1 > capacity * MAX_LOAD) {
+                    grow();
+                }
+                slot = insertSlot(key);
+                size++;
+                buffer.putInt(12, size);
+            }
+            int offset = slotOffset(slot);
+            buffer.putLong(offset + BALANCE_OFFSET, balance);
+            buffer.putLong(offset + VERSION_OFFSET, buffer.getLong(offset + VERSION_OFFSET) + 1);
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Cộng nguyên tử vào số dư (nạp tiền, nhận chuyển khoản, replay journal)
+     * @return số dư mới, NO_ACCOUNT nếu tài khoản không tồn tại
+     * @throws ArithmeticException nếu số dư vượt quá phạm vi long (số dư không bị thay đổi)
+     */
+    public long addBalance(String accountNumber, long delta) {
+        long stamp = tableLock.readLock();
+        try {
+            int slot = findSlot(accountNumber);
+            if (slot < 0) {
+                return NO_ACCOUNT;
+            }
+            int offset = slotOffset(slot);
+            MappedByteBuffer buf = buffer;
+            long current;
+            long updated;
+            do {
+                current = (long) LONGS.getVolatile(buf, offset + BALANCE_OFFSET);
+                updated = Math.addExact(current, delta);
+            } while (!LONGS.compareAndSet(buf, offset + BALANCE_OFFSET, current, updated));
+            LONGS.getAndAdd(buf, offset + VERSION_OFFSET, 1L);
+            return updated;
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Trừ nguyên tử khỏi số dư nếu số dư đủ (rút tiền, chuyển khoản đi)
+     * @return số dư mới, NO_ACCOUNT nếu tài khoản không tồn tại,
+     *         INSUFFICIENT_FUNDS nếu số dư nhỏ hơn amount (số dư không bị thay đổi)
+     */
+    public long withdraw(String accountNumber, long amount) {
+        long stamp = tableLock.readLock();
+        try {
+            int slot = findSlot(accountNumber);
+            if (slot < 0) {
+                return NO_ACCOUNT;
+            }
+            int offset = slotOffset(slot);
+            MappedByteBuffer buf = buffer;
+            long current;
+            do {
+                current = (long) LONGS.getVolatile(buf, offset + BALANCE_OFFSET);
+                if (current < amount) {
+                    return INSUFFICIENT_FUNDS;
+                }
+            } while (!LONGS.compareAndSet(buf, offset + BALANCE_OFFSET, current, current - amount));
+            LONGS.getAndAdd(buf, offset + VERSION_OFFSET, 1L);
+            return current - amount;
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Ghi các trang đã thay đổi xuống đĩa
+     */
+    public void flush() {
+        long stamp = tableLock.readLock();
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    public void close() {
+        long stamp = tableLock.writeLock();
+        try {
+            closeLocked();
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+    }
+
+    private void closeLocked() {
+        if (channel != null) {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Lỗi đóng kho tài khoản: " + e.getMessage());
+            }
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Sao chép file kho tài khoản (file nguồn phải đã được đóng hoặc flush)
+     */
+    public static void copy(File source, File target) throws IOException {
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Tìm slot theo số tài khoản. Số tài khoản ASCII (trường hợp thường gặp) được băm và so sánh
+     * trực tiếp trên chuỗi, không tạo mảng byte cho mỗi lần tra cứu
+     */
+    private int findSlot(String accountNumber) {
+        if (accountNumber == null || accountNumber.isEmpty() || accountNumber.length() > KEY_SIZE) {
+            return -1;
+        }
+        int h = 0;
+        for (int i = 0; i < accountNumber.length(); i++) {
+            char c = accountNumber.charAt(i);
+            if (c == 0 || c >= 0x80) {
+                return findSlot(lookupKey(accountNumber));
+            }
+            h = 31 * h + c;
+        }
+        int mask = capacity - 1;
+        int slot = (h ^ (h >>> 16)) & mask;
+        for (int i = 0; i < capacity; i++) {
+            int offset = slotOffset(slot);
+            if (buffer.get(offset) == 0) {
+                return -1;
+            }
+            if (keyEquals(offset, accountNumber)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int findSlot(byte[] key) {
+        if (key == null) {
+            return -1;
+        }
+        int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        for (int i = 0; i < capacity; i++) {
+            int offset = slotOffset(slot);
+            if (buffer.get(offset) == 0) {
+                return -1;
+            }
+            if (keyEquals(offset, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insertSlot(byte[] key) {
+        int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        while (buffer.get(slotOffset(slot)) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        int offset = slotOffset(slot);
+        for (int i = 0; i < KEY_SIZE; i++) {
+            buffer.put(offset + i, i < key.length ? key[i] : 0);
+        }
+        buffer.putLong(offset + BALANCE_OFFSET, 0);
+        buffer.putLong(offset + VERSION_OFFSET, 0);
+        return slot;
+    }
+
+    /**
+     * Tăng gấp đôi dung lượng: băm lại toàn bộ slot sang file mới rồi thay thế file cũ
+     */
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IOException("Kho tài khoản đã đầy (" + size + " tài khoản)");
+        }
+        File resized = new File(file.getPath() + ".resize");
+        Files.deleteIfExists(resized.toPath());
+        AccountStore target = new AccountStore(resized, capacity * 2);
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = slotOffset(slot);
+            if (buffer.get(offset) == 0) {
+                continue;
+            }
+            byte[] key = new byte[KEY_SIZE];
+            for (int i = 0; i < KEY_SIZE; i++) {
+                key[i] = buffer.get(offset + i);
+            }
+            int newOffset = target.slotOffset(target.insertSlot(trimKey(key)));
+            target.buffer.putLong(newOffset + BALANCE_OFFSET, buffer.getLong(offset + BALANCE_OFFSET));
+            target.buffer.putLong(newOffset + VERSION_OFFSET, buffer.getLong(offset + VERSION_OFFSET));
+        }
+        target.size = size;
+        target.buffer.putInt(12, size);
+        target.close();
+        closeLocked();
+        Files.move(resized.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open(DEFAULT_CAPACITY);
+    }
+
+    private AccountStore(File file, int initialCapacity) throws IOException {
+        this.file = file;
+        open(initialCapacity);
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        for (int i = 0; i < KEY_SIZE; i++) {
+            byte expected = i < key.length ? key[i] : 0;
+            if (buffer.get(offset + i) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keyEquals(int offset, String asciiKey) {
+        for (int i = 0; i < KEY_SIZE; i++) {
+            byte expected = i < asciiKey.length() ? (byte) asciiKey.charAt(i) : 0;
+            if (buffer.get(offset + i) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static byte[] trimKey(byte[] key) {
+        int length = 0;
+        while (length < key.length && key[length] != 0) {
+            length++;
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(key, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    /**
+     * Khóa dùng để tìm kiếm, null nếu số tài khoản không thể tồn tại trong kho
+     */
+    private static byte[] lookupKey(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        byte[] key = accountNumber.getBytes(StandardCharsets.UTF_8);
+        return key.length == 0 || key.length > KEY_SIZE ? null : key;
+    }
+
+    private static byte[] encodeKey(String accountNumber) {
+        byte[] key = accountNumber.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0 || key.length > KEY_SIZE) {
+            throw new IllegalArgumentException("Số tài khoản không hợp lệ: " + accountNumber);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,184 @@
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phía client: gửi thao tác bất đồng bộ (submitAsync) và nhận kết quả dưới dạng CompletableFuture.
+ *
+ * - Mỗi lời gọi chỉ chờ server nhận thao tác, không chờ thực hiện xong, nên một kết nối có thể
+ *   giữ nhiều thao tác đang chạy cùng lúc mà không cần thêm luồng.
+ * - Kết quả đến qua callback. Thao tác chờ quá pollMillis (client không nhận được callback,
+ *   hoặc callback bị bỏ khi server quá tải) được hỏi lại bằng getOperationStatus.
+ * - Server không còn biết thao tác (đã khởi động lại hoặc client đã chuyển server) thì future
+ *   kết thúc với lỗi: thao tác có thể đã được thực hiện, cần xem lại số dư và lịch sử.
+ */
+public class AsyncBankingClient {
+    // Kết quả đến trước khi submitAsync trả mã nhưng không có ai nhận (lời gọi bị lỗi) được bỏ sau khoảng này
+    private static final long ORPHAN_MILLIS = 60000;
+    
+    /**
+     * Một thao tác đã gửi. Callback có thể đến trước khi submitAsync trả mã thao tác,
+     * nên cả hai phía đều tạo entry nếu chưa có
+     */
+    private static class Pending {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final long createdAt = System.currentTimeMillis();
+        volatile boolean claimed; // submit đã nhận mã thao tác và trả future cho người gọi
+        long lastPolledAt;
+    }
+    
+    private class ResultCallback extends UnicastRemoteObject implements BankingOperationCallback {
+        ResultCallback() throws RemoteException {
+            super();
+        }
+        
+        @Override
+        public void operationsCompleted(List<OperationStatus> results) throws RemoteException {
+            for (OperationStatus status : results) {
+                complete(status.getOperationId(), status.getResult());
+            }
+        }
+    }
+    
+    private final BankingService service;
+    private final long pollMillis;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>(); // operationId -> thao tác
+    private final ResultCallback callback; // null: chỉ hỏi kết quả theo mã
+    private final ScheduledExecutorService poller;
+    
+    /**
+     * @param useCallback false khi server không gọi ngược được về client (tường lửa, chế độ poll)
+     * @param pollMillis thời gian chờ kết quả trước khi hỏi server theo mã thao tác
+     */
+    public AsyncBankingClient(BankingService service, boolean useCallback, long pollMillis) {
+        this.service = service;
+        this.pollMillis = Math.max(1, pollMillis);
+        ResultCallback exported = null;
+        if (useCallback) {
+            try {
+                exported = new ResultCallback();
+            } catch (RemoteException e) {
+                System.err.println("Không tạo được callback nhận kết quả, chuyển sang hỏi theo mã: " + e.getMessage());
+            }
+        }
+        this.callback = exported;
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "async-client-poll");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, this.pollMillis, this.pollMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    public CompletableFuture<String> deposit(String accountNumber, double amount) {
+        return submit(Operation.deposit(accountNumber, amount));
+    }
+    
+    public CompletableFuture<String> withdraw(String accountNumber, double amount) {
+        return submit(Operation.withdraw(accountNumber, amount));
+    }
+    
+    public CompletableFuture<String> transfer(String fromAccount, String toAccount, double amount, String content) {
+        return submit(Operation.transfer(fromAccount, toAccount, amount, content));
+    }
+    
+    /**
+     * Gửi một thao tác, trả về ngay khi server đã nhận
+     * @return future nhận kết quả như lời gọi đồng bộ; thông báo lỗi của server nếu không nhận thao tác
+     */
+    public CompletableFuture<String> submit(Operation operation) {
+        String ack;
+        try {
+            ack = service.submitAsync(operation, callback);
+        } catch (RemoteException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        if (ack == null || !ack.startsWith("SUCCESS:")) {
+            return CompletableFuture.completedFuture(ack);
+        }
+        String operationId = ack.substring("SUCCESS:".length());
+        Pending entry = pending.computeIfAbsent(operationId, id -> new Pending());
+        entry.claimed = true;
+        if (entry.future.isDone()) {
+            pending.remove(operationId);
+        }
+        return entry.future;
+    }
+    
+    private void complete(String operationId, String result) {
+        Pending entry = pending.computeIfAbsent(operationId, id -> new Pending());
+        entry.future.complete(result);
+        if (entry.claimed) {
+            pending.remove(operationId);
+        }
+    }
+    
+    /**
+     * Số thao tác đã gửi chưa có kết quả
+     */
+    public int getInFlight() {
+        int count = 0;
+        for (Pending entry : pending.values()) {
+            if (!entry.future.isDone()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Hỏi kết quả các thao tác chờ lâu hơn pollMillis
+     */
+    private void poll() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Pending> e : pending.entrySet()) {
+            String operationId = e.getKey();
+            Pending entry = e.getValue();
+            if (!entry.claimed) {
+                if (now - entry.createdAt > ORPHAN_MILLIS) {
+                    pending.remove(operationId, entry);
+                }
+                continue;
+            }
+            if (now - entry.createdAt < pollMillis || now - entry.lastPolledAt < pollMillis) {
+                continue;
+            }
+            entry.lastPolledAt = now;
+            try {
+                OperationStatus status = service.getOperationStatus(operationId);
+                if (status.isCompleted()) {
+                    complete(operationId, status.getResult());
+                } else if (status.getState() == OperationStatus.State.UNKNOWN) {
+                    pending.remove(operationId, entry);
+                    entry.future.completeExceptionally(new RemoteException(
+                            "Server không còn thông tin thao tác " + operationId + ", hãy kiểm tra lại số dư và lịch sử"));
+                }
+            } catch (RemoteException ex) {
+                // Thử lại ở lần hỏi sau
+            }
+        }
+    }
+    
+    /**
+     * Dừng nhận kết quả. Các thao tác chưa có kết quả vẫn được server thực hiện
+     */
+    public void close() {
+        poller.shutdownNow();
+        if (callback != null) {
+            try {
+                UnicastRemoteObject.unexportObject(callback, true);
+            } catch (NoSuchObjectException e) {
+                // Đã hủy
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thực hiện các thao tác bất đồng bộ (BankingService.submitAsync) trên pool luồng riêng.
+ *
+ * - Thao tác được nhận ngay và trả về mã thao tác; client không phải giữ luồng chờ server xử lý,
+ *   nên một kết nối có thể có nhiều thao tác đang chạy cùng lúc.
+ * - Hàng đợi có giới hạn: khi đầy, thao tác mới bị từ chối ngay thay vì dồn thêm vào server.
+ * - Kết quả được báo qua callback (nếu client gửi kèm) và được giữ lại để client hỏi theo mã
+ *   (getOperationStatus): tối đa maxRetained kết quả, mỗi kết quả giữ trong retentionMillis.
+ * - Kết quả chỉ nằm trong bộ nhớ: sau khi server khởi động lại, mã cũ trả về UNKNOWN.
+ */
+public class AsyncOperations {
+    /**
+     * Thực hiện một thao tác, trả về kết quả như lời gọi đồng bộ
+     */
+    public interface Handler {
+        String execute(Operation operation) throws RemoteException;
+    }
+
+    /**
+     * Gửi kết quả cho callback của client
+     */
+    public interface Notifier {
+        void completed(Operation operation, BankingOperationCallback callback, OperationStatus status);
+    }
+
+    private static class Entry {
+        volatile long completedAt;
+        volatile String result; // null khi chưa xong
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final long retentionMillis;
+    private final int maxRetained;
+    private final Notifier notifier;
+    private final Map<String, Entry> operations = new ConcurrentHashMap<>(); // operationId -> trạng thái
+    private final ConcurrentLinkedQueue<String> completed = new ConcurrentLinkedQueue<>(); // theo thứ tự xong
+    private int completedCount;
+
+    public AsyncOperations(int threads, int capacity, long retentionMillis, int maxRetained, Notifier notifier) {
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), r -> {
+                    Thread t = new Thread(r, "async-operation");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.retentionMillis = retentionMillis;
+        this.maxRetained = maxRetained;
+        this.notifier = notifier;
+    }
+
+    /**
+     * Nhận một thao tác để thực hiện trên luồng nền
+     * @param callback nhận kết quả khi xong, null nếu client tự hỏi bằng mã thao tác
+     * @return "SUCCESS:" + mã thao tác, hoặc thông báo lỗi nếu không nhận
+     */
+    public String submit(Operation operation, BankingOperationCallback callback, Handler handler) {
+        if (operation == null || operation.getType() == null) {
+            return "Thao tác không hợp lệ";
+        }
+        String operationId = IdGenerator.getInstance().nextString();
+        Entry entry = new Entry();
+        operations.put(operationId, entry);
+        try {
+            workers.execute(() -> run(operationId, entry, operation, callback, handler));
+        } catch (RejectedExecutionException e) {
+            operations.remove(operationId);
+            return "Server đang quá tải, vui lòng thử lại sau";
+        }
+        return "SUCCESS:" + operationId;
+    }
+
+    private void run(String operationId, Entry entry, Operation operation, BankingOperationCallback callback, Handler handler) {
+        String result;
+        try {
+            result = handler.execute(operation);
+        } catch (RemoteException | RuntimeException e) {
+            result = "Lỗi thực hiện thao tác: " + e.getMessage();
+        }
+        entry.completedAt = System.currentTimeMillis();
+        entry.result = result;
+        completed.add(operationId);
+        evict(entry.completedAt);
+        if (callback != null) {
+            notifier.completed(operation, callback, new OperationStatus(operationId, OperationStatus.State.COMPLETED, result));
+        }
+    }
+
+    /**
+     * Bỏ các kết quả đã hết hạn hoặc vượt quá số lượng giữ lại (cũ nhất trước)
+     */
+    private synchronized void evict(long now) {
+        completedCount++;
+        while (true) {
+            String oldest = completed.peek();
+            if (oldest == null) {
+                return;
+            }
+            Entry entry = operations.get(oldest);
+            if (completedCount <= maxRetained && entry != null && now - entry.completedAt <= retentionMillis) {
+                return;
+            }
+            completed.poll();
+            operations.remove(oldest);
+            completedCount--;
+        }
+    }
+
+    public OperationStatus status(String operationId) {
+        Entry entry = operationId == null ? null : operations.get(operationId);
+        if (entry == null) {
+            return OperationStatus.unknown(operationId);
+        }
+        String result = entry.result;
+        if (result == null) {
+            return new OperationStatus(operationId, OperationStatus.State.PENDING, null);
+        }
+        if (System.currentTimeMillis() - entry.completedAt > retentionMillis) {
+            return OperationStatus.unknown(operationId);
+        }
+        return new OperationStatus(operationId, OperationStatus.State.COMPLETED, result);
+    }
+
+    /**
+     * Số thao tác đang chờ hoặc đang thực hiện
+     */
+    public int getPending() {
+        return workers.getQueue().size() + workers.getActiveCount();
+    }
+
+    /**
+     * Dừng nhận thao tác mới, chờ các thao tác đã nhận thực hiện xong
+     */
+    public void shutdown(long timeoutMillis) {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
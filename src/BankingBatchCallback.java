@@ -0,0 +1,15 @@
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Callback nhận thông báo theo lô, dành cho tài khoản nhận nhiều chuyển khoản liên tục.
+ * Server gom các thông báo đến trong một khoảng thời gian ngắn (hoặc đến khi đủ số lượng)
+ * thành một lần gọi. Client chỉ implement BankingCallback vẫn nhận từng thông báo như cũ.
+ */
+public interface BankingBatchCallback extends BankingCallback {
+    /**
+     * Nhận một lô thông báo chuyển khoản đến, theo đúng thứ tự giao dịch
+     * @param notifications Các khoản tiền đã nhận (ít nhất một phần tử)
+     */
+    void notifyTransfersReceived(List<TransferNotification> notifications) throws RemoteException;
+}
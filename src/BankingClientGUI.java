@@ -1,5 +1,6 @@
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.text.DefaultCaret;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
@@ -7,12 +8,15 @@ import java.awt.geom.RoundRectangle2D;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class BankingClientGUI extends JFrame {
     private BankingService bankingService;
     private String currentAccount;
     private String fullName;
     private BankingCallback callback;
+    private volatile Thread pollThread; // luồng pollNotifications khi không dùng callback
+    private AsyncBankingClient asyncClient; // nạp/rút/chuyển tiền không chặn giao diện chờ server
     
     private JLabel balanceLabel;
     private JTextField amountField;
@@ -20,6 +24,21 @@ public class BankingClientGUI extends JFrame {
     private JTextArea transactionArea;
     private JButton refreshHistoryButton;
     
+    // Lịch sử giao dịch được tải theo trang khi cuộn xuống
+    private static final int HISTORY_PAGE_SIZE = 30;
+    
+    // Chế độ poll: thời gian chờ mỗi lần poll và thời gian chờ trước khi thử lại khi lỗi kết nối
+    private static final long POLL_WAIT_MILLIS = 25000;
+    private static final long POLL_RETRY_MILLIS = 3000;
+    
+    // Thời gian chờ kết quả thao tác qua callback trước khi hỏi server theo mã thao tác
+    private static final long ASYNC_POLL_MILLIS = 2000;
+    private String historyCursor;
+    private boolean hasMoreHistory;
+    private boolean loadingHistory; // đang tải một trang lịch sử, bỏ qua sự kiện cuộn
+    private int historyGeneration; // tăng mỗi lần tải lại, trang tải xong của lần trước bị bỏ
+    private long historySequence; // sequence của giao dịch mới nhất đang hiển thị
+    
     // Modern Banking Theme Colors
     private static final Color PRIMARY_COLOR = new Color(37, 99, 235);      // Blue
     private static final Color PRIMARY_HOVER = new Color(29, 78, 216);      // Darker Blue
@@ -36,9 +55,15 @@ public class BankingClientGUI extends JFrame {
         this.bankingService = bankingService;
         this.currentAccount = accountNumber;
         this.fullName = fullName;
+        this.asyncClient = new AsyncBankingClient(bankingService, !LoginFrame.isPollingNotifications(), ASYNC_POLL_MILLIS);
         initializeGUI();
-        registerCallback();
-        loadTransactionHistory();
+        if (LoginFrame.isPollingNotifications()) {
+            loadTransactionHistory();
+            startPolling();
+        } else {
+            registerCallback();
+            loadTransactionHistory();
+        }
         updateBalance();
         
         // Hủy đăng ký callback khi đóng cửa sổ
@@ -46,6 +71,7 @@ public class BankingClientGUI extends JFrame {
             @Override
             public void windowClosing(WindowEvent e) {
                 unregisterCallback();
+                asyncClient.close();
                 dispose();
             }
         });
@@ -53,38 +79,109 @@ public class BankingClientGUI extends JFrame {
     
     /**
      * Inner class implement BankingCallback để nhận thông báo từ server
+     * (nhận theo lô khi có nhiều chuyển khoản đến liên tục)
      */
-    private class BankingCallbackImpl extends UnicastRemoteObject implements BankingCallback {
+    private class BankingCallbackImpl extends UnicastRemoteObject implements BankingBatchCallback {
         public BankingCallbackImpl() throws RemoteException {
             super();
         }
         
         @Override
         public void notifyTransferReceived(String fromAccount, double amount, String content, double newBalance) throws RemoteException {
-            // Cập nhật UI trên EDT thread
-            SwingUtilities.invokeLater(() -> {
-                // Hiển thị thông báo popup
-                String message = String.format(
-                    "Bạn đã nhận được %.2f VNĐ từ tài khoản %s\n" +
-                    "Nội dung: %s\n" +
-                    "Số dư mới: %.2f VNĐ",
-                    amount, fromAccount, content, newBalance
-                );
-                
-                JOptionPane.showMessageDialog(
-                    BankingClientGUI.this,
-                    message,
-                    "Thông báo nhận tiền",
-                    JOptionPane.INFORMATION_MESSAGE
-                );
-                
-                // Cập nhật số dư
-                balanceLabel.setText(String.format("%.2f VNĐ", newBalance));
-                
-                // Làm mới lịch sử giao dịch
-                loadTransactionHistory();
-            });
+            showTransferReceived(fromAccount, amount, content, newBalance);
+        }
+        
+        @Override
+        public void notifyTransfersReceived(List<TransferNotification> notifications) throws RemoteException {
+            showTransfersReceived(notifications);
+        }
+    }
+    
+    private void showTransferReceived(String fromAccount, double amount, String content, double newBalance) {
+        // Cập nhật UI trên EDT thread
+        SwingUtilities.invokeLater(() -> {
+            // Hiển thị thông báo popup
+            String message = String.format(
+                "Bạn đã nhận được %.2f VNĐ từ tài khoản %s\n" +
+                "Nội dung: %s\n" +
+                "Số dư mới: %.2f VNĐ",
+                amount, fromAccount, content, newBalance
+            );
+            
+            JOptionPane.showMessageDialog(
+                BankingClientGUI.this,
+                message,
+                "Thông báo nhận tiền",
+                JOptionPane.INFORMATION_MESSAGE
+            );
+            
+            // Cập nhật số dư
+            balanceLabel.setText(String.format("%.2f VNĐ", newBalance));
+            
+            // Chỉ tải các giao dịch mới
+            loadNewTransactions();
+        });
+    }
+    
+    private void showTransfersReceived(List<TransferNotification> notifications) {
+        if (notifications.size() == 1) {
+            TransferNotification n = notifications.get(0);
+            showTransferReceived(n.getFromAccount(), n.getAmount(), n.getContent(), n.getNewBalance());
+            return;
+        }
+        double total = 0;
+        for (TransferNotification n : notifications) {
+            total += n.getAmount();
         }
+        double receivedTotal = total;
+        double newBalance = notifications.get(notifications.size() - 1).getNewBalance();
+        
+        // Một thông báo tổng hợp cho cả lô
+        SwingUtilities.invokeLater(() -> {
+            String message = String.format(
+                "Bạn đã nhận được %d khoản chuyển, tổng cộng %.2f VNĐ\n" +
+                "Số dư mới: %.2f VNĐ",
+                notifications.size(), receivedTotal, newBalance
+            );
+            
+            JOptionPane.showMessageDialog(
+                BankingClientGUI.this,
+                message,
+                "Thông báo nhận tiền",
+                JOptionPane.INFORMATION_MESSAGE
+            );
+            
+            balanceLabel.setText(String.format("%.2f VNĐ", newBalance));
+            loadNewTransactions();
+        });
+    }
+    
+    /**
+     * Nhận thông báo bằng pollNotifications: server không cần kết nối ngược về client
+     */
+    private void startPolling() {
+        Thread thread = new Thread(() -> {
+            long sequence = -1; // lần đầu: nhận các thông báo chưa gửi được
+            while (pollThread == Thread.currentThread()) {
+                try {
+                    NotificationPage page = bankingService.pollNotifications(currentAccount, sequence, POLL_WAIT_MILLIS);
+                    sequence = page.getSequence();
+                    if (!page.isEmpty() && pollThread == Thread.currentThread()) {
+                        showTransfersReceived(page.getNotifications());
+                    }
+                } catch (RemoteException e) {
+                    System.err.println("Lỗi nhận thông báo: " + e.getMessage());
+                    try {
+                        Thread.sleep(POLL_RETRY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }, "notification-poll");
+        thread.setDaemon(true);
+        pollThread = thread;
+        thread.start();
     }
     
     private void registerCallback() {
@@ -97,9 +194,15 @@ public class BankingClientGUI extends JFrame {
     }
     
     private void unregisterCallback() {
+        Thread thread = pollThread;
+        if (thread != null) {
+            pollThread = null;
+            thread.interrupt();
+            return;
+        }
         try {
             if (bankingService != null && currentAccount != null) {
-                bankingService.unregisterCallback(currentAccount);
+                bankingService.unregisterCallback(currentAccount, callback);
             }
         } catch (RemoteException e) {
             System.err.println("Lỗi hủy đăng ký callback: " + e.getMessage());
@@ -529,6 +632,8 @@ public class BankingClientGUI extends JFrame {
         transactionArea.setLineWrap(true);
         transactionArea.setWrapStyleWord(true);
         transactionArea.setBorder(new EmptyBorder(15, 15, 15, 15));
+        // Không tự cuộn theo nội dung mới, tránh kích hoạt tải trang liên tục khi nối thêm
+        ((DefaultCaret) transactionArea.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
         
         JScrollPane scrollPane = new JScrollPane(transactionArea);
         scrollPane.setBorder(BorderFactory.createLineBorder(BORDER_COLOR, 1));
@@ -538,6 +643,14 @@ public class BankingClientGUI extends JFrame {
         // Custom scrollbar
         scrollPane.getVerticalScrollBar().setUI(new ModernScrollBarUI());
         
+        // Cuộn gần cuối thì tải trang lịch sử tiếp theo
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = (JScrollBar) e.getAdjustable();
+            if (!loadingHistory && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 20) {
+                loadMoreHistory();
+            }
+        });
+        
         panel.add(scrollPane, BorderLayout.CENTER);
         
         return panel;
@@ -633,21 +746,98 @@ public class BankingClientGUI extends JFrame {
     }
     
     private void loadTransactionHistory() {
+        historyGeneration++;
+        historyCursor = null;
+        hasMoreHistory = true;
+        loadingHistory = false;
+        transactionArea.setText("");
+        loadMoreHistory();
+    }
+    
+    /**
+     * Tải các giao dịch mới hơn giao dịch mới nhất đang hiển thị và chèn lên đầu danh sách
+     */
+    private void loadNewTransactions() {
+        if (loadingHistory && historyCursor == null) {
+            // Trang đầu tiên đang tải sẽ có cả các giao dịch mới
+            return;
+        }
         try {
-            List<Transaction> transactions = bankingService.getTransactionHistory(currentAccount);
-            transactionArea.setText("");
-            if (transactions.isEmpty()) {
-                transactionArea.setText("Chưa có giao dịch nào.");
-            } else {
-                for (Transaction t : transactions) {
-                    transactionArea.append(t.toString() + "\n");
+            TransactionPage delta = bankingService.getTransactionsSince(currentAccount, historySequence);
+            if (delta.getSequence() < historySequence) {
+                // Lịch sử trên server không khớp với danh sách đang có, tải lại toàn bộ
+                loadTransactionHistory();
+                return;
+            }
+            if (!delta.getTransactions().isEmpty()) {
+                StringBuilder sb = new StringBuilder();
+                for (Transaction t : delta.getTransactions()) {
+                    sb.append(t.toString()).append("\n");
+                }
+                if (historySequence == 0) {
+                    transactionArea.setText("");
                 }
+                transactionArea.insert(sb.toString(), 0);
+                transactionArea.setCaretPosition(0);
             }
+            historySequence = delta.getSequence();
         } catch (RemoteException e) {
             transactionArea.setText("Lỗi tải lịch sử: " + e.getMessage());
         }
     }
     
+    /**
+     * Tải trang lịch sử tiếp theo trên luồng nền và nối vào cuối danh sách đang hiển thị
+     */
+    private void loadMoreHistory() {
+        if (loadingHistory || !hasMoreHistory) {
+            return;
+        }
+        loadingHistory = true;
+        int generation = historyGeneration;
+        String cursor = historyCursor;
+        String account = currentAccount;
+        new SwingWorker<TransactionPage, Void>() {
+            @Override
+            protected TransactionPage doInBackground() throws RemoteException {
+                return bankingService.getTransactionHistoryPage(account, cursor, HISTORY_PAGE_SIZE);
+            }
+            
+            @Override
+            protected void done() {
+                if (generation != historyGeneration) {
+                    // Danh sách đã được tải lại trong lúc chờ
+                    return;
+                }
+                loadingHistory = false;
+                try {
+                    TransactionPage page = get();
+                    if (cursor == null) {
+                        historySequence = page.getSequence();
+                    }
+                    StringBuilder sb = new StringBuilder();
+                    for (Transaction t : page.getTransactions()) {
+                        sb.append(t.toString()).append("\n");
+                    }
+                    transactionArea.append(sb.toString());
+                    historyCursor = page.getNextCursor();
+                    hasMoreHistory = page.hasMore();
+                    if (cursor == null) {
+                        if (transactionArea.getDocument().getLength() == 0) {
+                            transactionArea.setText("Chưa có giao dịch nào.");
+                        }
+                        transactionArea.setCaretPosition(0);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    transactionArea.setText("Lỗi tải lịch sử: " + e.getCause().getMessage());
+                    hasMoreHistory = false;
+                }
+            }
+        }.execute();
+    }
+    
     private void queryAccount() {
         try {
             String result = bankingService.queryAccount(currentAccount);
@@ -669,18 +859,11 @@ public class BankingClientGUI extends JFrame {
                 return;
             }
             
-            String result = bankingService.deposit(currentAccount, amount);
-            updateBalance();
-            loadTransactionHistory();
-            amountField.setText("");
-            JOptionPane.showMessageDialog(this, result, "Thành công", 
-                JOptionPane.INFORMATION_MESSAGE);
+            asyncClient.deposit(currentAccount, amount).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> operationCompleted(result, error, false)));
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Số tiền không hợp lệ", 
                 "Lỗi", JOptionPane.WARNING_MESSAGE);
-        } catch (RemoteException e) {
-            JOptionPane.showMessageDialog(this, "Lỗi: " + e.getMessage(), 
-                "Lỗi", JOptionPane.ERROR_MESSAGE);
         }
     }
     
@@ -693,23 +876,11 @@ public class BankingClientGUI extends JFrame {
                 return;
             }
             
-            String result = bankingService.withdraw(currentAccount, amount);
-            if (result.contains("Số dư không đủ")) {
-                JOptionPane.showMessageDialog(this, result, "Lỗi", 
-                    JOptionPane.WARNING_MESSAGE);
-            } else {
-                updateBalance();
-                loadTransactionHistory();
-                amountField.setText("");
-                JOptionPane.showMessageDialog(this, result, "Thành công", 
-                    JOptionPane.INFORMATION_MESSAGE);
-            }
+            asyncClient.withdraw(currentAccount, amount).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> operationCompleted(result, error, false)));
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Số tiền không hợp lệ", 
                 "Lỗi", JOptionPane.WARNING_MESSAGE);
-        } catch (RemoteException e) {
-            JOptionPane.showMessageDialog(this, "Lỗi: " + e.getMessage(), 
-                "Lỗi", JOptionPane.ERROR_MESSAGE);
         }
     }
     
@@ -744,25 +915,40 @@ public class BankingClientGUI extends JFrame {
                 content = "Chuyển khoản";
             }
             
-            String result = bankingService.transfer(currentAccount, toAccount, amount, content);
-            if (result.contains("Số dư không đủ") || result.contains("Không tìm thấy")) {
-                JOptionPane.showMessageDialog(this, result, "Lỗi", 
-                    JOptionPane.WARNING_MESSAGE);
-            } else {
-                // Cập nhật số dư và lịch sử
-                updateBalance();
-                loadTransactionHistory();
-                amountField.setText("");
-                recipientAccountField.setText("");
-                JOptionPane.showMessageDialog(this, result, "Thành công", 
-                    JOptionPane.INFORMATION_MESSAGE);
-            }
+            asyncClient.transfer(currentAccount, toAccount, amount, content).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> operationCompleted(result, error, true)));
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Số tiền không hợp lệ", 
                 "Lỗi", JOptionPane.WARNING_MESSAGE);
-        } catch (RemoteException e) {
-            JOptionPane.showMessageDialog(this, "Lỗi: " + e.getMessage(), 
+        }
+    }
+    
+    /**
+     * Hiển thị kết quả nạp/rút/chuyển tiền khi server thực hiện xong (chạy trên luồng giao diện)
+     * @param transfer true nếu là chuyển khoản (xóa cả ô tài khoản nhận khi thành công)
+     */
+    private void operationCompleted(String result, Throwable error, boolean transfer) {
+        if (error != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            JOptionPane.showMessageDialog(this, "Lỗi: " + cause.getMessage(), 
                 "Lỗi", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // Kết quả thành công có dạng "Đã nạp/Đã rút/Đã chuyển: ..."
+        if (!result.startsWith("Đã")) {
+            JOptionPane.showMessageDialog(this, result, "Lỗi", 
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        // Cập nhật số dư và lịch sử
+        updateBalance();
+        loadNewTransactions();
+        amountField.setText("");
+        if (transfer) {
+            recipientAccountField.setText("");
         }
+        JOptionPane.showMessageDialog(this, result, "Thành công", 
+            JOptionPane.INFORMATION_MESSAGE);
     }
 }
@@ -0,0 +1,17 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Callback nhận kết quả của các thao tác bất đồng bộ (xem BankingService.submitAsync).
+ * Độc lập với BankingCallback (client nhận kết quả không phải nhận thông báo chuyển khoản);
+ * server gửi qua cùng hàng đợi callback (CallbackDispatcher), các kết quả xong trong lúc
+ * lần gọi trước đang gửi được gom vào một lần gọi.
+ */
+public interface BankingOperationCallback extends Remote {
+    /**
+     * Nhận kết quả các thao tác đã thực hiện xong, theo thứ tự hoàn tất
+     * @param results Trạng thái COMPLETED kèm kết quả như lời gọi đồng bộ tương ứng (ít nhất một phần tử)
+     */
+    void operationsCompleted(List<OperationStatus> results) throws RemoteException;
+}
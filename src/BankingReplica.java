@@ -0,0 +1,339 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.rmi.ConnectException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Bản sao chỉ đọc của một server (hoặc một shard): theo dõi journal của server chính
+ * và phục vụ các thao tác đọc của BankingService, để tăng số lượng truy vấn bằng cách thêm máy.
+ *
+ * Khi khởi động, bản sao tải checkpoint mới nhất của server chính (xem ReplicationSource),
+ * rồi đọc lần lượt các segment journal từ segment đầu tiên: segment đã có trong checkpoint
+ * chỉ dùng để dựng lịch sử, các segment sau đó được áp dụng vào số dư giống như khi server
+ * khởi động lại. Giao dịch mang sequence do server chính cấp (xem TransactionIndex), nên sequence
+ * và cursor lịch sử của bản sao giống server chính. Sau đó bản sao hỏi tiếp journal mỗi pollMillis. Server chính chỉ gửi dữ liệu
+ * đã fsync, nên bản sao không bao giờ thấy thao tác server chính có thể mất khi sập.
+ *
+ * Giới hạn độ trễ: nếu lần gần nhất bản sao theo kịp server chính đã quá maxStalenessMillis
+ * (mất kết nối, server chính quá tải...), các thao tác đọc ném RemoteException để client
+ * đọc lại từ server chính (xem ReplicatedBankingService) thay vì nhận dữ liệu quá cũ.
+ * Thao tác ghi, đăng nhập và thông báo chỉ thực hiện trên server chính: checkpoint và journal
+ * server chính gửi cho bản sao không mang mật khẩu người dùng.
+ */
+public class BankingReplica extends UnicastRemoteObject implements BankingService {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final String READ_ONLY = "ERROR:Bản sao chỉ đọc, hãy thực hiện thao tác trên server chính";
+    
+    private final String primaryUrl;
+    private final File directory;
+    private final long pollMillis;
+    private final long maxStalenessMillis;
+    private final TransactionIndex transactions = new TransactionIndex();
+    private volatile ReplicationSource primary;
+    private CheckpointManager.Snapshot state; // checkpoint + các bản ghi đã áp dụng (chỉ luồng theo dõi ghi)
+    private AccountStore accounts;
+    private int segment = 1; // segment đang theo dõi
+    private long offset; // vị trí đã đọc đến trong segment
+    private volatile long syncedAt; // thời điểm gần nhất đã theo kịp server chính
+    private volatile boolean running = true;
+    private final Thread follower;
+    
+    public BankingReplica(String primaryUrl, File directory, long pollMillis, long maxStalenessMillis) throws RemoteException {
+        super();
+        this.primaryUrl = primaryUrl;
+        this.directory = directory;
+        this.pollMillis = Math.max(1, pollMillis);
+        this.maxStalenessMillis = maxStalenessMillis;
+        lookup();
+        try {
+            bootstrap();
+            // Theo kịp server chính trước khi nhận truy vấn
+            while (!syncOnce()) {
+                // Còn dữ liệu
+            }
+        } catch (IOException | UncheckedIOException e) {
+            throw new RemoteException("Lỗi khởi tạo bản sao từ " + primaryUrl, e);
+        }
+        System.out.println("Bản sao đã theo kịp server chính: segment " + segment + ", "
+                + accounts.size() + " tài khoản, " + transactions.size() + " giao dịch");
+        
+        follower = new Thread(this::follow, "replica-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+    
+    private void lookup() throws RemoteException {
+        try {
+            primary = (ReplicationSource) Naming.lookup(primaryUrl);
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Không kết nối được server chính: " + primaryUrl, e);
+        }
+    }
+    
+    /**
+     * Tải checkpoint của server chính vào thư mục dữ liệu của bản sao
+     */
+    private void bootstrap() throws IOException {
+        CheckpointManager checkpoints = new CheckpointManager(new File(directory, "checkpoint.dat"), null);
+        CheckpointImage image = primary.checkpointImage();
+        CheckpointManager.Snapshot snapshot = null;
+        if (image != null) {
+            checkpoints.installImage(image);
+            snapshot = checkpoints.load();
+        }
+        if (snapshot == null) {
+            snapshot = new CheckpointManager.Snapshot();
+        }
+        accounts = checkpoints.openAccounts(snapshot, new File(directory, "accounts.dat"));
+        snapshot.accounts = accounts;
+        state = snapshot;
+    }
+    
+    /**
+     * Đọc và áp dụng một đoạn journal
+     * @return true nếu đã theo kịp server chính
+     */
+    private boolean syncOnce() throws IOException {
+        long requestedAt = System.currentTimeMillis();
+        JournalChunk chunk = primary.readJournal(segment, offset, CHUNK_BYTES);
+        boolean covered = chunk.getSegmentId() <= state.coveredSegment;
+        for (Object record : TransactionJournal.decodeChunk(chunk)) {
+            if (record instanceof Transaction) {
+                transactions.add((Transaction) record);
+            } else if (record instanceof TransferPhase) {
+                Transaction applied = ((TransferPhase) record).appliedTransaction();
+                if (applied != null) {
+                    transactions.add(applied);
+                }
+            } else if (record instanceof BulkTransfer) {
+                transactions.addAll(((BulkTransfer) record).transactions());
+            } else if (record instanceof IdempotencyRecord) {
+                transactions.addAll(((IdempotencyRecord) record).getTransactions());
+            }
+            if (!covered) {
+                state.apply(record);
+            }
+        }
+        if (chunk.isSealed()) {
+            segment = chunk.getSegmentId() + 1;
+            offset = 0;
+        } else {
+            offset = chunk.getEndOffset();
+        }
+        if (chunk.isCaughtUp()) {
+            syncedAt = requestedAt;
+        }
+        return chunk.isCaughtUp();
+    }
+    
+    /**
+     * Luồng theo dõi journal: đọc liên tục khi còn dữ liệu, nghỉ pollMillis khi đã theo kịp
+     */
+    private void follow() {
+        long retryMillis = pollMillis;
+        while (running) {
+            try {
+                if (syncOnce()) {
+                    Thread.sleep(pollMillis);
+                }
+                retryMillis = pollMillis;
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | UncheckedIOException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Lỗi theo dõi server chính: " + e.getMessage());
+                try {
+                    Thread.sleep(retryMillis);
+                    retryMillis = Math.min(retryMillis * 2, Math.max(pollMillis, maxStalenessMillis));
+                    if (e instanceof ConnectException || e instanceof NoSuchObjectException) {
+                        // Server chính đã khởi động lại: tra lại stub
+                        lookup();
+                    }
+                } catch (InterruptedException ie) {
+                    return;
+                } catch (RemoteException re) {
+                    // Thử lại ở vòng sau
+                }
+            }
+        }
+    }
+    
+    /**
+     * Từ chối đọc khi bản sao chậm hơn server chính quá giới hạn
+     */
+    private void checkFresh() throws RemoteException {
+        long lag = System.currentTimeMillis() - syncedAt;
+        if (lag > maxStalenessMillis) {
+            throw new RemoteException("Bản sao chậm hơn server chính " + lag + "ms");
+        }
+    }
+    
+    @Override
+    public String register(String username, String password, String fullName) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public String login(String username, String password) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public String queryAccount(String accountNumber) throws RemoteException {
+        checkFresh();
+        long balance = accounts.getBalance(accountNumber);
+        if (balance == AccountStore.NO_ACCOUNT) {
+            return "Không tìm thấy tài khoản: " + accountNumber;
+        }
+        return "Số dư hiện tại: " + Money.toDouble(balance);
+    }
+    
+    @Override
+    public String deposit(String accountNumber, double amount) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public String withdraw(String accountNumber, double amount) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public List<String> submitBatch(List<Operation> operations) throws RemoteException {
+        checkFresh();
+        List<String> results = new ArrayList<>();
+        if (operations != null) {
+            for (Operation operation : operations) {
+                boolean query = operation != null && operation.isReadOnly();
+                results.add(query ? queryAccount(operation.getAccountNumber()) : READ_ONLY);
+            }
+        }
+        return results;
+    }
+    
+    @Override
+    public String submitAsync(Operation operation, BankingOperationCallback callback) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public OperationStatus getOperationStatus(String operationId) throws RemoteException {
+        return OperationStatus.unknown(operationId);
+    }
+    
+    @Override
+    public String bulkTransfer(String fromAccount, Map<String, Double> payments, String content) throws RemoteException {
+        return READ_ONLY;
+    }
+    
+    @Override
+    public List<Transaction> getTransactionHistory(String accountNumber) throws RemoteException {
+        checkFresh();
+        return transactions.getHistory(accountNumber);
+    }
+    
+    @Override
+    public TransactionPage getTransactionHistoryPage(String accountNumber, String cursor, int pageSize) throws RemoteException {
+        checkFresh();
+        int limit = pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+        return transactions.getPage(accountNumber, cursor, limit);
+    }
+    
+    @Override
+    public TransactionPage getTransactionsSince(String accountNumber, long lastSeenSequence) throws RemoteException {
+        checkFresh();
+        return transactions.getSince(accountNumber, lastSeenSequence);
+    }
+    
+    @Override
+    public void registerCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        throw new RemoteException("Bản sao chỉ đọc không gửi thông báo, hãy đăng ký trên server chính");
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber) throws RemoteException {
+        // Bản sao không giữ callback
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        // Bản sao không giữ callback
+    }
+    
+    @Override
+    public NotificationPage pollNotifications(String accountNumber, long sinceSequence, long maxWaitMillis) throws RemoteException {
+        throw new RemoteException("Bản sao chỉ đọc không gửi thông báo, hãy poll trên server chính");
+    }
+    
+    public void shutdown() {
+        running = false;
+        follower.interrupt();
+        try {
+            follower.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        accounts.close();
+    }
+    
+    public static void main(String[] args) {
+        try {
+            Properties config = new Properties();
+            try (FileInputStream fis = new FileInputStream("config.properties")) {
+                config.load(fis);
+            } catch (IOException e) {
+                System.out.println("Không tìm thấy config.properties, sử dụng cấu hình mặc định");
+            }
+            String hostIP = BankingServer.getRealIP();
+            System.setProperty("java.rmi.server.hostname", hostIP);
+            int port = Integer.parseInt(config.getProperty("server.port", "1099"));
+            Registry registry;
+            try {
+                registry = LocateRegistry.getRegistry(port);
+                registry.list();
+            } catch (Exception e) {
+                registry = LocateRegistry.createRegistry(port);
+            }
+            
+            String primaryUrl = config.getProperty("replica.primary",
+                    "rmi://localhost/BankingService" + BankingServer.REPLICATION_SUFFIX);
+            BankingReplica replica = new BankingReplica(primaryUrl,
+                    new File(config.getProperty("replica.dataDir", "replica")),
+                    Long.parseLong(config.getProperty("replica.pollMillis", "100")),
+                    Long.parseLong(config.getProperty("replica.maxStalenessMillis", "2000")));
+            Runtime.getRuntime().addShutdownHook(new Thread(replica::shutdown));
+            
+            String serviceName = config.getProperty("replica.serviceName",
+                    config.getProperty("service.name", "BankingService") + "-replica");
+            registry.rebind(serviceName, replica);
+            System.out.println("Bản sao chỉ đọc đã sẵn sàng: rmi://" + hostIP + ":" + port + "/" + serviceName
+                    + " (theo dõi " + primaryUrl + ")");
+        } catch (Exception e) {
+            System.err.println("Lỗi khởi động bản sao: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
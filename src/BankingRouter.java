@@ -0,0 +1,480 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Điểm vào của cụm nhiều shard: client kết nối như với một BankingServiceImpl bình thường,
+ * router chuyển mỗi thao tác đến shard sở hữu tài khoản/người dùng (xem ShardMap).
+ *
+ * Chuyển khoản giữa hai shard dùng giao thức hai pha, router là bên điều phối:
+ *   1. prepareDebit ở shard gốc (giữ tiền), prepareCredit ở shard nhận
+ *   2. nếu cả hai thành công: ghi COMMIT vào CoordinatorLog (fsync) rồi commit hai shard,
+ *      ngược lại abort hai shard
+ * Luồng khôi phục chạy định kỳ: gửi lại commit cho các giao dịch đã COMMIT chưa xong,
+ * và abort các giao dịch shard còn giữ mà router không quyết định COMMIT.
+ * Mỗi router chỉ khôi phục giao dịch do chính nó tạo (theo mã node trong transferId),
+ * nên có thể chạy nhiều router với server.nodeId khác nhau.
+ *
+ * Khi shard khởi động lại, stub cũ không còn dùng được: router tra lại registry rồi gọi lại một lần
+ * (chỉ với lỗi cho biết lời gọi chưa đến shard, nên không thực hiện thao tác hai lần).
+ */
+public class BankingRouter extends UnicastRemoteObject implements BankingService {
+    /**
+     * Một lời gọi tới shard
+     */
+    private interface ShardCall<T> {
+        T call(BankingService shard, ShardParticipant participant) throws RemoteException;
+    }
+    
+    private final ShardMap shardMap;
+    private final List<String> shardUrls;
+    private final BankingService[] shards;
+    private final ShardParticipant[] participants;
+    private final CoordinatorLog log;
+    private final int nodeId;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet(); // giao dịch đang chạy, chưa có quyết định
+    private final ScheduledExecutorService resolver;
+    private final AsyncOperations async; // các thao tác gửi bằng submitAsync, thực hiện như lời gọi đồng bộ tới router
+    private final IdempotencyCache idempotency; // key của chuyển khoản giữa hai shard (chỉ trong bộ nhớ)
+    
+    public BankingRouter(List<String> shardUrls, CoordinatorLog log, int nodeId, long resolveIntervalSeconds,
+                         AsyncOperations async, IdempotencyCache idempotency) throws RemoteException {
+        super();
+        this.shardMap = new ShardMap(shardUrls.size());
+        this.shardUrls = new ArrayList<>(shardUrls);
+        this.shards = new BankingService[shardUrls.size()];
+        this.participants = new ShardParticipant[shardUrls.size()];
+        for (int i = 0; i < shardUrls.size(); i++) {
+            lookup(i);
+        }
+        this.log = log;
+        this.nodeId = nodeId;
+        this.async = async;
+        this.idempotency = idempotency;
+        
+        resolve();
+        resolver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "router-resolver");
+            t.setDaemon(true);
+            return t;
+        });
+        resolver.scheduleWithFixedDelay(this::resolve, resolveIntervalSeconds, resolveIntervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Gọi shard, tra lại stub và gọi lại một lần nếu shard đã khởi động lại
+     */
+    private <T> T call(int shard, ShardCall<T> call) throws RemoteException {
+        try {
+            return call.call(shards[shard], participants[shard]);
+        } catch (ConnectException | NoSuchObjectException e) {
+            lookup(shard);
+            return call.call(shards[shard], participants[shard]);
+        }
+    }
+    
+    private <T> T callAccount(String accountNumber, ShardCall<T> call) throws RemoteException {
+        return call(shardMap.shardOf(accountNumber), call);
+    }
+    
+    private synchronized void lookup(int shard) throws RemoteException {
+        try {
+            shards[shard] = (BankingService) Naming.lookup(shardUrls.get(shard));
+            // Các bước chuyển khoản giữa shard bind riêng, chỉ nhận kết nối từ máy nội bộ
+            participants[shard] = (ShardParticipant) Naming.lookup(shardUrls.get(shard) + BankingServer.PARTICIPANT_SUFFIX);
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Không kết nối được shard " + shard + ": " + shardUrls.get(shard), e);
+        }
+    }
+    
+    @Override
+    public String register(String username, String password, String fullName) throws RemoteException {
+        return call(shardMap.shardOfUser(username), (shard, p) -> shard.register(username, password, fullName));
+    }
+    
+    @Override
+    public String login(String username, String password) throws RemoteException {
+        return call(shardMap.shardOfUser(username), (shard, p) -> shard.login(username, password));
+    }
+    
+    @Override
+    public String queryAccount(String accountNumber) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.queryAccount(accountNumber));
+    }
+    
+    @Override
+    public String deposit(String accountNumber, double amount) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.deposit(accountNumber, amount));
+    }
+    
+    @Override
+    public String withdraw(String accountNumber, double amount) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.withdraw(accountNumber, amount));
+    }
+    
+    @Override
+    public String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException {
+        int fromShard = shardMap.shardOf(fromAccount);
+        int toShard = shardMap.shardOf(toAccount);
+        if (fromShard == toShard) {
+            return call(fromShard, (shard, p) -> shard.transfer(fromAccount, toAccount, amount, content));
+        }
+        long value = Money.fromDouble(amount);
+        if (value <= 0) {
+            return "Số tiền không hợp lệ";
+        }
+        
+        String transferId = IdGenerator.getInstance().nextString();
+        inFlight.add(transferId);
+        try {
+            // Pha 1: giữ tiền ở shard gốc, xác nhận tài khoản ở shard nhận
+            String debit;
+            try {
+                debit = call(fromShard, (shard, p) -> p.prepareDebit(transferId, fromAccount, toAccount, value, content));
+            } catch (RemoteException e) {
+                abort(transferId, fromShard);
+                throw e;
+            }
+            if (debit.startsWith("ERROR:")) {
+                return debit.substring(6);
+            }
+            String credit;
+            try {
+                credit = call(toShard, (shard, p) -> p.prepareCredit(transferId, toAccount, fromAccount, value, content));
+            } catch (RemoteException e) {
+                abort(transferId, fromShard, toShard);
+                throw e;
+            }
+            if (credit.startsWith("ERROR:")) {
+                abort(transferId, fromShard, toShard);
+                return credit.substring(6);
+            }
+            
+            // Điểm quyết định: sau khi COMMIT đã bền vững, giao dịch chắc chắn hoàn tất
+            try {
+                log.commit(transferId, fromShard, toShard);
+            } catch (IOException e) {
+                abort(transferId, fromShard, toShard);
+                throw new RemoteException("Lỗi ghi nhật ký điều phối", e);
+            }
+            
+            // Pha 2: shard lỗi sẽ được luồng khôi phục gửi lại commit
+            if (commit(transferId, fromShard) & commit(transferId, toShard)) {
+                end(transferId);
+            }
+            return "Đã chuyển: " + Money.toDouble(value) + " đến tài khoản: " + toAccount + 
+                   " Số dư hiện tại: " + debit.substring(8) + 
+                   " Nội dung: " + content;
+        } finally {
+            inFlight.remove(transferId);
+        }
+    }
+    
+    /**
+     * Lô được chia theo shard: các thao tác chỉ liên quan đến một shard được gom thành lô con gửi một lần.
+     * Chuyển khoản giữa hai shard được thực hiện riêng bằng giao thức hai pha, sau khi các lô con
+     * trước nó đã được gửi, nên thứ tự các thao tác trên cùng một tài khoản được giữ nguyên.
+     */
+    @Override
+    public List<String> submitBatch(List<Operation> operations) throws RemoteException {
+        if (operations == null) {
+            return new ArrayList<>();
+        }
+        String[] results = new String[operations.size()];
+        Map<Integer, List<Integer>> pending = new LinkedHashMap<>(); // shard -> vị trí các thao tác chờ gửi
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            int shard = shardMap.shardOf(operation == null ? null : operation.getAccountNumber());
+            if (operation != null && operation.getType() == Operation.Type.TRANSFER
+                    && shardMap.shardOf(operation.getToAccount()) != shard) {
+                submitPending(operations, pending, results);
+                results[i] = crossShardTransfer(operation);
+            } else {
+                pending.computeIfAbsent(shard, k -> new ArrayList<>()).add(i);
+            }
+        }
+        submitPending(operations, pending, results);
+        return new ArrayList<>(Arrays.asList(results));
+    }
+    
+    /**
+     * Chuyển khoản giữa hai shard trong lô. Thao tác có idempotency key được router ghi nhớ kết quả:
+     * transfer chỉ ném lỗi trước điểm quyết định (giao dịch đã hủy) nên chỉ khi đó key mới được bỏ.
+     * Key chỉ nằm trong bộ nhớ router, mất khi router khởi động lại hoặc client chuyển sang router khác.
+     */
+    private String crossShardTransfer(Operation operation) throws RemoteException {
+        if (operation.getIdempotencyKey() == null) {
+            return transfer(operation.getAccountNumber(), operation.getToAccount(), operation.getAmount(), operation.getContent());
+        }
+        String key = operation.getAccountNumber() + "/" + operation.getIdempotencyKey();
+        IdempotencyRecord previous;
+        try {
+            previous = idempotency.begin(key, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Bị gián đoạn khi chờ thao tác cùng idempotency key");
+        }
+        if (previous != null) {
+            return previous.getRequest().equals(operation.describe()) ? previous.getResult()
+                    : "Idempotency key đã được dùng cho một thao tác khác";
+        }
+        try {
+            String result = transfer(operation.getAccountNumber(), operation.getToAccount(),
+                    operation.getAmount(), operation.getContent());
+            idempotency.complete(new IdempotencyRecord(key, operation.describe(), result,
+                    System.currentTimeMillis(), Collections.emptyList()));
+            return result;
+        } finally {
+            idempotency.release(Collections.singleton(key));
+        }
+    }
+    
+    private void submitPending(List<Operation> operations, Map<Integer, List<Integer>> pending, String[] results) throws RemoteException {
+        for (Map.Entry<Integer, List<Integer>> entry : pending.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            List<Operation> subBatch = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                subBatch.add(operations.get(position));
+            }
+            List<String> subResults = call(entry.getKey(), (shard, p) -> shard.submitBatch(subBatch));
+            for (int k = 0; k < positions.size(); k++) {
+                results[positions.get(k)] = subResults.get(k);
+            }
+        }
+        pending.clear();
+    }
+    
+    @Override
+    public String submitAsync(Operation operation, BankingOperationCallback callback) throws RemoteException {
+        // Thực hiện như một lô một thao tác: cùng cách chia shard và chuyển khoản hai pha
+        return async.submit(operation, callback, op -> submitBatch(Collections.singletonList(op)).get(0));
+    }
+    
+    @Override
+    public OperationStatus getOperationStatus(String operationId) throws RemoteException {
+        return async.status(operationId);
+    }
+    
+    /**
+     * Chuyển khoản hàng loạt chỉ được chuyển tiếp khi mọi tài khoản nhận cùng shard với tài khoản gốc,
+     * khi đó shard thực hiện cả lần chuyển khoản bằng một bản ghi journal.
+     * Chia cho nhiều shard sẽ cần một giao dịch hai pha nhiều bên nên chưa hỗ trợ.
+     */
+    @Override
+    public String bulkTransfer(String fromAccount, Map<String, Double> payments, String content) throws RemoteException {
+        int fromShard = shardMap.shardOf(fromAccount);
+        if (payments != null) {
+            for (String toAccount : payments.keySet()) {
+                if (shardMap.shardOf(toAccount) != fromShard) {
+                    return "Chuyển khoản hàng loạt chỉ hỗ trợ tài khoản nhận cùng shard với tài khoản gốc: " + toAccount;
+                }
+            }
+        }
+        return call(fromShard, (shard, p) -> shard.bulkTransfer(fromAccount, payments, content));
+    }
+    
+    @Override
+    public List<Transaction> getTransactionHistory(String accountNumber) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.getTransactionHistory(accountNumber));
+    }
+    
+    @Override
+    public TransactionPage getTransactionHistoryPage(String accountNumber, String cursor, int pageSize) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.getTransactionHistoryPage(accountNumber, cursor, pageSize));
+    }
+    
+    @Override
+    public TransactionPage getTransactionsSince(String accountNumber, long lastSeenSequence) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.getTransactionsSince(accountNumber, lastSeenSequence));
+    }
+    
+    @Override
+    public void registerCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        // Shard gọi thẳng tới client, không đi qua router
+        callAccount(accountNumber, (shard, p) -> {
+            shard.registerCallback(accountNumber, callback);
+            return null;
+        });
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber) throws RemoteException {
+        callAccount(accountNumber, (shard, p) -> {
+            shard.unregisterCallback(accountNumber);
+            return null;
+        });
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        callAccount(accountNumber, (shard, p) -> {
+            shard.unregisterCallback(accountNumber, callback);
+            return null;
+        });
+    }
+    
+    @Override
+    public NotificationPage pollNotifications(String accountNumber, long sinceSequence, long maxWaitMillis) throws RemoteException {
+        return callAccount(accountNumber, (shard, p) -> shard.pollNotifications(accountNumber, sinceSequence, maxWaitMillis));
+    }
+    
+    /**
+     * Khôi phục: hoàn tất các giao dịch đã COMMIT, hủy các giao dịch bị bỏ dở trước khi có quyết định
+     */
+    void resolve() {
+        for (Map.Entry<String, int[]> entry : log.pending().entrySet()) {
+            String transferId = entry.getKey();
+            if (!inFlight.contains(transferId)
+                    && commit(transferId, entry.getValue()[0]) & commit(transferId, entry.getValue()[1])) {
+                end(transferId);
+            }
+        }
+        for (int shard = 0; shard < participants.length; shard++) {
+            List<String> inDoubt;
+            try {
+                inDoubt = call(shard, (s, p) -> p.inDoubt());
+            } catch (RemoteException e) {
+                System.err.println("Không kết nối được shard " + shard + " khi khôi phục: " + e.getMessage());
+                continue;
+            }
+            for (String transferId : inDoubt) {
+                long id = IdGenerator.parse(transferId);
+                if (id < 0 || IdGenerator.nodeOf(id) != nodeId
+                        || inFlight.contains(transferId) || log.isCommitted(transferId)) {
+                    continue;
+                }
+                abort(transferId, shard);
+            }
+        }
+    }
+    
+    public void shutdown() {
+        async.shutdown(2000);
+        resolver.shutdownNow();
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Lỗi đóng nhật ký điều phối: " + e.getMessage());
+        }
+    }
+    
+    private boolean commit(String transferId, int shard) {
+        try {
+            call(shard, (s, p) -> {
+                p.commit(transferId);
+                return null;
+            });
+            return true;
+        } catch (RemoteException e) {
+            System.err.println("Lỗi commit giao dịch " + transferId + " trên shard " + shard + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private void abort(String transferId, int... shardIds) {
+        for (int shard : shardIds) {
+            try {
+                call(shard, (s, p) -> {
+                    p.abort(transferId);
+                    return null;
+                });
+            } catch (RemoteException e) {
+                // Luồng khôi phục sẽ hủy lại
+                System.err.println("Lỗi hủy giao dịch " + transferId + " trên shard " + shard + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private void end(String transferId) {
+        try {
+            log.end(transferId);
+        } catch (IOException e) {
+            System.err.println("Lỗi ghi nhật ký điều phối: " + e.getMessage());
+        }
+    }
+    
+    public static void main(String[] args) {
+        try {
+            Properties config = new Properties();
+            try (FileInputStream fis = new FileInputStream("config.properties")) {
+                config.load(fis);
+            } catch (IOException e) {
+                System.out.println("Không tìm thấy config.properties, sử dụng cấu hình mặc định");
+            }
+            String shardList = config.getProperty("router.shards", "");
+            List<String> shardUrls = new ArrayList<>();
+            for (String url : shardList.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    shardUrls.add(url.trim());
+                }
+            }
+            if (shardUrls.isEmpty()) {
+                System.err.println("Chưa cấu hình router.shards trong config.properties");
+                System.exit(1);
+            }
+            int nodeId = Integer.parseInt(config.getProperty("server.nodeId", "0"));
+            IdGenerator.setInstance(new IdGenerator(nodeId));
+            
+            String hostIP = BankingServer.getRealIP();
+            System.setProperty("java.rmi.server.hostname", hostIP);
+            int port = Integer.parseInt(config.getProperty("server.port", "1099"));
+            Registry registry;
+            try {
+                registry = LocateRegistry.getRegistry(port);
+                registry.list();
+            } catch (Exception e) {
+                registry = LocateRegistry.createRegistry(port);
+            }
+            
+            CoordinatorLog log = new CoordinatorLog(new File(config.getProperty("router.logFile", "coordinator.log")));
+            // Router không có hàng đợi callback riêng: kết quả được gửi ngay trên luồng thực hiện thao tác
+            AsyncOperations async = new AsyncOperations(
+                    Integer.parseInt(config.getProperty("async.threads", "8")),
+                    Integer.parseInt(config.getProperty("async.queueCapacity", "10000")),
+                    Long.parseLong(config.getProperty("async.resultRetentionSeconds", "600")) * 1000L,
+                    Integer.parseInt(config.getProperty("async.maxRetainedResults", "100000")),
+                    (operation, callback, status) -> {
+                        try {
+                            callback.operationsCompleted(Collections.singletonList(status));
+                        } catch (RemoteException e) {
+                            System.err.println("Lỗi gửi kết quả thao tác " + status.getOperationId() + ": " + e.getMessage());
+                        }
+                    });
+            BankingRouter router = new BankingRouter(shardUrls, log, nodeId,
+                    Long.parseLong(config.getProperty("router.resolveIntervalSeconds", "30")), async,
+                    new IdempotencyCache(Integer.parseInt(config.getProperty("idempotency.maxEntries", "100000")),
+                            Long.parseLong(config.getProperty("idempotency.ttlHours", "24")) * 3600_000L));
+            Runtime.getRuntime().addShutdownHook(new Thread(router::shutdown));
+            
+            String serviceName = config.getProperty("service.name", "BankingService");
+            registry.rebind(serviceName, router);
+            System.out.println("Router đã sẵn sàng: rmi://" + hostIP + ":" + port + "/" + serviceName
+                    + " (" + shardUrls.size() + " shard)");
+        } catch (Exception e) {
+            System.err.println("Lỗi khởi động router: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -1,17 +1,145 @@
 import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.RMISocketFactory;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.Enumeration;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 public class BankingServer {
+    static final String PARTICIPANT_SUFFIX = "-participant"; // tên bind của ShardEndpoint: <tên service>-participant
+    static final String REPLICATION_SUFFIX = "-replication"; // tên bind của ReplicationEndpoint: <tên service>-replication
+    
+    /**
+     * Socket RMI có giới hạn thời gian kết nối, để việc gọi callback tới client
+     * đã mất mạng không bị treo theo thời gian chờ TCP mặc định của hệ điều hành
+     * (client cũng dùng để phát hiện nhanh server không liên lạc được)
+     */
+    static class TimeoutSocketFactory extends RMISocketFactory {
+        private final int timeoutMillis;
+        
+        TimeoutSocketFactory(int timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+        
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            return socket;
+        }
+        
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port);
+        }
+    }
+    
+    /**
+     * Socket server của các dịch vụ nội bộ (ShardEndpoint, ReplicationEndpoint): chỉ nhận kết nối
+     * từ chính máy này và các địa chỉ cho phép, kết nối khác bị đóng ngay khi nhận
+     */
+    static class InternalServerSocketFactory implements RMIServerSocketFactory {
+        private final Set<InetAddress> allowed;
+        
+        InternalServerSocketFactory(Set<InetAddress> allowed) {
+            this.allowed = allowed;
+        }
+        
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port) {
+                @Override
+                public Socket accept() throws IOException {
+                    while (true) {
+                        Socket socket = super.accept();
+                        InetAddress address = socket.getInetAddress();
+                        if (address.isLoopbackAddress() || allowed.contains(address)) {
+                            return socket;
+                        }
+                        System.err.println("Từ chối kết nối dịch vụ nội bộ từ " + address.getHostAddress());
+                        socket.close();
+                    }
+                }
+            };
+        }
+        
+        // RMI dùng chung cổng cho các đối tượng export với factory bằng nhau
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InternalServerSocketFactory && ((InternalServerSocketFactory) o).allowed.equals(allowed);
+        }
+        
+        @Override
+        public int hashCode() {
+            return allowed.hashCode();
+        }
+    }
+    
+    /**
+     * Socket cho dịch vụ nội bộ theo internal.allowedHosts (các máy chạy bản sao hoặc router, cách nhau bởi dấu phẩy)
+     */
+    static RMIServerSocketFactory internalSocketFactory() throws IOException {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream("config.properties")) {
+            props.load(fis);
+        } catch (IOException e) {
+            // Chỉ máy này
+        }
+        Set<InetAddress> allowed = new HashSet<>();
+        for (String host : props.getProperty("internal.allowedHosts", "").split(",")) {
+            if (!host.trim().isEmpty()) {
+                allowed.add(InetAddress.getByName(host.trim()));
+            }
+        }
+        return new InternalServerSocketFactory(allowed);
+    }
+    
+    // Thời gian chờ tối đa (ms) khi server gọi callback tới client: kết nối và chờ phản hồi
+    private static void configureCallbackTimeout() throws IOException {
+        int timeoutMillis = 5000;
+        try (FileInputStream fis = new FileInputStream("config.properties")) {
+            Properties props = new Properties();
+            props.load(fis);
+            timeoutMillis = Integer.parseInt(props.getProperty("callback.timeoutMillis", "5000"));
+        } catch (IOException | NumberFormatException e) {
+            // Dùng giá trị mặc định
+        }
+        // Phải đặt trước lần gọi RMI đầu tiên
+        System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(timeoutMillis));
+        RMISocketFactory.setSocketFactory(new TimeoutSocketFactory(timeoutMillis));
+    }
+    
+    /**
+     * Tên bind trong RMI registry: service.name, hoặc service.name-shard-<shard.id> khi chạy nhiều shard
+     * (client kết nối qua BankingRouter, bind bằng service.name)
+     */
+    static String serviceName() {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream("config.properties")) {
+            props.load(fis);
+        } catch (IOException e) {
+            // Dùng giá trị mặc định
+        }
+        String name = props.getProperty("service.name", "BankingService");
+        if (Integer.parseInt(props.getProperty("shard.count", "1")) > 1) {
+            name += "-shard-" + props.getProperty("shard.id", "0");
+        }
+        return name;
+    }
     
     // Lấy IP thực của máy (bỏ qua VirtualBox, VMware, Loopback)
-    private static String getRealIP() {
+    static String getRealIP() {
         try {
             // Thử đọc từ config trước
             try {
@@ -65,6 +193,8 @@ public class BankingServer {
     
     public static void main(String[] args) {
         try {
+            configureCallbackTimeout();
+            
             // Lấy địa chỉ IP thực của máy
             String hostIP = getRealIP();
             String hostName = InetAddress.getLocalHost().getHostName();
@@ -85,23 +215,35 @@ public class BankingServer {
             }
             
             // Tạo và đăng ký service
-            BankingService bankingService = new BankingServiceImpl();
+            BankingServiceImpl bankingService = new BankingServiceImpl();
+            String serviceName = serviceName();
+            
+            // Ghi nốt journal khi tắt server (Ctrl+C)
+            Runtime.getRuntime().addShutdownHook(new Thread(bankingService::shutdown));
             
             // Bind với cả localhost và IP thực
             try {
-                Naming.rebind("rmi://localhost/BankingService", bankingService);
+                Naming.rebind("rmi://localhost/" + serviceName, bankingService);
                 System.out.println("✓ Đã bind service với localhost");
             } catch (Exception e) {
                 System.err.println("⚠ Lỗi bind với localhost: " + e.getMessage());
             }
             
             try {
-                Naming.rebind("rmi://" + hostIP + "/BankingService", bankingService);
+                Naming.rebind("rmi://" + hostIP + "/" + serviceName, bankingService);
                 System.out.println("✓ Đã bind service với IP: " + hostIP);
             } catch (Exception e) {
                 System.err.println("⚠ Lỗi bind với IP " + hostIP + ": " + e.getMessage());
             }
             
+            // Dịch vụ nội bộ export riêng với stub của client: client không gọi được các bước chuyển khoản
+            // giữa shard hay đọc checkpoint/journal, chỉ router và bản sao trên các máy được phép
+            RMIServerSocketFactory internal = internalSocketFactory();
+            registry.rebind(serviceName + PARTICIPANT_SUFFIX, new ShardEndpoint(bankingService, internal));
+            registry.rebind(serviceName + REPLICATION_SUFFIX, new ReplicationEndpoint(bankingService, internal));
+            System.out.println("✓ Đã bind dịch vụ nội bộ: " + serviceName + PARTICIPANT_SUFFIX + ", "
+                    + serviceName + REPLICATION_SUFFIX);
+            
             System.out.println("================================================");
             System.out.println("   BANKING SERVER DA SAN SANG!");
             System.out.println("================================================");
@@ -110,10 +252,10 @@ public class BankingServer {
             System.out.println("Port: 1099");
             System.out.println("------------------------------------------------");
             System.out.println("URL ket noi cho CLIENT cung may:");
-            System.out.println("   rmi://localhost/BankingService");
+            System.out.println("   rmi://localhost/" + serviceName);
             System.out.println("");
             System.out.println("URL ket noi cho CLIENT may khac:");
-            System.out.println("   rmi://" + hostIP + "/BankingService");
+            System.out.println("   rmi://" + hostIP + "/" + serviceName);
             System.out.println("------------------------------------------------");
             System.out.println("Tren may CLIENT, sua file config.properties:");
             System.out.println("   server.host=" + hostIP);
@@ -1,6 +1,7 @@
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
 public interface BankingService extends Remote {
     /**
@@ -33,19 +34,75 @@ public interface BankingService extends Remote {
      */
     String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException;
     
+    /**
+     * Chuyển khoản hàng loạt (ví dụ trả lương): trừ tổng số tiền ở tài khoản gốc một lần
+     * và cộng cho từng tài khoản nhận. Thành công hoặc thất bại cho toàn bộ danh sách.
+     * @param payments tài khoản nhận -> số tiền
+     */
+    String bulkTransfer(String fromAccount, Map<String, Double> payments, String content) throws RemoteException;
+    
+    /**
+     * Thực hiện nhiều thao tác trong một lần gọi, theo đúng thứ tự.
+     * Các thao tác ghi của lô được lưu bằng một lần ghi journal; lô không phải giao dịch nguyên tử,
+     * mỗi thao tác thành công hay thất bại riêng.
+     * @return kết quả của từng thao tác, cùng dạng với kết quả của deposit/withdraw/transfer/queryAccount
+     */
+    List<String> submitBatch(List<Operation> operations) throws RemoteException;
+    
+    /**
+     * Nhận một thao tác để thực hiện bất đồng bộ, trả về ngay không chờ thao tác xong.
+     * Client có thể gửi tiếp các thao tác khác mà không chờ kết quả.
+     * @param callback nhận kết quả qua operationsCompleted khi xong, null nếu client tự hỏi bằng getOperationStatus
+     * @return "SUCCESS:" + mã thao tác, hoặc thông báo lỗi nếu server không nhận thao tác
+     */
+    String submitAsync(Operation operation, BankingOperationCallback callback) throws RemoteException;
+    
+    /**
+     * Trạng thái và kết quả của thao tác đã gửi bằng submitAsync
+     */
+    OperationStatus getOperationStatus(String operationId) throws RemoteException;
+    
     /**
      * Lấy lịch sử giao dịch
      */
     List<Transaction> getTransactionHistory(String accountNumber) throws RemoteException;
     
+    /**
+     * Lấy một trang lịch sử giao dịch (mới nhất trước)
+     * @param cursor null để lấy trang đầu, hoặc nextCursor của trang trước
+     * @param pageSize số giao dịch tối đa trong trang
+     */
+    TransactionPage getTransactionHistoryPage(String accountNumber, String cursor, int pageSize) throws RemoteException;
+    
+    /**
+     * Lấy các giao dịch mới hơn giao dịch client đã có (mới nhất trước).
+     * Sequence của giao dịch không đổi giữa các lần khởi động lại và giống nhau trên bản sao
+     * @param lastSeenSequence sequence của trang/lần đồng bộ trước, 0 để lấy toàn bộ
+     */
+    TransactionPage getTransactionsSince(String accountNumber, long lastSeenSequence) throws RemoteException;
+    
     /**
      * Đăng ký callback để nhận thông báo
      */
     void registerCallback(String accountNumber, BankingCallback callback) throws RemoteException;
     
     /**
-     * Hủy đăng ký callback
+     * Hủy đăng ký mọi callback của tài khoản
      */
     void unregisterCallback(String accountNumber) throws RemoteException;
+    
+    /**
+     * Hủy đăng ký một callback (các client khác cùng tài khoản vẫn nhận thông báo)
+     */
+    void unregisterCallback(String accountNumber, BankingCallback callback) throws RemoteException;
+    
+    /**
+     * Nhận thông báo chuyển khoản đến mà không cần export callback (dùng được sau NAT/firewall).
+     * Server giữ yêu cầu đến khi có thông báo mới hoặc hết maxWaitMillis.
+     * @param sinceSequence sequence của lần poll trước (các thông báo đến mốc này coi như đã nhận),
+     *                      -1 để nhận các thông báo chưa gửi được cho tài khoản
+     * @return thông báo mới (có thể rỗng khi hết thời gian chờ) và mốc cho lần poll tiếp theo
+     */
+    NotificationPage pollNotifications(String accountNumber, long sinceSequence, long maxWaitMillis) throws RemoteException;
 }
 
@@ -1,35 +1,143 @@
 import java.io.*;
+import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BankingServiceImpl extends UnicastRemoteObject implements BankingService {
-    private Map<String, Account> accounts;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_REPLICATION_CHUNK = 4 << 20; // byte journal tối đa mỗi lần bản sao đọc
+    private static final int MIGRATION_CHUNK = 10000; // giao dịch mỗi lần ghi khi chuyển transactions.json sang journal
+    
+    private AccountStore accounts;
     private Map<String, User> users; // username -> User
-    private List<Transaction> transactions;
-    private Map<String, BankingCallback> callbacks; // accountNumber -> Callback
+    private final Set<String> registering = ConcurrentHashMap.newKeySet(); // username đang đăng ký, chưa ghi journal
+    private TransactionIndex transactions; // accountNumber -> lịch sử giao dịch
+    private CallbackRegistry callbacks; // accountNumber -> các client đăng ký
+    private CallbackDispatcher dispatcher;
+    private NotificationOutbox outbox; // thông báo chuyển khoản chưa gửi được
+    private NotificationWaiters waiters; // các yêu cầu pollNotifications đang chờ
+    private AsyncOperations async; // các thao tác gửi bằng submitAsync
+    private IdempotencyCache idempotency; // kết quả các thao tác có idempotency key
     private String accountsFile = "accounts.json";
-    private String usersFile = "users.json";
+    private String usersFile = "users.json"; // chỉ đọc khi chuyển dữ liệu cũ, người dùng lưu trong journal/checkpoint
     private String transactionsFile = "transactions.json";
-    private int accountCounter = 10000;
+    private String journalDir = "journal";
+    private String checkpointFile = "checkpoint.dat";
+    private String accountStoreFile = "accounts.dat";
+    private TransactionJournal journal;
+    private CheckpointManager checkpoints;
+    private Properties config = new Properties();
+    private final AtomicInteger accountCounter = new AtomicInteger(10000); // sequence của bộ cấp số khi nạp trạng thái
+    private AccountNumberAllocator accountNumbers;
+    private ShardMap shardMap; // các server trong cụm chia tài khoản theo shard
+    private int shardId;
+    private final Map<String, TransferPhase> preparedTransfers = new ConcurrentHashMap<>(); // transferId -> bước prepare
+    private final Map<String, Long> reservedCredits = new ConcurrentHashMap<>(); // accountNumber -> khoản cộng chưa ghi journal
+    private int maxBatchSize; // số thao tác tối đa trong một lần submitBatch
+    
+    /**
+     * Bản ghi journal và thông báo của một hoặc nhiều thao tác, được ghi/gửi một lần khi xử lý xong
+     */
+    private static class WriteBatch {
+        final List<Object> records = new ArrayList<>();
+        final List<Runnable> afterFlush = new ArrayList<>();
+        final Map<String, IdempotencyRecord> keys = new HashMap<>(); // idempotency key đã nhận trong lô
+        final List<Runnable> undo = new ArrayList<>(); // hoàn lại các khoản đã trừ nếu ghi journal lỗi
+        final Map<String, Long> credits; // accountNumber -> khoản cộng chờ ghi journal, chỉ lô này tiêu được
+        final Map<String, Long> reserved; // accountNumber -> tổng khoản lô đã giữ chỗ trong reservedCredits
+        final List<Transaction> appended; // giao dịch đã thêm vào lịch sử, chờ commit
+        
+        WriteBatch() {
+            credits = new HashMap<>();
+            reserved = new HashMap<>();
+            appended = new ArrayList<>();
+        }
+        
+        // Lô con được ghi cùng lô cha nên dùng chung các khoản cộng và giao dịch đang chờ
+        WriteBatch(WriteBatch parent) {
+            credits = parent.credits;
+            reserved = parent.reserved;
+            appended = parent.appended;
+        }
+    }
+    
+    private static final String BALANCE_OVERFLOW = "Số dư tài khoản vượt quá giới hạn";
+    private static final String JOURNAL_FAILED = "Lỗi lưu giao dịch, thao tác chưa được thực hiện. Vui lòng thử lại";
     
     public BankingServiceImpl() throws RemoteException {
         super();
-        accounts = new HashMap<>();
-        users = new HashMap<>();
-        transactions = new ArrayList<>();
-        callbacks = new HashMap<>();
-        loadAccounts();
-        loadUsers();
-        loadTransactions();
+        loadConfig();
+        // Mỗi server trong cụm cần một server.nodeId khác nhau để mã giao dịch không trùng
+        IdGenerator.setInstance(new IdGenerator(Integer.parseInt(config.getProperty("server.nodeId", "0"))));
+        shardMap = new ShardMap(Integer.parseInt(config.getProperty("shard.count", "1")));
+        shardId = Integer.parseInt(config.getProperty("shard.id", "0"));
+        maxBatchSize = Integer.parseInt(config.getProperty("batch.maxSize", "10000"));
+        transactions = new TransactionIndex();
+        callbacks = new CallbackRegistry();
+        dispatcher = new CallbackDispatcher(
+                Integer.parseInt(config.getProperty("callback.threads", "8")),
+                Integer.parseInt(config.getProperty("callback.queueCapacity", "10000")),
+                Long.parseLong(config.getProperty("callback.batchWindowMillis", "100")),
+                Integer.parseInt(config.getProperty("callback.batchMaxSize", "500")),
+                new CallbackDispatcher.Listener() {
+                    @Override
+                    public void onDelivered(List<TransferNotification> notifications) {
+                        markNotified(notifications);
+                    }
+                    
+                    @Override
+                    public void onFailure(String accountNumber, Remote callback, RemoteException e) {
+                        // Client có thể đã ngắt kết nối, xóa callback; thông báo còn lại trong hộp thư,
+                        // kết quả thao tác bất đồng bộ vẫn hỏi được bằng getOperationStatus
+                        System.err.println("Lỗi gửi thông báo cho tài khoản " + accountNumber + ": " + e.getMessage());
+                        if (callback instanceof BankingCallback) {
+                            callbacks.unregister(accountNumber, (BankingCallback) callback);
+                        }
+                    }
+                });
+        waiters = new NotificationWaiters(
+                Integer.parseInt(config.getProperty("poll.maxWaiters", "2000")),
+                Long.parseLong(config.getProperty("poll.maxWaitMillis", "30000")));
+        // Kết quả thao tác bất đồng bộ được gửi qua cùng hàng đợi callback với thông báo chuyển khoản
+        async = new AsyncOperations(
+                Integer.parseInt(config.getProperty("async.threads", "8")),
+                Integer.parseInt(config.getProperty("async.queueCapacity", "10000")),
+                Long.parseLong(config.getProperty("async.resultRetentionSeconds", "600")) * 1000L,
+                Integer.parseInt(config.getProperty("async.maxRetainedResults", "100000")),
+                (operation, callback, status) -> dispatcher.submitResult(operation.getAccountNumber(), callback, status));
+        loadState();
         
-        // Tạo tài khoản mẫu nếu chưa có
-        if (accounts.isEmpty()) {
-            accounts.put("01234", new Account("01234", 5000));
-            accounts.put("12345", new Account("12345", 10000));
-            saveAccounts();
+        // Tạo tài khoản mẫu nếu chưa có (mỗi tài khoản chỉ tạo trên shard sở hữu nó)
+        if (accounts.size() == 0) {
+            List<Object> samples = new ArrayList<>();
+            for (Account sample : new Account[] {
+                    new Account("01234", 5000L * Money.SCALE), new Account("12345", 10000L * Money.SCALE)}) {
+                if (shardMap.shardOf(sample.getAccountNumber()) != shardId) {
+                    continue;
+                }
+                try {
+                    accounts.put(sample.getAccountNumber(), sample.getBalance());
+                } catch (IOException e) {
+                    throw new RemoteException("Lỗi tạo tài khoản mẫu", e);
+                }
+                samples.add(sample);
+            }
+            if (!samples.isEmpty()) {
+                try {
+                    appendRecords(samples.toArray());
+                } catch (IOException e) {
+                    throw new RemoteException("Lỗi ghi journal tài khoản mẫu", e);
+                }
+            }
         }
+        
+        checkpoints.start(Long.parseLong(config.getProperty("checkpoint.intervalSeconds", "300")));
     }
     
     @Override
@@ -44,23 +152,53 @@ public class BankingServiceImpl extends UnicastRemoteObject implements BankingSe
             return "ERROR:Họ tên không được để trống";
         }
         
-        if (users.containsKey(username)) {
+        // Giữ tên đăng nhập (hai lượt đăng ký cùng tên chạy đồng thời: chỉ một lượt thành công)
+        if (users.containsKey(username) || !registering.add(username)) {
             return "ERROR:Tên đăng nhập đã tồn tại";
         }
-        
-        // Tạo số tài khoản mới
-        String accountNumber = String.format("%05d", accountCounter++);
-        while (accounts.containsKey(accountNumber)) {
-            accountNumber = String.format("%05d", accountCounter++);
+        try {
+            if (users.containsKey(username)) {
+                return "ERROR:Tên đăng nhập đã tồn tại";
+            }
+            return createAccount(username, password, fullName);
+        } finally {
+            registering.remove(username);
+        }
+    }
+    
+    /**
+     * Ghi user và account mới vào journal trước, rồi mới đưa vào bộ nhớ: thao tác khác chỉ thấy
+     * tài khoản sau khi bản ghi tạo tài khoản đã bền, nên khi replay không có giao dịch nào
+     * đứng trước bản ghi tạo tài khoản của nó
+     */
+    private String createAccount(String username, String password, String fullName) {
+        // Tạo số tài khoản mới (bỏ qua số đã có trong dữ liệu cũ)
+        String accountNumber;
+        try {
+            do {
+                accountNumber = String.format("%05d", shardMap.accountNumber(accountNumbers.allocate(), shardId));
+            } while (accounts.contains(accountNumber));
+        } catch (IOException e) {
+            System.err.println("Lỗi cấp số tài khoản: " + e.getMessage());
+            return "ERROR:Không thể tạo tài khoản, vui lòng thử lại";
         }
         
-        // Tạo user và account mới
         User user = new User(username, password, accountNumber, fullName);
+        Account account = new Account(accountNumber, 0);
+        try {
+            appendRecords(user, account);
+        } catch (IOException e) {
+            System.err.println("Lỗi ghi journal đăng ký: " + e.getMessage());
+            return "ERROR:Không thể tạo tài khoản, vui lòng thử lại";
+        }
+        try {
+            accounts.put(accountNumber, account.getBalance());
+        } catch (IOException e) {
+            // Bản ghi đã bền: tài khoản có lại sau khi server khởi động lại
+            System.err.println("Lỗi tạo tài khoản " + accountNumber + ": " + e.getMessage());
+            return "ERROR:Không thể tạo tài khoản, vui lòng thử lại";
+        }
         users.put(username, user);
-        accounts.put(accountNumber, new Account(accountNumber, 0));
-        
-        saveUsers();
-        saveAccounts();
         
         return "SUCCESS:" + accountNumber;
     }
@@ -81,430 +219,1129 @@ public class BankingServiceImpl extends UnicastRemoteObject implements BankingSe
     
     @Override
     public String queryAccount(String accountNumber) throws RemoteException {
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
+        long balance = accounts.getBalance(accountNumber);
+        if (balance == AccountStore.NO_ACCOUNT) {
             return "Không tìm thấy tài khoản: " + accountNumber;
         }
-        return "Số dư hiện tại: " + account.getBalance();
+        return "Số dư hiện tại: " + Money.toDouble(balance);
     }
     
     @Override
     public String deposit(String accountNumber, double amount) throws RemoteException {
-        if (amount <= 0) {
-            return "Số tiền không hợp lệ";
+        WriteBatch batch = new WriteBatch();
+        String result = applyDeposit(accountNumber, amount, batch);
+        return flush(batch) ? result : JOURNAL_FAILED;
+    }
+    
+    @Override
+    public String withdraw(String accountNumber, double amount) throws RemoteException {
+        WriteBatch batch = new WriteBatch();
+        String result = applyWithdraw(accountNumber, amount, batch);
+        return flush(batch) ? result : JOURNAL_FAILED;
+    }
+    
+    @Override
+    public String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException {
+        WriteBatch batch = new WriteBatch();
+        String result = applyTransfer(fromAccount, toAccount, amount, content, batch);
+        return flush(batch) ? result : JOURNAL_FAILED;
+    }
+    
+    @Override
+    public List<String> submitBatch(List<Operation> operations) throws RemoteException {
+        List<String> results = new ArrayList<>(operations == null ? 0 : operations.size());
+        if (operations == null) {
+            return results;
+        }
+        if (operations.size() > maxBatchSize) {
+            for (int i = 0; i < operations.size(); i++) {
+                results.add("Lô có " + operations.size() + " thao tác, vượt quá giới hạn " + maxBatchSize);
+            }
+            return results;
         }
         
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
-            return "Không tìm thấy tài khoản: " + accountNumber;
+        // Mọi thao tác ghi của lô được lưu bằng một lần ghi journal (một lần fsync)
+        WriteBatch batch = new WriteBatch();
+        try {
+            for (Operation operation : operations) {
+                results.add(apply(operation, batch));
+            }
+            if (!flush(batch)) {
+                // Các thao tác ghi của lô đã được hoàn lại
+                for (int i = 0; i < operations.size(); i++) {
+                    Operation operation = operations.get(i);
+                    if (operation != null && !operation.isReadOnly()) {
+                        results.set(i, JOURNAL_FAILED);
+                    }
+                }
+            }
+        } finally {
+            idempotency.release(batch.keys.keySet());
+        }
+        return results;
+    }
+    
+    @Override
+    public String bulkTransfer(String fromAccount, Map<String, Double> payments, String content) throws RemoteException {
+        if (payments == null || payments.isEmpty()) {
+            return "Danh sách tài khoản nhận trống";
+        }
+        if (payments.size() > maxBatchSize) {
+            return "Danh sách có " + payments.size() + " tài khoản nhận, vượt quá giới hạn " + maxBatchSize;
+        }
+        if (!accounts.contains(fromAccount)) {
+            return "Không tìm thấy tài khoản gốc: " + fromAccount;
+        }
+        
+        // Kiểm tra toàn bộ danh sách trước khi trừ tiền, lỗi ở một dòng thì không thực hiện dòng nào
+        Map<String, Long> amounts = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<String, Double> payment : payments.entrySet()) {
+            String toAccount = payment.getKey();
+            long value = payment.getValue() == null ? 0 : Money.fromDouble(payment.getValue());
+            if (value <= 0) {
+                return "Số tiền không hợp lệ cho tài khoản: " + toAccount;
+            }
+            if (fromAccount.equals(toAccount)) {
+                return "Không thể chuyển khoản đến chính tài khoản gốc";
+            }
+            // Tài khoản không bị xóa nên sau bước kiểm tra này việc cộng tiền chỉ lỗi khi số dư vượt giới hạn
+            if (!accounts.contains(toAccount)) {
+                return "Không tìm thấy tài khoản nhận: " + toAccount;
+            }
+            try {
+                total = Math.addExact(total, value);
+            } catch (ArithmeticException e) {
+                return "Tổng số tiền không hợp lệ";
+            }
+            amounts.put(toAccount, value);
         }
         
-        account.setBalance(account.getBalance() + amount);
-        saveAccounts();
+        // Trừ tổng số tiền một lần (nguyên tử, không âm); các khoản cộng chỉ vào số dư sau khi ghi journal
+        WriteBatch batch = new WriteBatch();
+        long fromBalance = debitBalance(fromAccount, total, batch);
+        if (fromBalance == AccountStore.INSUFFICIENT_FUNDS) {
+            return "Số dư không đủ";
+        }
+        Transaction debit = new Transaction(fromAccount, "TRANSFER_OUT", total,
+                content + " (" + amounts.size() + " tài khoản nhận)");
+        record(debit, batch);
+        List<Transaction> credits = new ArrayList<>(amounts.size());
+        for (Map.Entry<String, Long> entry : amounts.entrySet()) {
+            String toAccount = entry.getKey();
+            long value = entry.getValue();
+            try {
+                reserveCredit(toAccount, value, batch);
+            } catch (ArithmeticException e) {
+                // Hoàn lại khoản đã trừ và các khoản đã giữ chỗ, không thực hiện dòng nào
+                rollback(batch);
+                return BALANCE_OVERFLOW + ": " + toAccount;
+            }
+            Transaction credit = new Transaction(toAccount, "TRANSFER_IN", value, content, fromAccount);
+            long sequence = record(credit, batch);
+            credits.add(credit);
+            batch.afterFlush.add(() -> {
+                notifyTransferReceived(sequence, toAccount, fromAccount, value, content, accounts.getBalance(toAccount));
+                waiters.signal(toAccount);
+            });
+        }
         
-        // Lưu transaction
-        Transaction transaction = new Transaction(accountNumber, "DEPOSIT", amount, "Nạp tiền vào tài khoản");
-        transactions.add(transaction);
-        saveTransactions();
+        // Một bản ghi journal cho cả lần chuyển khoản; thông báo được gửi trên luồng nền sau khi ghi
+        batch.records.add(new BulkTransfer(debit, credits));
+        if (!flush(batch)) {
+            return JOURNAL_FAILED;
+        }
         
-        return "Đã nạp: " + amount + " Số dư hiện tại: " + account.getBalance();
+        return "Đã chuyển: " + Money.toDouble(total) + " đến " + amounts.size() + " tài khoản" +
+               " Số dư hiện tại: " + Money.toDouble(fromBalance) +
+               " Nội dung: " + content;
     }
     
     @Override
-    public String withdraw(String accountNumber, double amount) throws RemoteException {
-        if (amount <= 0) {
+    public String submitAsync(Operation operation, BankingOperationCallback callback) throws RemoteException {
+        return async.submit(operation, callback, op -> {
+            WriteBatch batch = new WriteBatch();
+            try {
+                String result = apply(op, batch);
+                return flush(batch) ? result : JOURNAL_FAILED;
+            } finally {
+                idempotency.release(batch.keys.keySet());
+            }
+        });
+    }
+    
+    @Override
+    public OperationStatus getOperationStatus(String operationId) throws RemoteException {
+        return async.status(operationId);
+    }
+    
+    /**
+     * Thực hiện một thao tác của lô. Thao tác ghi có idempotency key chỉ được thực hiện một lần:
+     * key đã có kết quả (trong bộ nhớ đệm hoặc trước đó trong cùng lô) trả lại kết quả cũ.
+     * Người gọi phải release các key của lô khi xong (kể cả khi lỗi).
+     */
+    private String apply(Operation operation, WriteBatch batch) throws RemoteException {
+        if (operation == null || operation.getIdempotencyKey() == null || operation.isReadOnly()) {
+            return applyOperation(operation, batch);
+        }
+        String key = operation.getAccountNumber() + "/" + operation.getIdempotencyKey();
+        IdempotencyRecord previous = batch.keys.get(key);
+        if (previous == null) {
+            try {
+                previous = idempotency.begin(key, batch.keys.isEmpty());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Bị gián đoạn khi chờ thao tác cùng idempotency key");
+            }
+        }
+        if (previous == IdempotencyCache.IN_PROGRESS) {
+            return previous.getResult();
+        }
+        if (previous != null) {
+            return previous.getRequest().equals(operation.describe()) ? previous.getResult()
+                    : "Idempotency key đã được dùng cho một thao tác khác";
+        }
+        
+        // Giao dịch của thao tác được ghi cùng key trong một bản ghi journal
+        WriteBatch own = new WriteBatch(batch);
+        String result = applyOperation(operation, own);
+        List<Transaction> applied = new ArrayList<>(own.records.size());
+        for (Object record : own.records) {
+            applied.add((Transaction) record);
+        }
+        IdempotencyRecord record = new IdempotencyRecord(key, operation.describe(), result,
+                System.currentTimeMillis(), applied);
+        batch.keys.put(key, record);
+        batch.records.add(record);
+        batch.afterFlush.add(() -> idempotency.complete(record));
+        batch.afterFlush.addAll(own.afterFlush);
+        batch.undo.addAll(own.undo);
+        return result;
+    }
+    
+    private String applyOperation(Operation operation, WriteBatch batch) throws RemoteException {
+        if (operation == null || operation.getType() == null) {
+            return "Thao tác không hợp lệ";
+        }
+        switch (operation.getType()) {
+            case DEPOSIT:
+                return applyDeposit(operation.getAccountNumber(), operation.getAmount(), batch);
+            case WITHDRAW:
+                return applyWithdraw(operation.getAccountNumber(), operation.getAmount(), batch);
+            case TRANSFER:
+                return applyTransfer(operation.getAccountNumber(), operation.getToAccount(), operation.getAmount(),
+                        operation.getContent(), batch);
+            case QUERY:
+                return queryAccount(operation.getAccountNumber(), batch);
+            default:
+                return "Thao tác không hợp lệ";
+        }
+    }
+    
+    // Số dư trong lô tính cả các khoản cộng đang chờ của chính lô
+    private String queryAccount(String accountNumber, WriteBatch batch) throws RemoteException {
+        long balance = accounts.getBalance(accountNumber);
+        if (balance == AccountStore.NO_ACCOUNT) {
+            return queryAccount(accountNumber);
+        }
+        return "Số dư hiện tại: " + Money.toDouble(balance + batch.credits.getOrDefault(accountNumber, 0L));
+    }
+    
+    private String applyDeposit(String accountNumber, double amount, WriteBatch batch) {
+        long value = Money.fromDouble(amount);
+        if (value <= 0) {
             return "Số tiền không hợp lệ";
         }
         
-        Account account = accounts.get(accountNumber);
-        if (account == null) {
+        // Tiền nạp chỉ vào số dư sau khi ghi journal
+        long balance;
+        try {
+            balance = reserveCredit(accountNumber, value, batch);
+        } catch (ArithmeticException e) {
+            return BALANCE_OVERFLOW;
+        }
+        if (balance == AccountStore.NO_ACCOUNT) {
             return "Không tìm thấy tài khoản: " + accountNumber;
         }
         
-        if (account.getBalance() < amount) {
-            return "Số dư không đủ";
+        // Lưu transaction
+        Transaction transaction = new Transaction(accountNumber, "DEPOSIT", value, "Nạp tiền vào tài khoản");
+        record(transaction, batch);
+        batch.records.add(transaction);
+        
+        return "Đã nạp: " + Money.toDouble(value) + " Số dư hiện tại: " + Money.toDouble(balance);
+    }
+    
+    private String applyWithdraw(String accountNumber, double amount, WriteBatch batch) {
+        long value = Money.fromDouble(amount);
+        if (value <= 0) {
+            return "Số tiền không hợp lệ";
         }
         
-        account.setBalance(account.getBalance() - amount);
-        saveAccounts();
+        // Kiểm tra số dư và trừ tiền là một thao tác nguyên tử
+        long balance = debitBalance(accountNumber, value, batch);
+        if (balance == AccountStore.NO_ACCOUNT) {
+            return "Không tìm thấy tài khoản: " + accountNumber;
+        }
+        if (balance == AccountStore.INSUFFICIENT_FUNDS) {
+            return "Số dư không đủ";
+        }
         
         // Lưu transaction
-        Transaction transaction = new Transaction(accountNumber, "WITHDRAW", amount, "Rút tiền từ tài khoản");
-        transactions.add(transaction);
-        saveTransactions();
+        Transaction transaction = new Transaction(accountNumber, "WITHDRAW", value, "Rút tiền từ tài khoản");
+        record(transaction, batch);
+        batch.records.add(transaction);
         
-        return "Đã rút: " + amount + " Số dư hiện tại: " + account.getBalance();
+        return "Đã rút: " + Money.toDouble(value) + " Số dư hiện tại: " + Money.toDouble(balance);
     }
     
-    @Override
-    public String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException {
-        if (amount <= 0) {
+    private String applyTransfer(String fromAccount, String toAccount, double amount, String content, WriteBatch batch) {
+        long value = Money.fromDouble(amount);
+        if (value <= 0) {
             return "Số tiền không hợp lệ";
         }
         
-        Account from = accounts.get(fromAccount);
-        Account to = accounts.get(toAccount);
+        if (fromAccount != null && fromAccount.equals(toAccount)) {
+            return "Không thể chuyển khoản đến chính tài khoản gốc";
+        }
         
-        if (from == null) {
+        if (!accounts.contains(fromAccount)) {
             return "Không tìm thấy tài khoản gốc: " + fromAccount;
         }
         
-        if (to == null) {
+        // Tài khoản không bị xóa nên sau bước kiểm tra này việc cộng tiền chỉ lỗi khi số dư vượt giới hạn
+        if (!accounts.contains(toAccount)) {
             return "Không tìm thấy tài khoản nhận: " + toAccount;
         }
         
-        if (from.getBalance() < amount) {
+        // Trừ tiền tài khoản gốc (nguyên tử, không âm) rồi giữ chỗ khoản cộng cho tài khoản nhận
+        // (chỉ vào số dư sau khi ghi journal); số dư nhận vượt giới hạn thì hoàn lại khoản đã trừ
+        long fromBalance = debitBalance(fromAccount, value, batch);
+        if (fromBalance == AccountStore.INSUFFICIENT_FUNDS) {
             return "Số dư không đủ";
         }
-        
-        from.setBalance(from.getBalance() - amount);
-        to.setBalance(to.getBalance() + amount);
-        saveAccounts();
+        try {
+            reserveCredit(toAccount, value, batch);
+        } catch (ArithmeticException e) {
+            batch.undo.remove(batch.undo.size() - 1).run(); // hoàn lại khoản vừa trừ
+            return BALANCE_OVERFLOW;
+        }
         
         // Lưu transactions cho cả 2 tài khoản
-        Transaction transactionOut = new Transaction(fromAccount, "TRANSFER_OUT", amount, content, toAccount);
-        Transaction transactionIn = new Transaction(toAccount, "TRANSFER_IN", amount, content, fromAccount);
-        transactions.add(transactionOut);
-        transactions.add(transactionIn);
-        saveTransactions();
+        Transaction transactionOut = new Transaction(fromAccount, "TRANSFER_OUT", value, content, toAccount);
+        Transaction transactionIn = new Transaction(toAccount, "TRANSFER_IN", value, content, fromAccount);
+        record(transactionOut, batch);
+        long sequence = record(transactionIn, batch);
+        batch.records.add(transactionOut);
+        batch.records.add(transactionIn);
         
-        // Gửi thông báo callback cho tài khoản nhận
-        notifyTransferReceived(toAccount, fromAccount, amount, content, to.getBalance());
+        // Gửi thông báo callback cho tài khoản nhận và trả kết quả cho các yêu cầu poll đang chờ
+        batch.afterFlush.add(() -> {
+            notifyTransferReceived(sequence, toAccount, fromAccount, value, content, accounts.getBalance(toAccount));
+            waiters.signal(toAccount);
+        });
         
-        return "Đã chuyển: " + amount + " đến tài khoản: " + toAccount + 
-               " Số dư hiện tại: " + from.getBalance() + 
+        return "Đã chuyển: " + Money.toDouble(value) + " đến tài khoản: " + toAccount + 
+               " Số dư hiện tại: " + Money.toDouble(fromBalance) + 
                " Nội dung: " + content;
     }
     
     /**
-     * Gửi thông báo cho client khi nhận được chuyển khoản
+     * Giữ chỗ một khoản cộng tiền của lô. Khoản cộng chỉ vào số dư khi journal đã ghi xong (xem flush):
+     * thao tác khác không đọc hay tiêu được tiền có thể còn bị hoàn lại, chỉ chính lô này tiêu được
+     * (cùng được ghi hoặc cùng bị hoàn lại). Số dư cộng mọi khoản đang giữ chỗ không vượt phạm vi long,
+     * nên việc cộng sau khi ghi không lỗi.
+     * @return số dư lô thấy sau khoản cộng, NO_ACCOUNT nếu tài khoản không tồn tại
+     * @throws ArithmeticException nếu số dư có thể vượt quá phạm vi long (không giữ chỗ)
      */
-    private void notifyTransferReceived(String toAccount, String fromAccount, double amount, String content, double newBalance) {
-        BankingCallback callback = callbacks.get(toAccount);
-        if (callback != null) {
+    private long reserveCredit(String accountNumber, long amount, WriteBatch batch) {
+        boolean[] found = new boolean[1];
+        reservedCredits.compute(accountNumber, (account, reserved) -> {
+            long balance = accounts.getBalance(account);
+            if (balance == AccountStore.NO_ACCOUNT) {
+                return reserved;
+            }
+            long total = Math.addExact(reserved == null ? 0 : reserved, amount);
+            Math.addExact(balance, total);
+            found[0] = true;
+            return total;
+        });
+        if (!found[0]) {
+            return AccountStore.NO_ACCOUNT;
+        }
+        batch.reserved.merge(accountNumber, amount, Long::sum);
+        return accounts.getBalance(accountNumber) + batch.credits.merge(accountNumber, amount, Long::sum);
+    }
+    
+    /**
+     * Trừ tiền cho lô: dùng trước các khoản cộng đang chờ của chính lô, phần còn lại trừ nguyên tử
+     * (không âm) khỏi số dư. Khoản trừ được ghi vào undo của lô
+     * @return số dư lô thấy sau khi trừ, NO_ACCOUNT hoặc INSUFFICIENT_FUNDS như AccountStore.withdraw
+     */
+    private long debitBalance(String accountNumber, long amount, WriteBatch batch) {
+        long pending = batch.credits.getOrDefault(accountNumber, 0L);
+        long fromPending = Math.min(pending, amount);
+        long withdrawn = amount - fromPending;
+        long balance = accounts.withdraw(accountNumber, withdrawn);
+        if (balance == AccountStore.NO_ACCOUNT || balance == AccountStore.INSUFFICIENT_FUNDS) {
+            return balance;
+        }
+        batch.credits.put(accountNumber, pending - fromPending);
+        batch.undo.add(() -> {
+            accounts.addBalance(accountNumber, withdrawn);
+            batch.credits.merge(accountNumber, fromPending, Long::sum);
+        });
+        return balance + pending - fromPending;
+    }
+    
+    /**
+     * Thêm giao dịch của lô vào lịch sử; người đọc chỉ thấy giao dịch sau khi lô ghi xong
+     * @return sequence của giao dịch
+     */
+    private long record(Transaction transaction, WriteBatch batch) {
+        batch.appended.add(transaction);
+        return transactions.append(transaction);
+    }
+    
+    /**
+     * Bỏ các khoản cộng lô đã giữ chỗ
+     */
+    private void releaseCredits(WriteBatch batch) {
+        for (Map.Entry<String, Long> entry : batch.reserved.entrySet()) {
+            long amount = entry.getValue();
+            reservedCredits.computeIfPresent(entry.getKey(), (account, reserved) -> reserved == amount ? null : reserved - amount);
+        }
+        batch.reserved.clear();
+        batch.credits.clear();
+    }
+    
+    /**
+     * Hoàn lại lô không ghi được: trả lại các khoản đã trừ (thứ tự ngược lại), bỏ các khoản cộng đã giữ chỗ
+     * và các giao dịch đang chờ trong lịch sử. Khoản cộng chưa vào số dư nên không phải trừ lại:
+     * không thao tác nào đã tiêu số tiền đó
+     */
+    private void rollback(WriteBatch batch) {
+        for (int i = batch.undo.size() - 1; i >= 0; i--) {
+            batch.undo.get(i).run();
+        }
+        batch.undo.clear();
+        releaseCredits(batch);
+        for (Transaction transaction : batch.appended) {
+            transactions.remove(transaction);
+        }
+        batch.appended.clear();
+    }
+    
+    /**
+     * Ghi các bản ghi của lô vào journal bằng một lần ghi, rồi cộng các khoản đang chờ vào số dư,
+     * cho các giao dịch hiện ra trong lịch sử và gửi thông báo.
+     * Ghi lỗi thì hoàn lại lô (xem rollback) và không gửi thông báo
+     * @return false nếu ghi journal lỗi
+     */
+    private boolean flush(WriteBatch batch) {
+        if (!batch.records.isEmpty()) {
             try {
-                callback.notifyTransferReceived(fromAccount, amount, content, newBalance);
-            } catch (RemoteException e) {
-                // Client có thể đã ngắt kết nối, xóa callback
-                System.err.println("Lỗi gửi thông báo cho tài khoản " + toAccount + ": " + e.getMessage());
-                callbacks.remove(toAccount);
+                appendRecords(batch.records.toArray());
+            } catch (IOException e) {
+                System.err.println("Lỗi ghi journal giao dịch, hoàn lại thao tác: " + e.getMessage());
+                rollback(batch);
+                return false;
             }
         }
+        // Cộng trước rồi mới bỏ giữ chỗ: trong lúc đó khoản cộng bị tính hai lần, không bao giờ thiếu
+        for (Map.Entry<String, Long> credit : batch.credits.entrySet()) {
+            if (credit.getValue() > 0) {
+                accounts.addBalance(credit.getKey(), credit.getValue());
+            }
+        }
+        releaseCredits(batch);
+        for (Transaction transaction : batch.appended) {
+            transactions.commit(transaction);
+        }
+        for (Runnable action : batch.afterFlush) {
+            action.run();
+        }
+        return true;
+    }
+    
+    /**
+     * Gửi thông báo cho mọi client của tài khoản khi nhận được chuyển khoản.
+     * Thông báo được xếp hàng và gửi song song trên luồng riêng, giao dịch không chờ client nhận;
+     * client lỗi bị loại mà không làm chậm các client khác. Client nhận theo lô được gom thông báo.
+     * Không có client nào nhận được thì thông báo nằm lại trong hộp thư đến lần đăng ký sau.
+     */
+    private void notifyTransferReceived(long sequence, String toAccount, String fromAccount, long amount, String content, long newBalance) {
+        Collection<BankingCallback> subscribers = callbacks.subscribers(toAccount);
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        TransferNotification notification = new TransferNotification(sequence, fromAccount, toAccount,
+                Money.toDouble(amount), content, Money.toDouble(newBalance), new Date());
+        for (BankingCallback callback : subscribers) {
+            dispatcher.submitTransfer(toAccount, callback, notification);
+        }
     }
     
     @Override
     public void registerCallback(String accountNumber, BankingCallback callback) throws RemoteException {
         if (accountNumber != null && callback != null) {
-            callbacks.put(accountNumber, callback);
+            callbacks.register(accountNumber, callback);
             System.out.println("Đã đăng ký callback cho tài khoản: " + accountNumber);
+            
+            // Gửi các thông báo nhận được khi client chưa kết nối
+            long balance = accounts.getBalance(accountNumber);
+            if (balance != AccountStore.NO_ACCOUNT) {
+                List<TransferNotification> pending = outbox.pending(accountNumber, transactions, Money.toDouble(balance));
+                for (TransferNotification notification : pending) {
+                    dispatcher.submitTransfer(accountNumber, callback, notification);
+                }
+                if (!pending.isEmpty()) {
+                    System.out.println("Gửi " + pending.size() + " thông báo chờ cho tài khoản: " + accountNumber);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Ghi nhận các thông báo client đã nhận, lưu mốc mới vào journal.
+     * Chỉ giữ mốc lớn nhất của mỗi tài khoản trong lô, và không chờ fsync: mốc được ghi cùng
+     * nhóm ghi journal kế tiếp (mất mốc khi sập chỉ làm thông báo bị gửi lại)
+     */
+    private void markNotified(List<TransferNotification> notifications) {
+        Map<String, NotificationOutbox.Cursor> cursors = new LinkedHashMap<>();
+        for (TransferNotification notification : notifications) {
+            NotificationOutbox.Cursor cursor = outbox.markDelivered(notification.getToAccount(), notification.getSequence());
+            if (cursor != null) {
+                cursors.put(cursor.getAccountNumber(), cursor);
+            }
+        }
+        if (!cursors.isEmpty()) {
+            appendDeferred(new ArrayList<>(cursors.values()));
+        }
+    }
+    
+    /**
+     * Các bước chuyển khoản giữa shard (xem ShardParticipant). Không có trên stub của client:
+     * router gọi qua ShardEndpoint, export riêng chỉ cho các máy nội bộ
+     */
+    String prepareDebit(String transferId, String fromAccount, String toAccount, long amount, String content) throws RemoteException {
+        TransferPhase existing = preparedTransfers.get(transferId);
+        if (existing != null) {
+            return "SUCCESS:" + Money.toDouble(accounts.getBalance(fromAccount));
+        }
+        if (amount <= 0) {
+            return "ERROR:Số tiền không hợp lệ";
+        }
+        
+        long balance = accounts.withdraw(fromAccount, amount);
+        if (balance == AccountStore.NO_ACCOUNT) {
+            return "ERROR:Không tìm thấy tài khoản gốc: " + fromAccount;
+        }
+        if (balance == AccountStore.INSUFFICIENT_FUNDS) {
+            return "ERROR:Số dư không đủ";
+        }
+        
+        // Khoản trừ vào lịch sử khi đã ghi journal; nếu hủy sẽ có giao dịch hoàn tiền
+        Transaction transactionOut = new Transaction(fromAccount, "TRANSFER_OUT", amount, content, toAccount);
+        TransferPhase prepared = new TransferPhase(TransferPhase.PREPARE_DEBIT, transferId, transactionOut);
+        transactions.append(transactionOut);
+        preparedTransfers.put(transferId, prepared);
+        try {
+            appendRecords(prepared);
+        } catch (IOException e) {
+            preparedTransfers.remove(transferId);
+            transactions.remove(transactionOut);
+            accounts.addBalance(fromAccount, amount);
+            System.err.println("Lỗi ghi journal chuyển khoản " + transferId + ": " + e.getMessage());
+            return "ERROR:" + JOURNAL_FAILED;
+        }
+        transactions.commit(transactionOut);
+        return "SUCCESS:" + Money.toDouble(balance);
+    }
+    
+    String prepareCredit(String transferId, String toAccount, String fromAccount, long amount, String content) throws RemoteException {
+        if (preparedTransfers.containsKey(transferId)) {
+            return "SUCCESS:";
+        }
+        if (!accounts.contains(toAccount)) {
+            return "ERROR:Không tìm thấy tài khoản nhận: " + toAccount;
+        }
+        Transaction transactionIn = new Transaction(toAccount, "TRANSFER_IN", amount, content, fromAccount);
+        TransferPhase prepared = new TransferPhase(TransferPhase.PREPARE_CREDIT, transferId, transactionIn);
+        preparedTransfers.put(transferId, prepared);
+        try {
+            appendRecords(prepared);
+        } catch (IOException e) {
+            preparedTransfers.remove(transferId);
+            System.err.println("Lỗi ghi journal chuyển khoản " + transferId + ": " + e.getMessage());
+            return "ERROR:" + JOURNAL_FAILED;
+        }
+        return "SUCCESS:";
+    }
+    
+    void commit(String transferId) throws RemoteException {
+        // Bỏ khỏi danh sách chờ trước: commit/abort lặp lại không có tác dụng
+        TransferPhase prepared = preparedTransfers.remove(transferId);
+        if (prepared == null) {
+            return;
+        }
+        WriteBatch batch = new WriteBatch();
+        if (prepared.getPhase() == TransferPhase.PREPARE_DEBIT) {
+            batch.records.add(new TransferPhase(TransferPhase.COMMIT, transferId, null));
+            appendPhase(prepared, batch);
+            return;
+        }
+        // Tiền nhận chỉ vào số dư sau khi ghi bản ghi commit
+        Transaction transactionIn = prepared.getTransaction();
+        String toAccount = transactionIn.getAccountNumber();
+        reserve(prepared, toAccount, transactionIn.getAmount(), batch);
+        long sequence = record(transactionIn, batch);
+        batch.records.add(new TransferPhase(TransferPhase.COMMIT, transferId, transactionIn));
+        batch.afterFlush.add(() -> {
+            notifyTransferReceived(sequence, toAccount, transactionIn.getRelatedAccount(),
+                    transactionIn.getAmount(), transactionIn.getDescription(), accounts.getBalance(toAccount));
+            waiters.signal(toAccount);
+        });
+        appendPhase(prepared, batch);
+    }
+    
+    void abort(String transferId) throws RemoteException {
+        TransferPhase prepared = preparedTransfers.remove(transferId);
+        if (prepared == null) {
+            return;
+        }
+        WriteBatch batch = new WriteBatch();
+        if (prepared.getPhase() == TransferPhase.PREPARE_CREDIT) {
+            batch.records.add(new TransferPhase(TransferPhase.ABORT, transferId, null));
+            appendPhase(prepared, batch);
+            return;
+        }
+        // Tiền hoàn chỉ vào số dư sau khi ghi bản ghi abort
+        Transaction transactionOut = prepared.getTransaction();
+        Transaction reversal = new Transaction(transactionOut.getAccountNumber(), "TRANSFER_REVERSAL",
+                transactionOut.getAmount(), transactionOut.getDescription(), transactionOut.getRelatedAccount());
+        reserve(prepared, reversal.getAccountNumber(), reversal.getAmount(), batch);
+        record(reversal, batch);
+        batch.records.add(new TransferPhase(TransferPhase.ABORT, transferId, reversal));
+        appendPhase(prepared, batch);
+    }
+    
+    /**
+     * Giữ chỗ khoản cộng của commit/abort; số dư vượt giới hạn thì đưa chuyển khoản về trạng thái chờ
+     */
+    private void reserve(TransferPhase prepared, String accountNumber, long amount, WriteBatch batch) throws RemoteException {
+        try {
+            reserveCredit(accountNumber, amount, batch);
+        } catch (ArithmeticException e) {
+            preparedTransfers.put(prepared.getTransferId(), prepared);
+            throw new RemoteException(BALANCE_OVERFLOW + ": " + accountNumber);
+        }
+    }
+    
+    /**
+     * Ghi kết quả (commit/abort) của chuyển khoản giữa shard. Ghi lỗi thì lô được hoàn lại,
+     * chuyển khoản về trạng thái chờ và ném RemoteException để bên điều phối thử lại sau
+     */
+    private void appendPhase(TransferPhase prepared, WriteBatch batch) throws RemoteException {
+        if (!flush(batch)) {
+            preparedTransfers.put(prepared.getTransferId(), prepared);
+            throw new RemoteException("Lỗi ghi journal chuyển khoản " + prepared.getTransferId());
+        }
+    }
+    
+    List<String> inDoubt() throws RemoteException {
+        return new ArrayList<>(preparedTransfers.keySet());
+    }
+    
+    @Override
+    public NotificationPage pollNotifications(String accountNumber, long sinceSequence, long maxWaitMillis) throws RemoteException {
+        if (!accounts.contains(accountNumber)) {
+            return new NotificationPage(new ArrayList<>(), 0);
+        }
+        
+        // Client gửi mốc của lần poll trước: các thông báo đến mốc đó đã được nhận
+        long since = sinceSequence;
+        if (since < 0) {
+            since = outbox.notifiedSequence(accountNumber);
+        } else if (since > 0) {
+            NotificationOutbox.Cursor cursor = outbox.markDelivered(accountNumber,
+                    Math.min(since, transactions.latestSequence(accountNumber)));
+            if (cursor != null) {
+                appendDeferred(Collections.singletonList(cursor));
+            }
+        }
+        
+        long from = since;
+        try {
+            return waiters.await(accountNumber, maxWaitMillis, () -> outbox.since(accountNumber, from, transactions,
+                    Money.toDouble(accounts.getBalance(accountNumber))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new NotificationPage(new ArrayList<>(), from);
         }
     }
     
     @Override
     public void unregisterCallback(String accountNumber) throws RemoteException {
         if (accountNumber != null) {
-            callbacks.remove(accountNumber);
+            for (BankingCallback removed : callbacks.unregisterAll(accountNumber)) {
+                dispatcher.remove(removed);
+            }
+            System.out.println("Đã hủy đăng ký callback cho tài khoản: " + accountNumber);
+        }
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        if (accountNumber != null && callback != null && callbacks.unregister(accountNumber, callback)) {
+            dispatcher.remove(callback);
             System.out.println("Đã hủy đăng ký callback cho tài khoản: " + accountNumber);
         }
     }
     
     @Override
     public List<Transaction> getTransactionHistory(String accountNumber) throws RemoteException {
-        return transactions.stream()
-                .filter(t -> t.getAccountNumber().equals(accountNumber))
-                .sorted((t1, t2) -> t2.getTimestamp().compareTo(t1.getTimestamp()))
-                .collect(Collectors.toList());
+        return transactions.getHistory(accountNumber);
+    }
+    
+    @Override
+    public TransactionPage getTransactionHistoryPage(String accountNumber, String cursor, int pageSize) throws RemoteException {
+        int limit = pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+        return transactions.getPage(accountNumber, cursor, limit);
     }
     
-    private void loadAccounts() {
+    @Override
+    public TransactionPage getTransactionsSince(String accountNumber, long lastSeenSequence) throws RemoteException {
+        return transactions.getSince(accountNumber, lastSeenSequence);
+    }
+    
+    /**
+     * Nguồn dữ liệu cho bản sao (xem ReplicationSource), gọi qua ReplicationEndpoint
+     */
+    CheckpointImage checkpointImage() throws RemoteException {
         try {
-            File file = new File(accountsFile);
-            if (!file.exists()) {
-                return;
-            }
-            
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            StringBuilder json = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                json.append(line);
-            }
-            reader.close();
-            
-            if (json.length() == 0) {
+            return checkpoints.exportImage();
+        } catch (IOException e) {
+            throw new RemoteException("Lỗi đọc checkpoint", e);
+        }
+    }
+    
+    JournalChunk readJournal(int segmentId, long offset, int maxBytes) throws RemoteException {
+        try {
+            return journal.readChunk(segmentId, offset, Math.max(1, Math.min(maxBytes, MAX_REPLICATION_CHUNK)));
+        } catch (IOException e) {
+            throw new RemoteException("Lỗi đọc journal", e);
+        }
+    }
+    
+    private void loadAccounts() throws IOException {
+        File file = new File(accountsFile);
+        if (!file.exists()) {
+            return;
+        }
+        
+        // Format: {"<số tài khoản>": {"accountNumber": "...", "balance": ...}, ...}
+        try (JsonStreamReader reader = new JsonStreamReader(new BufferedReader(new FileReader(file)))) {
+            if (reader.peek() == JsonStreamReader.Token.END_DOCUMENT) {
                 return;
             }
-            
-            String jsonStr = json.toString().trim();
-            if (jsonStr.startsWith("{") && jsonStr.endsWith("}")) {
-                jsonStr = jsonStr.substring(1, jsonStr.length() - 1);
-                String[] entries = jsonStr.split("},");
-                
-                for (String entry : entries) {
-                    entry = entry.trim();
-                    if (entry.endsWith("}")) {
-                        entry = entry.substring(0, entry.length() - 1);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                String accountNum = null;
+                String balanceStr = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "accountNumber": accountNum = reader.nextString(); break;
+                        case "balance": balanceStr = reader.nextString(); break;
+                        default: reader.skipValue();
                     }
-                    
-                    String accountNum = extractValue(entry, "accountNumber");
-                    String balanceStr = extractValue(entry, "balance");
-                    
-                    if (accountNum != null && balanceStr != null) {
+                }
+                reader.endObject();
+                
+                if (accountNum != null && balanceStr != null) {
+                    try {
+                        long balance = Money.parse(balanceStr);
+                        accounts.put(accountNum, balance);
+                        // Cập nhật accountCounter (sequence, không phải số tài khoản)
                         try {
-                            double balance = Double.parseDouble(balanceStr);
-                            accounts.put(accountNum, new Account(accountNum, balance));
-                            // Cập nhật accountCounter
-                            try {
-                                int accNum = Integer.parseInt(accountNum);
-                                if (accNum >= accountCounter) {
-                                    accountCounter = accNum + 1;
-                                }
-                            } catch (NumberFormatException e) {
-                                // Ignore
-                            }
+                            long sequence = shardMap.sequenceAfter(Long.parseLong(accountNum));
+                            accountCounter.accumulateAndGet((int) Math.min(sequence, Integer.MAX_VALUE), Math::max);
                         } catch (NumberFormatException e) {
-                            System.err.println("Lỗi parse balance: " + balanceStr);
+                            // Ignore
                         }
+                    } catch (NumberFormatException e) {
+                        System.err.println("Lỗi parse balance: " + balanceStr);
                     }
                 }
             }
+            reader.endObject();
         } catch (IOException e) {
-            System.err.println("Lỗi đọc file accounts: " + e.getMessage());
+            throw new IOException("Lỗi đọc file accounts: " + e.getMessage(), e);
         }
     }
     
-    private void saveAccounts() {
-        try {
-            FileWriter writer = new FileWriter(accountsFile);
-            writer.write("{\n");
-            int count = 0;
-            for (Account account : accounts.values()) {
-                if (count > 0) {
-                    writer.write(",\n");
-                }
-                writer.write("  \"" + account.getAccountNumber() + "\": {\n");
-                writer.write("    \"accountNumber\": \"" + account.getAccountNumber() + "\",\n");
-                writer.write("    \"balance\": " + account.getBalance() + "\n");
-                writer.write("  }");
-                count++;
-            }
-            writer.write("\n}");
-            writer.close();
-        } catch (IOException e) {
-            System.err.println("Lỗi ghi file accounts: " + e.getMessage());
+    private void loadUsers() throws IOException {
+        File file = new File(usersFile);
+        if (!file.exists()) {
+            return;
         }
-    }
-    
-    private void loadUsers() {
-        try {
-            File file = new File(usersFile);
-            if (!file.exists()) {
-                return;
-            }
-            
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            StringBuilder json = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                json.append(line);
-            }
-            reader.close();
-            
-            if (json.length() == 0) {
+        
+        // Format: {"<username>": {"username": "...", "password": "...", "accountNumber": "...", "fullName": "..."}, ...}
+        try (JsonStreamReader reader = new JsonStreamReader(new BufferedReader(new FileReader(file)))) {
+            if (reader.peek() == JsonStreamReader.Token.END_DOCUMENT) {
                 return;
             }
-            
-            String jsonStr = json.toString().trim();
-            if (jsonStr.startsWith("{") && jsonStr.endsWith("}")) {
-                jsonStr = jsonStr.substring(1, jsonStr.length() - 1);
-                String[] entries = jsonStr.split("},");
-                
-                for (String entry : entries) {
-                    entry = entry.trim();
-                    if (entry.endsWith("}")) {
-                        entry = entry.substring(0, entry.length() - 1);
-                    }
-                    
-                    String username = extractValue(entry, "username");
-                    String password = extractValue(entry, "password");
-                    String accountNumber = extractValue(entry, "accountNumber");
-                    String fullName = extractValue(entry, "fullName");
-                    
-                    if (username != null && password != null && accountNumber != null) {
-                        users.put(username, new User(username, password, accountNumber, fullName != null ? fullName : ""));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                String username = null;
+                String password = null;
+                String accountNumber = null;
+                String fullName = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "username": username = reader.nextString(); break;
+                        case "password": password = reader.nextString(); break;
+                        case "accountNumber": accountNumber = reader.nextString(); break;
+                        case "fullName": fullName = reader.nextString(); break;
+                        default: reader.skipValue();
                     }
                 }
+                reader.endObject();
+                
+                if (username != null && password != null && accountNumber != null) {
+                    users.put(username, new User(username, password, accountNumber, fullName != null ? fullName : ""));
+                }
             }
+            reader.endObject();
         } catch (IOException e) {
-            System.err.println("Lỗi đọc file users: " + e.getMessage());
+            throw new IOException("Lỗi đọc file users: " + e.getMessage(), e);
         }
     }
     
-    private void saveUsers() {
-        try {
-            FileWriter writer = new FileWriter(usersFile);
-            writer.write("{\n");
-            int count = 0;
-            for (User user : users.values()) {
-                if (count > 0) {
-                    writer.write(",\n");
-                }
-                writer.write("  \"" + user.getUsername() + "\": {\n");
-                writer.write("    \"username\": \"" + user.getUsername() + "\",\n");
-                writer.write("    \"password\": \"" + user.getPassword() + "\",\n");
-                writer.write("    \"accountNumber\": \"" + user.getAccountNumber() + "\",\n");
-                writer.write("    \"fullName\": \"" + user.getFullName() + "\"\n");
-                writer.write("  }");
-                count++;
-            }
-            writer.write("\n}");
-            writer.close();
+    private void loadConfig() {
+        try (FileInputStream fis = new FileInputStream("config.properties")) {
+            config.load(fis);
         } catch (IOException e) {
-            System.err.println("Lỗi ghi file users: " + e.getMessage());
+            System.out.println("Không tìm thấy config.properties, sử dụng cấu hình mặc định");
         }
     }
     
-    private void loadTransactions() {
+    /**
+     * Đóng journal, ghi nốt các thao tác đang chờ (dùng khi tắt server)
+     */
+    public void shutdown() {
+        if (waiters != null) {
+            waiters.close();
+        }
+        if (async != null) {
+            async.shutdown(2000);
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown(2000);
+        }
+        if (checkpoints != null) {
+            checkpoints.stop();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (accounts != null) {
+            accounts.close();
+        }
+    }
+    
+    /**
+     * Khôi phục trạng thái khi khởi động: đọc checkpoint mới nhất rồi chỉ replay
+     * các segment journal sau checkpoint. Các segment cũ hơn chỉ dùng để dựng lịch sử giao dịch.
+     * Lần đầu chạy (chưa có checkpoint) sẽ chuyển dữ liệu cũ từ các file JSON sang.
+     * Checkpoint hoặc journal đọc lỗi thì server không khởi động: chạy tiếp với trạng thái thiếu
+     * sẽ ghi đè checkpoint và journal bằng dữ liệu đó
+     */
+    private void loadState() throws RemoteException {
+        TransactionJournal.Durability durability =
+                TransactionJournal.Durability.parse(config.getProperty("journal.durability"));
+        long asyncFlushMillis = Long.parseLong(config.getProperty("journal.asyncFlushMillis", "50"));
+        long segmentBytes = Long.parseLong(config.getProperty("journal.segmentBytes", String.valueOf(16L << 20)));
+        journal = new TransactionJournal(new File(journalDir), durability, asyncFlushMillis, segmentBytes);
+        checkpoints = new CheckpointManager(new File(checkpointFile), journal);
+        checkpoints.setShardMap(shardMap);
+        checkpoints.setTransactionIndex(transactions);
+        int idempotencyMaxEntries = Integer.parseInt(config.getProperty("idempotency.maxEntries", "100000"));
+        long idempotencyTtlMillis = Long.parseLong(config.getProperty("idempotency.ttlHours", "24")) * 3600_000L;
+        checkpoints.setIdempotencyRetention(idempotencyMaxEntries, idempotencyTtlMillis);
+        idempotency = new IdempotencyCache(idempotencyMaxEntries, idempotencyTtlMillis);
+        System.out.println("Chế độ ghi journal: " + durability);
+        
+        CheckpointManager.Snapshot snapshot;
         try {
-            File file = new File(transactionsFile);
-            if (!file.exists()) {
-                return;
+            snapshot = checkpoints.load();
+        } catch (IOException e) {
+            throw new RemoteException("Lỗi đọc checkpoint", e);
+        }
+        
+        boolean fresh = snapshot == null;
+        if (fresh) {
+            snapshot = checkpoints.newSnapshot();
+        }
+        try {
+            // Kho tài khoản đang chạy = bản sao kho của checkpoint + các segment sau checkpoint
+            accounts = checkpoints.openAccounts(snapshot, new File(accountStoreFile));
+        } catch (IOException e) {
+            throw new RemoteException("Lỗi mở kho tài khoản", e);
+        }
+        snapshot.accounts = accounts;
+        users = snapshot.users;
+        for (IdempotencyRecord record : snapshot.idempotency.values()) {
+            idempotency.restore(record);
+        }
+        
+        // Lịch sử trong các segment đã lưu trữ không ảnh hưởng trạng thái: đọc song song trên luồng khác
+        List<File> archivedSegments = journal.archivedSegments();
+        CompletableFuture<List<List<Object>>> archivedLoad = CompletableFuture.supplyAsync(() -> {
+            try {
+                return TransactionJournal.readSegments(archivedSegments);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            StringBuilder json = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                json.append(line);
+        });
+        
+        boolean migrateTransactions = fresh && journal.segments().isEmpty() && archivedSegments.isEmpty();
+        List<Transaction> legacyTransactions = new ArrayList<>();
+        if (fresh) {
+            // Các file JSON cũ độc lập với nhau nên được đọc đồng thời.
+            // File nào đọc lỗi thì dừng khởi động: checkpoint đầu tiên sẽ thay thế các file này,
+            // dữ liệu đọc thiếu sẽ mất hẳn
+            CompletableFuture<Void> usersLoad = CompletableFuture.runAsync(() -> {
+                try {
+                    loadUsers();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            CompletableFuture<Void> transactionsLoad = migrateTransactions
+                    ? CompletableFuture.runAsync(() -> {
+                        try {
+                            loadLegacyTransactions(legacyTransactions);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    : CompletableFuture.completedFuture(null);
+            try {
+                loadAccounts();
+                usersLoad.join();
+                transactionsLoad.join();
+            } catch (IOException e) {
+                throw new RemoteException(e.getMessage(), e);
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                throw new RemoteException(cause.getMessage(), cause);
             }
-            reader.close();
+            snapshot.accountCounter = accountCounter.get();
+        }
+        
+        try {
+            List<File> segments = journal.segments();
+            List<List<Object>> segmentRecords = TransactionJournal.readSegments(segments);
+            try {
+                for (List<Object> records : archivedLoad.join()) {
+                    addHistory(records);
+                }
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof UncheckedIOException
+                        ? ((UncheckedIOException) e.getCause()).getCause() : new IOException(e.getCause());
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                List<Object> records = segmentRecords.get(i);
+                addHistory(records);
+                // Khi chuyển từ JSON, accounts.json đã phản ánh các giao dịch có sẵn trong journal
+                boolean covered = fresh || TransactionJournal.segmentId(segments.get(i)) <= snapshot.coveredSegment;
+                if (!covered) {
+                    for (Object record : records) {
+                        snapshot.apply(record);
+                    }
+                }
+            }
+            accountCounter.set(snapshot.accountCounter);
+            // Sequence đã cấp cho giao dịch bị bỏ không có trong journal, chỉ có trong checkpoint
+            snapshot.sequences.forEach(transactions::restoreHighWater);
             
-            if (json.length() == 0) {
-                return;
+            journal.open();
+            if (migrateTransactions && !legacyTransactions.isEmpty()) {
+                // transactions.json không đảm bảo thứ tự: cấp sequence theo thời điểm giao dịch
+                legacyTransactions.sort(Comparator.comparing(Transaction::getTimestamp));
+                transactions.addAll(legacyTransactions);
+                // Ghi theo từng phần để bộ đệm mã hóa không lớn ngang cả file
+                for (int i = 0; i < legacyTransactions.size(); i += MIGRATION_CHUNK) {
+                    journal.append(legacyTransactions.subList(i, Math.min(i + MIGRATION_CHUNK, legacyTransactions.size())));
+                }
+                System.out.println("Đã chuyển " + legacyTransactions.size() + " giao dịch từ " + transactionsFile + " sang journal");
             }
             
-            // Parse transactions từ JSON đơn giản
-            // Format: {"transactions": [{"transactionId": "...", ...}, ...]}
-            String jsonStr = json.toString().trim();
-            if (jsonStr.contains("\"transactions\"")) {
-                // Tìm mảng transactions
-                int arrayStart = jsonStr.indexOf('[');
-                int arrayEnd = jsonStr.lastIndexOf(']');
-                if (arrayStart != -1 && arrayEnd != -1) {
-                    String arrayContent = jsonStr.substring(arrayStart + 1, arrayEnd);
-                    // Parse từng transaction
-                    String[] transactionStrings = arrayContent.split("\\},\\s*\\{");
-                    for (String transStr : transactionStrings) {
-                        transStr = transStr.trim();
-                        if (transStr.startsWith("{")) {
-                            transStr = transStr.substring(1);
-                        }
-                        if (transStr.endsWith("}")) {
-                            transStr = transStr.substring(0, transStr.length() - 1);
-                        }
-                        
-                        String transactionId = extractValue(transStr, "transactionId");
-                        String accountNumber = extractValue(transStr, "accountNumber");
-                        String transactionType = extractValue(transStr, "transactionType");
-                        String amountStr = extractValue(transStr, "amount");
-                        String description = extractValue(transStr, "description");
-                        String relatedAccount = extractValue(transStr, "relatedAccount");
-                        String timestampStr = extractValue(transStr, "timestamp");
-                        
-                        if (accountNumber != null && transactionType != null && amountStr != null) {
-                            try {
-                                double amount = Double.parseDouble(amountStr);
-                                Transaction transaction = new Transaction(accountNumber, transactionType, amount, 
-                                    description != null ? description : "");
-                                if (relatedAccount != null && !relatedAccount.isEmpty()) {
-                                    transaction.setRelatedAccount(relatedAccount);
-                                }
-                                if (timestampStr != null && !timestampStr.isEmpty()) {
-                                    try {
-                                        long timestamp = Long.parseLong(timestampStr);
-                                        transaction.setTimestamp(new Date(timestamp));
-                                    } catch (NumberFormatException e) {
-                                        // Ignore
-                                    }
-                                }
-                                if (transactionId != null) {
-                                    transaction.setTransactionId(transactionId);
-                                }
-                                transactions.add(transaction);
-                            } catch (NumberFormatException e) {
-                                // Ignore invalid amount
-                            }
-                        }
-                    }
+            if (fresh) {
+                // Bắt đầu theo dõi thông báo: giao dịch đã có coi như đã thông báo
+                List<Object> cursors = NotificationOutbox.baseline(transactions, snapshot.notified);
+                if (!cursors.isEmpty()) {
+                    journal.append(cursors);
                 }
+                // Checkpoint đầu tiên: trạng thái lấy từ JSON, bao gồm toàn bộ journal hiện có
+                snapshot.coveredSegment = journal.roll();
+                checkpoints.writeFrom(snapshot, accounts, new File(accountStoreFile));
+                journal.archiveUpTo(snapshot.coveredSegment);
             }
         } catch (IOException e) {
-            System.err.println("Lỗi đọc file transactions: " + e.getMessage());
+            throw new RemoteException("Lỗi mở journal", e);
         }
+        // Bản đồ người dùng dùng chung cho các luồng RMI
+        users = new ConcurrentHashMap<>(users);
+        accountNumbers = new AccountNumberAllocator(accountCounter.get(),
+                Long.parseLong(config.getProperty("account.rangeStart", "10000")),
+                Long.parseLong(config.getProperty("account.rangeEnd", String.valueOf(Integer.MAX_VALUE))),
+                Integer.parseInt(config.getProperty("account.blockSize", "100")),
+                reservation -> journal.append(Collections.singletonList(reservation)));
+        outbox = new NotificationOutbox(snapshot.notified,
+                Integer.parseInt(config.getProperty("notification.outboxMaxSize", "100")),
+                Long.parseLong(config.getProperty("notification.outboxExpiryHours", "168")) * 3600_000L);
     }
     
-    private void saveTransactions() {
-        try {
-            FileWriter writer = new FileWriter(transactionsFile);
-            writer.write("{\n  \"transactions\": [\n");
-            for (int i = 0; i < transactions.size(); i++) {
-                Transaction t = transactions.get(i);
-                writer.write("    {\n");
-                writer.write("      \"transactionId\": \"" + t.getTransactionId() + "\",\n");
-                writer.write("      \"accountNumber\": \"" + t.getAccountNumber() + "\",\n");
-                writer.write("      \"transactionType\": \"" + t.getTransactionType() + "\",\n");
-                writer.write("      \"amount\": " + t.getAmount() + ",\n");
-                writer.write("      \"description\": \"" + (t.getDescription() != null ? t.getDescription() : "") + "\",\n");
-                writer.write("      \"relatedAccount\": \"" + (t.getRelatedAccount() != null ? t.getRelatedAccount() : "") + "\",\n");
-                writer.write("      \"timestamp\": " + t.getTimestamp().getTime() + "\n");
-                writer.write("    }");
-                if (i < transactions.size() - 1) {
-                    writer.write(",");
+    private void addHistory(List<Object> records) {
+        for (Object record : records) {
+            if (record instanceof Transaction) {
+                transactions.add((Transaction) record);
+                IdGenerator.getInstance().observe(((Transaction) record).getTransactionId());
+            } else if (record instanceof BulkTransfer) {
+                for (Transaction t : ((BulkTransfer) record).transactions()) {
+                    transactions.add(t);
+                    IdGenerator.getInstance().observe(t.getTransactionId());
+                }
+            } else if (record instanceof IdempotencyRecord) {
+                IdempotencyRecord keyed = (IdempotencyRecord) record;
+                for (Transaction t : keyed.getTransactions()) {
+                    transactions.add(t);
+                    IdGenerator.getInstance().observe(t.getTransactionId());
+                }
+                idempotency.restore(keyed);
+            } else if (record instanceof TransferPhase) {
+                // Dựng lại các chuyển khoản giữa shard còn chờ kết quả
+                TransferPhase phase = (TransferPhase) record;
+                Transaction applied = phase.appliedTransaction();
+                if (applied != null) {
+                    transactions.add(applied);
+                    IdGenerator.getInstance().observe(applied.getTransactionId());
+                }
+                if (phase.isPrepare()) {
+                    preparedTransfers.put(phase.getTransferId(), phase);
+                } else {
+                    preparedTransfers.remove(phase.getTransferId());
                 }
-                writer.write("\n");
             }
-            writer.write("  ]\n}");
-            writer.close();
-        } catch (IOException e) {
-            System.err.println("Lỗi ghi file transactions: " + e.getMessage());
         }
     }
     
-    private String extractValue(String json, String key) {
-        String searchKey = "\"" + key + "\"";
-        int keyIndex = json.indexOf(searchKey);
-        if (keyIndex == -1) {
-            return null;
+    private void loadLegacyTransactions(List<Transaction> result) throws IOException {
+        File file = new File(transactionsFile);
+        if (!file.exists()) {
+            return;
         }
         
-        int colonIndex = json.indexOf(":", keyIndex);
-        if (colonIndex == -1) {
-            return null;
+        // Format: {"transactions": [{"transactionId": "...", ...}, ...]}
+        try (JsonStreamReader reader = new JsonStreamReader(new BufferedReader(new FileReader(file)))) {
+            if (reader.peek() == JsonStreamReader.Token.END_DOCUMENT) {
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("transactions")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Transaction transaction = readLegacyTransaction(reader);
+                    if (transaction != null) {
+                        result.add(transaction);
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (IOException e) {
+            throw new IOException("Lỗi đọc file transactions: " + e.getMessage(), e);
         }
+    }
+    
+    private Transaction readLegacyTransaction(JsonStreamReader reader) throws IOException {
+        String transactionId = null;
+        String accountNumber = null;
+        String transactionType = null;
+        String amountStr = null;
+        String description = null;
+        String relatedAccount = null;
+        String timestampStr = null;
         
-        int startIndex = colonIndex + 1;
-        while (startIndex < json.length() && (json.charAt(startIndex) == ' ' || json.charAt(startIndex) == '"')) {
-            startIndex++;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "transactionId": transactionId = reader.nextString(); break;
+                case "accountNumber": accountNumber = reader.nextString(); break;
+                case "transactionType": transactionType = reader.nextString(); break;
+                case "amount": amountStr = reader.nextString(); break;
+                case "description": description = reader.nextString(); break;
+                case "relatedAccount": relatedAccount = reader.nextString(); break;
+                case "timestamp": timestampStr = reader.nextString(); break;
+                default: reader.skipValue();
+            }
         }
+        reader.endObject();
         
-        int endIndex = startIndex;
-        if (startIndex < json.length() && json.charAt(startIndex - 1) == '"') {
-            while (endIndex < json.length() && json.charAt(endIndex) != '"') {
-                endIndex++;
+        if (accountNumber == null || transactionType == null || amountStr == null) {
+            return null;
+        }
+        try {
+            long amount = Money.parse(amountStr);
+            Transaction transaction = new Transaction(accountNumber, transactionType, amount, 
+                description != null ? description : "");
+            if (relatedAccount != null && !relatedAccount.isEmpty()) {
+                transaction.setRelatedAccount(relatedAccount);
             }
-        } else {
-            while (endIndex < json.length() && 
-                   json.charAt(endIndex) != ',' && 
-                   json.charAt(endIndex) != '}' &&
-                   json.charAt(endIndex) != '\n') {
-                endIndex++;
+            if (timestampStr != null && !timestampStr.isEmpty()) {
+                try {
+                    long timestamp = Long.parseLong(timestampStr);
+                    transaction.setTimestamp(new Date(timestamp));
+                } catch (NumberFormatException e) {
+                    // Ignore
+                }
             }
+            if (transactionId != null) {
+                transaction.setTransactionId(transactionId);
+            }
+            return transaction;
+        } catch (NumberFormatException e) {
+            // Ignore invalid amount
+            return null;
         }
-        
-        String value = json.substring(startIndex, endIndex);
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            value = value.substring(1, value.length() - 1);
+    }
+    
+    /**
+     * Ghi mốc thông báo vào journal không chờ fsync (xem TransactionJournal.appendDeferred)
+     */
+    private void appendDeferred(List<Object> records) {
+        try {
+            journal.appendDeferred(records);
+        } catch (IOException e) {
+            System.err.println("Lỗi ghi journal giao dịch: " + e.getMessage());
         }
-        return value.trim();
     }
-}
+    
+    /**
+     * Ghi thêm các bản ghi mới vào journal (không ghi lại toàn bộ lịch sử)
+     * @throws IOException nếu ghi lỗi; caller phải hoàn lại thay đổi và báo lỗi cho client
+     */
+    private void appendRecords(Object... records) throws IOException {
+        journal.append(Arrays.asList(records));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * So sánh submitBatch với gọi từng thao tác một qua RMI.
+ * Server chạy trong JVM riêng (thư mục dữ liệu tạm, registry trên một cổng trống của 127.0.0.1).
+ * Cùng một dãy thao tác ngẫu nhiên (nạp, rút, chuyển khoản, tra số dư) được chạy trên hai cặp tài khoản mới:
+ * cặp thứ nhất gọi từng thao tác, cặp thứ hai gửi theo lô. Kết quả từng thao tác và số dư cuối của hai cách
+ * phải giống nhau; thời gian mỗi thao tác được in ra để so sánh.
+ * Chạy: java BatchBenchmark [số thao tác] [số thao tác mỗi lô] [fsync|group|async]
+ */
+public class BatchBenchmark {
+
+    private static final int DEFAULT_OPERATIONS = 5000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final String SERVICE_NAME = "BankingService";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            serve(Integer.parseInt(args[1]));
+            return;
+        }
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_OPERATIONS;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+        String durability = args.length > 2 ? args[2] : "group";
+
+        File dir = Files.createTempDirectory("batch-benchmark").toFile();
+        writeConfig(new File(dir, "config.properties"), durability);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ProcessBuilder builder = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(),
+                "BatchBenchmark", "server", String.valueOf(port));
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process server = builder.start();
+        boolean ok;
+        try {
+            BufferedReader serverOut = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = serverOut.readLine()) != null && !line.equals("READY")) {
+                // bỏ qua log khởi động của server
+            }
+            if (line == null) {
+                throw new IllegalStateException("Server không khởi động được");
+            }
+            Thread drain = new Thread(() -> {
+                try {
+                    while (serverOut.readLine() != null) {
+                        // log của server không cần cho kết quả
+                    }
+                } catch (IOException e) {
+                    // server đã dừng
+                }
+            });
+            drain.setDaemon(true);
+            drain.start();
+            BankingService service = (BankingService) LocateRegistry.getRegistry("127.0.0.1", port).lookup(SERVICE_NAME);
+            ok = compare(service, count, batchSize, durability);
+        } finally {
+            server.getOutputStream().close(); // server dừng khi stdin đóng
+            server.waitFor();
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean compare(BankingService service, int count, int batchSize, String durability) throws Exception {
+        String[] single = {open(service, "single-a"), open(service, "single-b")};
+        String[] batched = {open(service, "batch-a"), open(service, "batch-b")};
+        // Làm nóng kết nối RMI và JIT trước khi đo
+        for (int i = 0; i < 200; i++) {
+            service.queryAccount(single[0]);
+        }
+        service.submitBatch(List.of(Operation.query(batched[0])));
+
+        List<Operation> singleOps = operations(single, count);
+        List<Operation> batchedOps = operations(batched, count);
+
+        List<String> singleResults = new ArrayList<>(count);
+        long start = System.nanoTime();
+        for (Operation op : singleOps) {
+            switch (op.getType()) {
+                case DEPOSIT: singleResults.add(service.deposit(op.getAccountNumber(), op.getAmount())); break;
+                case WITHDRAW: singleResults.add(service.withdraw(op.getAccountNumber(), op.getAmount())); break;
+                case TRANSFER: singleResults.add(service.transfer(op.getAccountNumber(), op.getToAccount(), op.getAmount(), op.getContent())); break;
+                default: singleResults.add(service.queryAccount(op.getAccountNumber()));
+            }
+        }
+        double singleMicros = (System.nanoTime() - start) / 1000.0 / count;
+
+        List<String> batchedResults = new ArrayList<>(count);
+        start = System.nanoTime();
+        for (int i = 0; i < count; i += batchSize) {
+            batchedResults.addAll(service.submitBatch(new ArrayList<>(batchedOps.subList(i, Math.min(i + batchSize, count)))));
+        }
+        double batchedMicros = (System.nanoTime() - start) / 1000.0 / count;
+
+        System.out.printf("%,d thao tác, journal.durability=%s%n", count, durability);
+        System.out.printf("Từng thao tác: %8.1f µs/thao tác%n", singleMicros);
+        System.out.printf("Theo lô %,d:   %8.1f µs/thao tác (nhanh hơn %.1f lần)%n", batchSize, batchedMicros,
+                singleMicros / batchedMicros);
+
+        boolean ok = true;
+        int mismatches = 0;
+        for (int i = 0; i < count; i++) {
+            String expected = normalize(singleResults.get(i), single);
+            String actual = batchedResults.size() > i ? normalize(batchedResults.get(i), batched) : null;
+            if (!expected.equals(actual) && mismatches++ < 3) {
+                System.out.println("Thao tác " + i + ": từng thao tác \"" + expected + "\", theo lô \"" + actual + "\"");
+            }
+        }
+        if (mismatches > 0 || batchedResults.size() != count) {
+            System.out.println(mismatches + " kết quả khác nhau - LỖI");
+            ok = false;
+        }
+        for (int a = 0; a < 2; a++) {
+            String expected = service.queryAccount(single[a]);
+            String actual = service.queryAccount(batched[a]);
+            if (!expected.equals(actual)) {
+                System.out.println("Số dư cuối khác nhau: " + expected + " / " + actual + " - LỖI");
+                ok = false;
+            }
+        }
+        if (ok) {
+            System.out.println("Kết quả và số dư cuối giống nhau - OK");
+        }
+        return ok;
+    }
+
+    // Bỏ số tài khoản khỏi kết quả để so sánh hai cặp tài khoản
+    private static String normalize(String result, String[] accounts) {
+        return result.replace("tài khoản: " + accounts[0], "tài khoản: A").replace("tài khoản: " + accounts[1], "tài khoản: B");
+    }
+
+    private static String open(BankingService service, String username) throws Exception {
+        String result = service.register(username, "pw", "Batch " + username);
+        if (!result.startsWith("SUCCESS:")) {
+            throw new IllegalStateException("Đăng ký thất bại: " + result);
+        }
+        return result.split(":")[1];
+    }
+
+    // Dãy thao tác giống nhau cho mọi cặp tài khoản (cùng seed); có cả thao tác bị từ chối vì không đủ số dư
+    private static List<Operation> operations(String[] accounts, int count) {
+        Random random = new Random(42);
+        List<Operation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = random.nextInt(2);
+            double amount = 1 + random.nextInt(100);
+            switch (random.nextInt(4)) {
+                case 0: operations.add(Operation.deposit(accounts[from], amount)); break;
+                case 1: operations.add(Operation.withdraw(accounts[from], amount)); break;
+                case 2: operations.add(Operation.transfer(accounts[from], accounts[1 - from], amount, "batch")); break;
+                default: operations.add(Operation.query(accounts[from]));
+            }
+        }
+        return operations;
+    }
+
+    // JVM chạy server: bind service vào registry riêng, dừng khi stdin đóng
+    private static void serve(int port) throws Exception {
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+        BankingServiceImpl service = new BankingServiceImpl();
+        LocateRegistry.createRegistry(port).rebind(SERVICE_NAME, service);
+        System.out.println("READY");
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // chờ tiến trình cha đóng stdin
+        }
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static void writeConfig(File file, String durability) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("journal.durability=" + durability + "\n");
+            out.write("checkpoint.intervalSeconds=3600\n");
+        }
+    }
+}
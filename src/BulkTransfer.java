@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bản ghi journal của một lần chuyển khoản hàng loạt (xem BankingService.bulkTransfer):
+ * giao dịch trừ tổng số tiền ở tài khoản gốc và các giao dịch nhận tiền.
+ *
+ * Cả lần chuyển khoản là một bản ghi duy nhất (một CRC), nên khi server sập giữa lúc ghi
+ * thì khi replay hoặc có đủ cả khoản trừ lẫn mọi khoản nhận, hoặc không có gì.
+ */
+public class BulkTransfer {
+    final Transaction debit; // TRANSFER_OUT của tài khoản gốc, số tiền là tổng
+    final List<Transaction> credits; // TRANSFER_IN của từng tài khoản nhận
+
+    public BulkTransfer(Transaction debit, List<Transaction> credits) {
+        this.debit = debit;
+        this.credits = credits;
+    }
+
+    public Transaction getDebit() {
+        return debit;
+    }
+
+    public List<Transaction> getCredits() {
+        return credits;
+    }
+
+    /**
+     * Mọi giao dịch của lần chuyển khoản (khoản trừ trước)
+     */
+    public List<Transaction> transactions() {
+        List<Transaction> all = new ArrayList<>(credits.size() + 1);
+        all.add(debit);
+        all.addAll(credits);
+        return all;
+    }
+}
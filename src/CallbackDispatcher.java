@@ -0,0 +1,414 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gửi thông báo callback cho client trên các luồng riêng, tách khỏi luồng xử lý giao dịch.
+ *
+ * - Hàng đợi có giới hạn: khi đầy, thông báo mới bị bỏ (và được đếm) thay vì làm chậm giao dịch.
+ * - Mỗi client có hàng đợi riêng, được xử lý tuần tự nên thông báo đến đúng thứ tự;
+ *   các client khác nhau được gửi song song trên pool luồng chung. Mỗi hàng đợi có nhiều nhất
+ *   một luồng gửi: hàng đợi bị hủy trong lúc đang gửi chỉ được bỏ khỏi danh sách khi luồng đó
+ *   kết thúc, thông báo mới của cùng client trong lúc đó được chính luồng này gửi tiếp.
+ * - Client implement BankingBatchCallback được gom thông báo chuyển khoản: lần gửi đầu tiên chờ
+ *   tối đa batchWindowMillis (hoặc đến khi đủ batchMaxSize thông báo) rồi gửi cả lô trong một lần gọi,
+ *   nên số lần gọi RMI tới tài khoản nhận nhiều tiền không tăng theo số giao dịch.
+ * - Kết quả thao tác bất đồng bộ (BankingOperationCallback) không chờ cửa sổ gom lô: các kết quả
+ *   đến trong lúc lần gọi trước đang gửi được gửi chung trong lần gọi tiếp theo.
+ * - Thời gian chờ tối đa của mỗi lần gọi do tầng RMI quy định (xem BankingServer).
+ *   Client lỗi (RemoteException) bị hủy các thông báo đang chờ và được báo cho listener.
+ */
+public class CallbackDispatcher {
+    /**
+     * Một lần gọi callback tới client
+     */
+    public interface Delivery {
+        void deliver(Remote callback) throws RemoteException;
+    }
+
+    /**
+     * Nhận kết quả gửi thông báo
+     */
+    public interface Listener {
+        /**
+         * Các thông báo chuyển khoản vừa được client nhận thành công
+         */
+        void onDelivered(List<TransferNotification> notifications);
+
+        /**
+         * Gửi cho client thất bại (client đã ngắt kết nối hoặc quá thời gian chờ)
+         */
+        void onFailure(String accountNumber, Remote callback, RemoteException e);
+    }
+
+    // Số lần gọi tối đa cho một client trước khi nhường luồng cho client khác
+    private static final int MAX_DRAIN = 32;
+
+    private static class Entry {
+        final String accountNumber;
+        final Delivery delivery;
+        final TransferNotification notification; // null nếu không gom được theo lô
+        final OperationStatus result; // kết quả thao tác bất đồng bộ, luôn gom được
+        final long enqueuedAt = System.nanoTime();
+
+        Entry(String accountNumber, Delivery delivery, TransferNotification notification, OperationStatus result) {
+            this.accountNumber = accountNumber;
+            this.delivery = delivery;
+            this.notification = notification;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Hàng đợi thông báo của một client (một client có thể nhận thông báo của nhiều tài khoản).
+     * Client là BankingCallback (thông báo chuyển khoản) hoặc BankingOperationCallback (kết quả thao tác)
+     */
+    private class ClientQueue implements Runnable {
+        final Remote callback;
+        final boolean batching;
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        boolean scheduled; // đã xếp lịch chạy hoặc đang chạy (luồng gửi duy nhất của hàng đợi)
+        boolean removed; // đã hủy khi đang gửi: bỏ khỏi danh sách khi luồng gửi kết thúc
+        ScheduledFuture<?> timer; // lần chạy đang chờ hết cửa sổ gom lô
+
+        ClientQueue(Remote callback) {
+            this.callback = callback;
+            this.batching = callback instanceof BankingBatchCallback;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                timer = null;
+            }
+            for (int i = 0; i < MAX_DRAIN; i++) {
+                List<Entry> batch = new ArrayList<>(1);
+                synchronized (this) {
+                    Entry first = entries.poll();
+                    if (first == null) {
+                        finish();
+                        return;
+                    }
+                    batch.add(first);
+                    if (batching && first.notification != null) {
+                        while (batch.size() < batchMaxSize && entries.peek() != null
+                                && entries.peek().notification != null) {
+                            batch.add(entries.poll());
+                        }
+                    } else if (first.result != null) {
+                        while (batch.size() < batchMaxSize && entries.peek() != null
+                                && entries.peek().result != null) {
+                            batch.add(entries.poll());
+                        }
+                    }
+                }
+                pending.addAndGet(-batch.size());
+                // Client lỗi thì hàng đợi đã bị xóa, lượt sau kết thúc luồng gửi
+                deliver(batch);
+            }
+            synchronized (this) {
+                if (entries.isEmpty()) {
+                    finish();
+                } else {
+                    // Còn thông báo: xếp lại cuối pool để không chiếm luồng của client khác
+                    schedule(this);
+                }
+            }
+        }
+
+        /**
+         * Kết thúc luồng gửi khi hàng đợi rỗng (gọi khi giữ khóa queue)
+         */
+        private void finish() {
+            scheduled = false;
+            if (removed) {
+                removed = false;
+                queues.remove(callback, this);
+            }
+        }
+
+        /**
+         * Gửi một lô (hoặc một thông báo đơn)
+         * @return false nếu client lỗi và đã bị hủy
+         */
+        private boolean deliver(List<Entry> batch) {
+            Entry first = batch.get(0);
+            List<TransferNotification> notifications = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                if (entry.notification != null) {
+                    notifications.add(entry.notification);
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                if (first.result != null) {
+                    List<OperationStatus> results = new ArrayList<>(batch.size());
+                    for (Entry entry : batch) {
+                        results.add(entry.result);
+                    }
+                    ((BankingOperationCallback) callback).operationsCompleted(results);
+                } else if (batch.size() == 1 && (!batching || first.notification == null)) {
+                    first.delivery.deliver(callback);
+                } else {
+                    ((BankingBatchCallback) callback).notifyTransfersReceived(notifications);
+                }
+                long end = System.nanoTime();
+                for (Entry entry : batch) {
+                    totalLatencyNanos.add(end - entry.enqueuedAt);
+                }
+                recordCall(end - start);
+                delivered.add(batch.size());
+                if (!notifications.isEmpty()) {
+                    listener.onDelivered(notifications);
+                }
+                return true;
+            } catch (RemoteException e) {
+                failed.add(batch.size());
+                discard();
+                listener.onFailure(first.accountNumber, callback, e);
+                return false;
+            } catch (RuntimeException e) {
+                failed.add(batch.size());
+                System.err.println("Lỗi gửi thông báo cho tài khoản " + first.accountNumber + ": " + e);
+                return true;
+            }
+        }
+
+        /**
+         * Hủy các thông báo còn chờ của client lỗi hoặc đã hủy đăng ký.
+         * Nếu luồng gửi đang chạy (hoặc đã xếp lịch), hàng đợi còn trong danh sách đến khi luồng đó
+         * kết thúc, để thông báo mới của cùng client không có luồng gửi thứ hai chạy song song
+         */
+        void discard() {
+            synchronized (this) {
+                clear();
+                if (timer != null && timer.cancel(false)) {
+                    timer = null;
+                    scheduled = false;
+                }
+                if (scheduled) {
+                    removed = true;
+                } else {
+                    queues.remove(callback, this);
+                }
+            }
+        }
+
+        /**
+         * Bỏ hàng đợi không còn luồng gửi nào sẽ chạy (pool đã dừng), gọi khi giữ khóa queue
+         */
+        void abandon() {
+            clear();
+            timer = null;
+            scheduled = false;
+            removed = false;
+            queues.remove(callback, this);
+        }
+
+        private void clear() {
+            pending.addAndGet(-entries.size());
+            dropped.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final int capacity;
+    private final long batchWindowMillis;
+    private final int batchMaxSize;
+    private final Listener listener;
+    private final Map<Remote, ClientQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Số liệu theo dõi
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAdder totalCallNanos = new LongAdder();
+    private final AtomicLong maxCallNanos = new AtomicLong();
+
+    /**
+     * @param threads số luồng gửi thông báo
+     * @param capacity số thông báo tối đa đang chờ gửi (của tất cả client)
+     * @param batchWindowMillis thời gian gom thông báo cho client nhận theo lô
+     * @param batchMaxSize số thông báo tối đa trong một lô
+     */
+    public CallbackDispatcher(int threads, int capacity, long batchWindowMillis, int batchMaxSize,
+                              Listener listener) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "callback-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.capacity = capacity;
+        this.batchWindowMillis = Math.max(0, batchWindowMillis);
+        this.batchMaxSize = Math.max(1, batchMaxSize);
+        this.listener = listener;
+    }
+
+    /**
+     * Xếp một lần gọi callback vào hàng đợi của client, trả về ngay
+     * @return false nếu hàng đợi đã đầy và thông báo bị bỏ
+     */
+    public boolean submit(String accountNumber, Remote callback, Delivery delivery) {
+        return enqueue(callback, new Entry(accountNumber, delivery, null, null));
+    }
+
+    /**
+     * Xếp thông báo chuyển khoản đến: client nhận theo lô được gom lại,
+     * client cũ nhận từng thông báo qua notifyTransferReceived
+     * @return false nếu hàng đợi đã đầy và thông báo bị bỏ
+     */
+    public boolean submitTransfer(String accountNumber, BankingCallback callback, TransferNotification notification) {
+        Delivery single = cb -> ((BankingCallback) cb).notifyTransferReceived(notification.getFromAccount(),
+                notification.getAmount(), notification.getContent(), notification.getNewBalance());
+        return enqueue(callback, new Entry(accountNumber, single, notification, null));
+    }
+
+    /**
+     * Xếp kết quả một thao tác bất đồng bộ; các kết quả đang chờ của cùng client được gửi chung một lần gọi
+     * @return false nếu hàng đợi đã đầy và kết quả bị bỏ (client vẫn hỏi được bằng getOperationStatus)
+     */
+    public boolean submitResult(String accountNumber, BankingOperationCallback callback, OperationStatus result) {
+        Delivery single = cb -> ((BankingOperationCallback) cb).operationsCompleted(Collections.singletonList(result));
+        return enqueue(callback, new Entry(accountNumber, single, null, result));
+    }
+
+    private boolean enqueue(Remote callback, Entry entry) {
+        submitted.increment();
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        while (true) {
+            ClientQueue queue = queues.computeIfAbsent(callback, ClientQueue::new);
+            synchronized (queue) {
+                if (queues.get(callback) != queue) {
+                    continue; // client vừa bị hủy, tạo hàng đợi mới
+                }
+                queue.entries.add(entry);
+                queue.removed = false; // client đăng ký lại khi luồng gửi cũ chưa kết thúc
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    schedule(queue);
+                } else if (queue.timer != null && queue.entries.size() >= batchMaxSize && queue.timer.cancel(false)) {
+                    // Đã đủ một lô: gửi ngay không chờ hết cửa sổ
+                    queue.timer = null;
+                    execute(queue);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Xếp lịch chạy hàng đợi: chờ cửa sổ gom lô nếu client nhận theo lô và lô chưa đủ (gọi khi giữ khóa queue)
+     */
+    private void schedule(ClientQueue queue) {
+        Entry head = queue.entries.peek();
+        if (queue.batching && batchWindowMillis > 0 && head != null && head.notification != null
+                && queue.entries.size() < batchMaxSize) {
+            try {
+                queue.timer = executor.schedule(queue, batchWindowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Đang tắt server
+                queue.abandon();
+            }
+        } else {
+            execute(queue);
+        }
+    }
+
+    private void execute(ClientQueue queue) {
+        try {
+            executor.execute(queue);
+        } catch (RejectedExecutionException e) {
+            // Đang tắt server (gọi khi giữ khóa queue)
+            queue.abandon();
+        }
+    }
+
+    /**
+     * Bỏ hàng đợi của client đã hủy đăng ký
+     */
+    public void remove(Remote callback) {
+        ClientQueue queue = queues.get(callback);
+        if (queue != null) {
+            queue.discard();
+        }
+    }
+
+    /**
+     * Dừng các luồng gửi, chờ tối đa timeoutMillis cho các thông báo đang gửi dở
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Thông báo callback: " + metrics());
+    }
+
+    /**
+     * Tóm tắt số liệu gửi thông báo
+     */
+    public String metrics() {
+        long ok = delivered.sum();
+        long callCount = calls.sum();
+        return "đã gửi=" + ok
+                + " (" + callCount + " lần gọi)"
+                + ", lỗi=" + failed.sum()
+                + ", bị bỏ=" + dropped.sum()
+                + ", đang chờ=" + pending.get()
+                + ", tổng nhận=" + submitted.sum()
+                + ", độ trễ TB=" + (ok == 0 ? 0 : totalLatencyNanos.sum() / ok / 1_000_000) + "ms"
+                + ", thời gian gọi TB=" + (callCount == 0 ? 0 : totalCallNanos.sum() / callCount / 1_000_000) + "ms"
+                + ", gọi lâu nhất=" + maxCallNanos.get() / 1_000_000 + "ms";
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void recordCall(long callNanos) {
+        calls.increment();
+        totalCallNanos.add(callNanos);
+        maxCallNanos.accumulateAndGet(callNanos, Math::max);
+    }
+}
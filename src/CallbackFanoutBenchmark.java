@@ -0,0 +1,147 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đo độ trễ gửi thông báo chuyển khoản tới nhiều client đăng ký cùng lúc (CallbackRegistry + CallbackDispatcher,
+ * cấu hình và xử lý lỗi giống BankingServiceImpl). Mỗi client là một đối tượng RMI thật (export trên loopback),
+ * mặc định 10k client chia đều cho 100 tài khoản; mỗi lượt gửi một thông báo cho mọi tài khoản và đo thời gian
+ * từ lúc xếp hàng đến lúc từng client nhận được.
+ * Một phần client đã ngắt kết nối (unexport): chúng phải bị loại khỏi danh sách sau lần gửi lỗi đầu tiên.
+ * Một client chậm (mỗi lần nhận mất SLOW_MILLIS) không được làm chậm các client khác.
+ * Chạy: java CallbackFanoutBenchmark [số client] [số tài khoản] [callback.threads]
+ */
+public class CallbackFanoutBenchmark {
+
+    private static final int DEFAULT_SUBSCRIBERS = 10000;
+    private static final int DEFAULT_ACCOUNTS = 100;
+    private static final int DEFAULT_THREADS = 8;
+    private static final int DEAD_EVERY = 100; // 1% client đã ngắt kết nối
+    private static final long SLOW_MILLIS = 5000;
+    private static final int ROUNDS = 4;
+
+    /**
+     * Client nhận thông báo, ghi lại độ trễ của lượt hiện tại
+     */
+    private static class Subscriber implements BankingCallback {
+        final int index;
+        final long delayMillis;
+
+        Subscriber(int index, long delayMillis) {
+            this.index = index;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void notifyTransferReceived(String fromAccount, double amount, String content, double newBalance) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            latencies[index] = System.nanoTime() - roundStart;
+            roundDone.countDown();
+        }
+    }
+
+    private static volatile long roundStart;
+    private static volatile CountDownLatch roundDone;
+    private static long[] latencies;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SUBSCRIBERS;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ACCOUNTS;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_THREADS;
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+
+        CallbackRegistry callbacks = new CallbackRegistry();
+        int[] failures = new int[1];
+        CallbackDispatcher dispatcher = new CallbackDispatcher(threads, count * 2, 100, 500,
+                new CallbackDispatcher.Listener() {
+                    @Override
+                    public void onDelivered(List<TransferNotification> notifications) {
+                    }
+
+                    @Override
+                    public void onFailure(String accountNumber, Remote callback, RemoteException e) {
+                        synchronized (failures) {
+                            failures[0]++;
+                        }
+                        if (callback instanceof BankingCallback) {
+                            callbacks.unregister(accountNumber, (BankingCallback) callback);
+                        }
+                    }
+                });
+
+        String[] accounts = new String[accountCount];
+        for (int a = 0; a < accountCount; a++) {
+            accounts[a] = String.valueOf(10000 + a);
+        }
+        latencies = new long[count];
+        List<Subscriber> exported = new ArrayList<>();
+        int dead = 0;
+        int slowIndex = 1; // không trùng client đã ngắt kết nối
+        for (int i = 0; i < count; i++) {
+            Subscriber subscriber = new Subscriber(i, i == slowIndex ? SLOW_MILLIS : 0);
+            BankingCallback stub = (BankingCallback) UnicastRemoteObject.exportObject(subscriber, 0);
+            callbacks.register(accounts[i % accountCount], stub);
+            if (i % DEAD_EVERY == 0) {
+                UnicastRemoteObject.unexportObject(subscriber, true); // client đã tắt
+                dead++;
+            } else {
+                exported.add(subscriber);
+            }
+        }
+        int live = count - dead - 1;
+        System.out.println(count + " client trên " + accountCount + " tài khoản (" + dead + " đã ngắt kết nối, 1 client chậm "
+                + SLOW_MILLIS + " ms), callback.threads=" + threads);
+
+        boolean ok = true;
+        for (int round = 1; round <= ROUNDS; round++) {
+            Arrays.fill(latencies, -1);
+            roundDone = new CountDownLatch(live);
+            roundStart = System.nanoTime();
+            for (String account : accounts) {
+                TransferNotification notification = new TransferNotification(round, "99999", account, 1.0,
+                        "fan-out", 1.0, new Date());
+                for (BankingCallback callback : callbacks.subscribers(account)) {
+                    dispatcher.submitTransfer(account, callback, notification);
+                }
+            }
+            boolean all = roundDone.await(SLOW_MILLIS, TimeUnit.MILLISECONDS);
+            long[] received = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+            if (!all || received.length != live) {
+                System.out.println("Lượt " + round + ": chỉ " + received.length + "/" + live
+                        + " client nhận được trước khi client chậm xong - LỖI");
+                ok = false;
+            }
+            if (received.length > 0) {
+                System.out.printf("Lượt %d: %,d client nhận, p50 %.1f ms, p99 %.1f ms, tối đa %.1f ms%n", round,
+                        received.length, received[received.length / 2] / 1e6, received[received.length * 99 / 100] / 1e6,
+                        received[received.length - 1] / 1e6);
+            }
+        }
+
+        // Client đã ngắt kết nối chỉ lỗi một lần rồi bị loại khỏi danh sách
+        boolean evicted = failures[0] == dead && callbacks.size() == count - dead;
+        System.out.println("Client lỗi: " + failures[0] + " lần gọi lỗi, còn " + callbacks.size() + " client đăng ký"
+                + (evicted ? " - OK" : " - LỖI (mong đợi " + dead + " lỗi, " + (count - dead) + " client)"));
+        ok &= evicted;
+
+        dispatcher.shutdown(SLOW_MILLIS);
+        for (Subscriber subscriber : exported) {
+            UnicastRemoteObject.unexportObject(subscriber, true);
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
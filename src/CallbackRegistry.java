@@ -0,0 +1,81 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Danh sách client đăng ký nhận thông báo theo tài khoản.
+ *
+ * Một tài khoản có thể có nhiều client cùng đăng ký (nhiều máy đăng nhập, màn hình giao dịch viên...),
+ * đăng nhập lần hai không thay thế client trước. Đọc danh sách để gửi thông báo không cần khóa;
+ * thêm/xóa client của một tài khoản không ảnh hưởng các tài khoản khác.
+ */
+public class CallbackRegistry {
+    private final Map<String, Set<BankingCallback>> byAccount = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @return false nếu client đã đăng ký cho tài khoản này từ trước
+     */
+    public boolean register(String accountNumber, BankingCallback callback) {
+        boolean[] added = new boolean[1];
+        byAccount.compute(accountNumber, (k, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = new CopyOnWriteArraySet<>();
+            }
+            added[0] = subscribers.add(callback);
+            return subscribers;
+        });
+        if (added[0]) {
+            size.incrementAndGet();
+        }
+        return added[0];
+    }
+
+    /**
+     * Hủy đăng ký một client của tài khoản
+     * @return false nếu client không còn trong danh sách
+     */
+    public boolean unregister(String accountNumber, BankingCallback callback) {
+        boolean[] removed = new boolean[1];
+        byAccount.computeIfPresent(accountNumber, (k, subscribers) -> {
+            removed[0] = subscribers.remove(callback);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        if (removed[0]) {
+            size.decrementAndGet();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Hủy đăng ký mọi client của tài khoản
+     * @return các client đã bị hủy
+     */
+    public Collection<BankingCallback> unregisterAll(String accountNumber) {
+        Set<BankingCallback> removed = byAccount.remove(accountNumber);
+        if (removed == null) {
+            return Collections.emptySet();
+        }
+        size.addAndGet(-removed.size());
+        return removed;
+    }
+
+    /**
+     * Các client đang đăng ký của tài khoản (ảnh chụp, có thể duyệt khi danh sách đang thay đổi)
+     */
+    public Collection<BankingCallback> subscribers(String accountNumber) {
+        Set<BankingCallback> subscribers = byAccount.get(accountNumber);
+        return subscribers != null ? subscribers : Collections.emptySet();
+    }
+
+    /**
+     * Tổng số client đang đăng ký
+     */
+    public int size() {
+        return size.get();
+    }
+}
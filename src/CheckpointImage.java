@@ -0,0 +1,29 @@
+import java.io.Serializable;
+
+/**
+ * Nội dung checkpoint mới nhất của server chính (checkpoint.dat và file kho tài khoản đi kèm),
+ * dùng để khởi tạo bản sao chỉ đọc trước khi theo dõi journal. Mật khẩu người dùng được bỏ trống.
+ */
+public class CheckpointImage implements Serializable {
+    private final byte[] checkpoint;
+    private final String accountsFile; // null nếu checkpoint chưa có tài khoản
+    private final byte[] accounts;
+    
+    public CheckpointImage(byte[] checkpoint, String accountsFile, byte[] accounts) {
+        this.checkpoint = checkpoint;
+        this.accountsFile = accountsFile;
+        this.accounts = accounts;
+    }
+    
+    public byte[] getCheckpoint() {
+        return checkpoint;
+    }
+    
+    public String getAccountsFile() {
+        return accountsFile;
+    }
+    
+    public byte[] getAccounts() {
+        return accounts;
+    }
+}
@@ -0,0 +1,433 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tạo checkpoint định kỳ cho trạng thái tài khoản, người dùng và accountCounter
+ * (mốc cấp số tài khoản, xem AccountNumberAllocator). accountCounter luôn là sequence của bộ cấp số,
+ * không phải số tài khoản: số tài khoản = sequence * số shard + shard (xem ShardMap).
+ *
+ * Checkpoint được dựng từ checkpoint trước cộng với các segment journal đã đóng,
+ * không đọc trạng thái đang chạy của server nên không phải dừng các thao tác ghi.
+ * Khi khởi động, server chỉ cần đọc checkpoint mới nhất rồi replay các segment sau nó.
+ *
+ * Cấu trúc file checkpoint.dat:
+ *   [MAGIC][VERSION][segment cuối đã áp dụng][accountCounter]
+ *   [tên file kho tài khoản của checkpoint]
+ *   [số người dùng][(username, password, accountNumber, fullName)...]
+ *   [số tài khoản có mốc thông báo][(accountNumber, sequence đã thông báo)...]
+ *   [số idempotency key][(key, mô tả thao tác, kết quả, thời điểm)...]
+ *   [số tài khoản có mốc sequence][(accountNumber, sequence lớn nhất đã cấp)...]
+ *
+ * Mốc sequence (xem TransactionIndex) lấy từ chỉ mục đang chạy lúc ghi checkpoint, nên gồm cả sequence của
+ * giao dịch đã bị bỏ và có thể mới hơn các segment đã áp dụng: mốc chỉ cần không nhỏ hơn sequence đã cấp.
+ *
+ * Số dư tài khoản nằm trong file kho tài khoản riêng (checkpoint-accounts-N.dat, định dạng
+ * AccountStore). Mỗi lần checkpoint, file của lần trước được sao chép rồi áp dụng các
+ * segment mới lên bản sao, nên không cần nạp toàn bộ tài khoản vào heap.
+ */
+public class CheckpointManager {
+    private static final int MAGIC = 0x524D4350; // "RMCP"
+    private static final int VERSION = 1;
+    private static final String ACCOUNTS_PREFIX = "checkpoint-accounts-";
+
+    /**
+     * Trạng thái tại một checkpoint
+     */
+    public static class Snapshot {
+        AccountStore accounts; // chỉ mở khi cần áp dụng bản ghi
+        String accountsFile; // file kho tài khoản của checkpoint, null nếu chưa có
+        final Map<String, User> users = new LinkedHashMap<>(); // username -> User
+        final Map<String, Long> notified = new HashMap<>(); // accountNumber -> sequence đã thông báo
+        final Map<String, IdempotencyRecord> idempotency = new LinkedHashMap<>(); // key -> kết quả, cũ nhất trước
+        final Map<String, Long> sequences = new HashMap<>(); // accountNumber -> sequence lớn nhất đã cấp
+        int accountCounter = 10000; // sequence tiếp theo của bộ cấp số
+        int coveredSegment; // mọi segment <= giá trị này đã được áp dụng
+        final ShardMap shardMap; // đổi số tài khoản về sequence
+
+        public Snapshot() {
+            this(new ShardMap(1));
+        }
+
+        public Snapshot(ShardMap shardMap) {
+            this.shardMap = shardMap;
+        }
+
+        /**
+         * Áp dụng một bản ghi journal vào trạng thái
+         */
+        public void apply(Object record) {
+            if (record instanceof Transaction) {
+                applyTransaction((Transaction) record);
+            } else if (record instanceof Account) {
+                Account a = (Account) record;
+                try {
+                    accounts.put(a.getAccountNumber(), a.getBalance());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                updateAccountCounter(a.getAccountNumber());
+            } else if (record instanceof User) {
+                User u = (User) record;
+                users.put(u.getUsername(), u);
+            } else if (record instanceof NotificationOutbox.Cursor) {
+                NotificationOutbox.Cursor c = (NotificationOutbox.Cursor) record;
+                notified.merge(c.getAccountNumber(), c.getSequence(), Math::max);
+            } else if (record instanceof TransferPhase) {
+                Transaction t = ((TransferPhase) record).appliedTransaction();
+                if (t != null) {
+                    applyTransaction(t);
+                }
+            } else if (record instanceof BulkTransfer) {
+                for (Transaction t : ((BulkTransfer) record).transactions()) {
+                    applyTransaction(t);
+                }
+            } else if (record instanceof IdempotencyRecord) {
+                IdempotencyRecord r = (IdempotencyRecord) record;
+                for (Transaction t : r.getTransactions()) {
+                    applyTransaction(t);
+                }
+                idempotency.remove(r.getKey());
+                idempotency.put(r.getKey(), r.withoutTransactions());
+            } else if (record instanceof AccountNumberAllocator.Reservation) {
+                long highWaterMark = ((AccountNumberAllocator.Reservation) record).getHighWaterMark();
+                accountCounter = (int) Math.max(accountCounter, Math.min(highWaterMark, Integer.MAX_VALUE));
+            }
+        }
+
+        private void applyTransaction(Transaction t) {
+            accounts.addBalance(t.getAccountNumber(), balanceDelta(t));
+            sequences.merge(t.getAccountNumber(), t.getSequence(), Math::max);
+        }
+
+        /**
+         * Nâng mốc để bộ cấp số không cấp lại số tài khoản đã có
+         */
+        void updateAccountCounter(String accountNumber) {
+            try {
+                long sequence = shardMap.sequenceAfter(Long.parseLong(accountNumber));
+                accountCounter = (int) Math.max(accountCounter, Math.min(sequence, Integer.MAX_VALUE));
+            } catch (NumberFormatException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Số tiền làm thay đổi số dư của tài khoản sở hữu giao dịch
+     */
+    public static long balanceDelta(Transaction t) {
+        switch (t.getTransactionType()) {
+            case "DEPOSIT":
+            case "TRANSFER_IN":
+            case "TRANSFER_REVERSAL":
+                return t.getAmount();
+            case "WITHDRAW":
+            case "TRANSFER_OUT":
+                return -t.getAmount();
+            default:
+                return 0;
+        }
+    }
+
+    private final File file;
+    private final File directory;
+    private final TransactionJournal journal;
+    private ScheduledExecutorService scheduler;
+    private ShardMap shardMap = new ShardMap(1);
+    private int idempotencyMaxEntries = Integer.MAX_VALUE;
+    private long idempotencyTtlMillis = Long.MAX_VALUE;
+    private TransactionIndex transactions; // chỉ mục đang chạy, null nếu không ghi mốc sequence mới
+
+    public CheckpointManager(File file, TransactionJournal journal) {
+        this.file = file;
+        this.directory = file.getAbsoluteFile().getParentFile();
+        this.journal = journal;
+    }
+
+    /**
+     * Cách chia shard của server, dùng để đổi số tài khoản về sequence của bộ cấp số
+     */
+    public void setShardMap(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    /**
+     * Trạng thái rỗng (chưa có checkpoint)
+     */
+    public Snapshot newSnapshot() {
+        return new Snapshot(shardMap);
+    }
+
+    /**
+     * Giới hạn idempotency key được giữ trong checkpoint (giống giới hạn của IdempotencyCache)
+     */
+    public void setIdempotencyRetention(int maxEntries, long ttlMillis) {
+        this.idempotencyMaxEntries = maxEntries;
+        this.idempotencyTtlMillis = ttlMillis;
+    }
+
+    /**
+     * Chỉ mục giao dịch đang chạy: mốc sequence của nó được ghi vào mỗi checkpoint
+     */
+    public void setTransactionIndex(TransactionIndex transactions) {
+        this.transactions = transactions;
+    }
+
+    /**
+     * Bắt đầu tạo checkpoint định kỳ trên luồng nền
+     */
+    public void start(long intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Lỗi tạo checkpoint: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Tạo checkpoint mới: đóng segment hiện tại, áp dụng các segment đã đóng
+     * vào checkpoint trước, ghi file mới rồi lưu trữ các segment đã áp dụng
+     */
+    public synchronized void checkpoint() throws IOException {
+        int sealed = journal.roll();
+        Snapshot snapshot = load();
+        if (snapshot == null) {
+            snapshot = newSnapshot();
+        }
+        if (sealed <= snapshot.coveredSegment) {
+            return;
+        }
+
+        File nextAccounts = new File(directory, ACCOUNTS_PREFIX + sealed + ".dat");
+        final Snapshot target = snapshot;
+        target.accounts = openAccounts(snapshot, nextAccounts);
+        try {
+            for (File segment : journal.segments()) {
+                int id = TransactionJournal.segmentId(segment);
+                if (id > target.coveredSegment && id <= sealed) {
+                    TransactionJournal.replay(segment, target::apply);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            target.accounts.close();
+        }
+
+        String previousAccounts = target.accountsFile;
+        target.accountsFile = nextAccounts.getName();
+        target.coveredSegment = sealed;
+        mergeHighWaters(target);
+        write(target);
+        deletePreviousAccounts(previousAccounts, target.accountsFile);
+        journal.archiveUpTo(sealed);
+        System.out.println("Đã tạo checkpoint đến segment " + sealed);
+    }
+
+    /**
+     * Ghi checkpoint từ kho tài khoản đang mở (dùng cho checkpoint đầu tiên khi khởi động)
+     */
+    public synchronized void writeFrom(Snapshot snapshot, AccountStore liveAccounts, File liveFile) throws IOException {
+        liveAccounts.flush();
+        File accountsCopy = new File(directory, ACCOUNTS_PREFIX + snapshot.coveredSegment + ".dat");
+        AccountStore.copy(liveFile, accountsCopy);
+        String previousAccounts = snapshot.accountsFile;
+        snapshot.accountsFile = accountsCopy.getName();
+        mergeHighWaters(snapshot);
+        write(snapshot);
+        deletePreviousAccounts(previousAccounts, snapshot.accountsFile);
+    }
+
+    /**
+     * Mở một bản sao kho tài khoản của checkpoint tại file đích
+     * (kho rỗng nếu checkpoint chưa có tài khoản)
+     */
+    public AccountStore openAccounts(Snapshot snapshot, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        if (snapshot.accountsFile != null) {
+            AccountStore.copy(new File(directory, snapshot.accountsFile), target);
+        }
+        return new AccountStore(target);
+    }
+
+    /**
+     * Nội dung checkpoint mới nhất để khởi tạo bản sao chỉ đọc, mật khẩu người dùng được bỏ trống.
+     * Đọc khi giữ khóa nên không lẫn với checkpoint đang được tạo.
+     * @return null nếu chưa có checkpoint
+     */
+    public synchronized CheckpointImage exportImage() throws IOException {
+        Snapshot snapshot = load();
+        if (snapshot == null) {
+            return null;
+        }
+        byte[] accounts = snapshot.accountsFile == null ? null
+                : Files.readAllBytes(new File(directory, snapshot.accountsFile).toPath());
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(checkpoint)) {
+            write(out, snapshot, false);
+        }
+        return new CheckpointImage(checkpoint.toByteArray(), snapshot.accountsFile, accounts);
+    }
+
+    /**
+     * Ghi checkpoint nhận từ server chính thành checkpoint của thư mục này
+     */
+    public synchronized void installImage(CheckpointImage image) throws IOException {
+        Files.createDirectories(directory.toPath());
+        if (image.getAccountsFile() != null) {
+            Files.write(new File(directory, image.getAccountsFile()).toPath(), image.getAccounts());
+        }
+        Files.write(file.toPath(), image.getCheckpoint());
+    }
+
+    private void mergeHighWaters(Snapshot snapshot) {
+        if (transactions != null) {
+            transactions.highWaters().forEach((account, sequence) -> snapshot.sequences.merge(account, sequence, Math::max));
+        }
+    }
+
+    private void deletePreviousAccounts(String previous, String current) {
+        if (previous != null && !previous.equals(current)) {
+            new File(directory, previous).delete();
+        }
+    }
+
+    /**
+     * Đọc checkpoint mới nhất, trả về null nếu chưa có
+     */
+    public Snapshot load() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("File " + file.getName() + " không phải checkpoint hợp lệ");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Không hỗ trợ phiên bản checkpoint: " + version);
+            }
+            Snapshot snapshot = newSnapshot();
+            snapshot.coveredSegment = in.readInt();
+            snapshot.accountCounter = in.readInt();
+            String accountsFile = in.readUTF();
+            snapshot.accountsFile = accountsFile.isEmpty() ? null : accountsFile;
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                User user = new User(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+                snapshot.users.put(user.getUsername(), user);
+            }
+            int notifiedCount = in.readInt();
+            for (int i = 0; i < notifiedCount; i++) {
+                snapshot.notified.put(in.readUTF(), in.readLong());
+            }
+            int keyCount = in.readInt();
+            for (int i = 0; i < keyCount; i++) {
+                IdempotencyRecord record = new IdempotencyRecord(in.readUTF(), in.readUTF(), in.readUTF(),
+                        in.readLong(), Collections.emptyList());
+                snapshot.idempotency.put(record.getKey(), record);
+            }
+            int sequenceCount = in.readInt();
+            for (int i = 0; i < sequenceCount; i++) {
+                snapshot.sequences.put(in.readUTF(), in.readLong());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Ghi checkpoint ra file tạm rồi đổi tên, tránh để lại checkpoint ghi dở.
+     * Kho tài khoản của snapshot phải đã được ghi xuống đĩa trước đó.
+     */
+    public void write(Snapshot snapshot) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            write(out, snapshot, true);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Ghi nội dung checkpoint; credentials = false thì ghi mật khẩu rỗng (checkpoint gửi cho bản sao)
+     */
+    private void write(DataOutputStream out, Snapshot snapshot, boolean credentials) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(snapshot.coveredSegment);
+        out.writeInt(snapshot.accountCounter);
+        out.writeUTF(snapshot.accountsFile != null ? snapshot.accountsFile : "");
+        out.writeInt(snapshot.users.size());
+        for (User user : snapshot.users.values()) {
+            out.writeUTF(user.getUsername());
+            out.writeUTF(credentials ? user.getPassword() : "");
+            out.writeUTF(user.getAccountNumber());
+            out.writeUTF(user.getFullName() != null ? user.getFullName() : "");
+        }
+        out.writeInt(snapshot.notified.size());
+        for (Map.Entry<String, Long> entry : snapshot.notified.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        List<IdempotencyRecord> keys = retainedKeys(snapshot);
+        out.writeInt(keys.size());
+        for (IdempotencyRecord record : keys) {
+            out.writeUTF(record.getKey());
+            out.writeUTF(record.getRequest());
+            out.writeUTF(record.getResult());
+            out.writeLong(record.getCreatedAt());
+        }
+        out.writeInt(snapshot.sequences.size());
+        for (Map.Entry<String, Long> entry : snapshot.sequences.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    /**
+     * Các key chưa hết hạn, tối đa idempotencyMaxEntries key mới nhất
+     */
+    private List<IdempotencyRecord> retainedKeys(Snapshot snapshot) {
+        long cutoff = System.currentTimeMillis() - idempotencyTtlMillis;
+        List<IdempotencyRecord> keys = new ArrayList<>();
+        for (IdempotencyRecord record : snapshot.idempotency.values()) {
+        if (record.getCreatedAt() >= cutoff) {
+            keys.add(record);
+        }
+        }
+        if (keys.size() > idempotencyMaxEntries) {
+        keys = new ArrayList<>(keys.subList(keys.size() - idempotencyMaxEntries, keys.size()));
+        }
+        return keys;
+    }
+}
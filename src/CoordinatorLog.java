@@ -0,0 +1,134 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Nhật ký khôi phục của bên điều phối chuyển khoản giữa hai shard (BankingRouter).
+ *
+ * Chỉ ghi hai loại bản ghi:
+ *   COMMIT - quyết định hoàn tất, được fsync trước khi gửi commit cho các shard
+ *   END    - cả hai shard đã commit, không cần fsync (mất bản ghi này chỉ làm gửi lại commit)
+ * Giao dịch không có COMMIT trong nhật ký được coi là đã hủy khi khôi phục (presumed abort),
+ * nên lúc prepare không phải ghi gì.
+ *
+ * Các luồng ghi COMMIT đồng thời dùng chung một lần fsync (group commit).
+ * Khi mở, nhật ký được viết lại chỉ gồm các COMMIT chưa có END.
+ */
+public class CoordinatorLog implements Closeable {
+    private static final byte COMMIT = 1;
+    private static final byte END = 2;
+
+    private final File file;
+    private final Map<String, int[]> pending = new ConcurrentHashMap<>(); // transferId -> {shard gốc, shard nhận}
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private DataOutputStream out;
+    private long written; // số bản ghi COMMIT đã ghi (khóa this)
+    private long synced; // số bản ghi COMMIT đã fsync (khóa syncLock)
+
+    public CoordinatorLog(File file) throws IOException {
+        this.file = file;
+        load();
+        compact();
+        FileOutputStream fos = new FileOutputStream(file, true);
+        channel = fos.getChannel();
+        out = new DataOutputStream(new BufferedOutputStream(fos));
+    }
+
+    /**
+     * Ghi quyết định COMMIT, trả về khi đã bền vững trên đĩa
+     */
+    public void commit(String transferId, int fromShard, int toShard) throws IOException {
+        long ticket;
+        synchronized (this) {
+            write(COMMIT, transferId, fromShard, toShard);
+            ticket = ++written;
+        }
+        pending.put(transferId, new int[] {fromShard, toShard});
+        synchronized (syncLock) {
+            if (synced >= ticket) {
+                return; // luồng khác đã fsync giúp
+            }
+            long target;
+            synchronized (this) {
+                target = written;
+            }
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * Ghi nhận giao dịch đã commit xong trên cả hai shard
+     */
+    public synchronized void end(String transferId) throws IOException {
+        if (pending.remove(transferId) != null) {
+            write(END, transferId, -1, -1);
+        }
+    }
+
+    public boolean isCommitted(String transferId) {
+        return pending.containsKey(transferId);
+    }
+
+    /**
+     * Các giao dịch đã quyết định COMMIT nhưng chưa xác nhận xong
+     */
+    public Map<String, int[]> pending() {
+        return new HashMap<>(pending);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void write(byte type, String transferId, int fromShard, int toShard) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(transferId);
+        out.writeInt(fromShard);
+        out.writeInt(toShard);
+        out.flush();
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type = in.readByte();
+                String transferId = in.readUTF();
+                int fromShard = in.readInt();
+                int toShard = in.readInt();
+                if (type == COMMIT) {
+                    pending.put(transferId, new int[] {fromShard, toShard});
+                } else {
+                    pending.remove(transferId);
+                }
+            }
+        } catch (EOFException e) {
+            // Hết nhật ký (bản ghi cuối ghi dở khi sập chưa được fsync nên bị bỏ)
+        }
+    }
+
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(fos))) {
+            for (Map.Entry<String, int[]> entry : pending.entrySet()) {
+                tempOut.writeByte(COMMIT);
+                tempOut.writeUTF(entry.getKey());
+                tempOut.writeInt(entry.getValue()[0]);
+                tempOut.writeInt(entry.getValue()[1]);
+            }
+            tempOut.flush();
+            fos.getChannel().force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * So sánh các chế độ ghi journal (journal.durability = fsync, group, async) khi nhiều client ghi đồng thời.
+ * Với mỗi chế độ, một JVM riêng (thư mục dữ liệu tạm) mở mỗi client một tài khoản rồi cho tất cả client
+ * (mặc định 200 luồng) cùng gọi BankingServiceImpl.deposit và transfer xen kẽ trong một khoảng thời gian,
+ * đo số thao tác mỗi giây và độ trễ từng thao tác. Sau đó server bị dừng đột ngột và khởi động lại:
+ * với fsync và group, mọi thao tác đã trả về thành công phải còn nguyên sau replay;
+ * với async, số tiền nạp bị mất (các thao tác cuối chưa kịp ghi) được in ra.
+ * Chạy: java DurabilityBenchmark [số client] [số giây mỗi chế độ]
+ */
+public class DurabilityBenchmark {
+
+    private static final String[] MODES = {"fsync", "group", "async"};
+    private static final int DEFAULT_CLIENTS = 200;
+    private static final int DEFAULT_SECONDS = 3;
+    private static final int INITIAL_BALANCE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("load")) {
+            load(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("verify")) {
+            verify();
+            return;
+        }
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = new File(System.getProperty("java.class.path")).getAbsolutePath();
+
+        System.out.println(clients + " client đồng thời, " + seconds + " giây mỗi chế độ, "
+                + Runtime.getRuntime().availableProcessors() + " lõi");
+        System.out.printf("%-6s %12s %10s %10s %10s %10s  %s%n", "chế độ", "thao tác/s", "TB (ms)", "p50 (ms)", "p99 (ms)",
+                "max (ms)", "sau khởi động lại");
+        boolean ok = true;
+        for (String mode : MODES) {
+            File dir = Files.createTempDirectory("durability-benchmark").toFile();
+            writeConfig(new File(dir, "config.properties"), mode);
+            String[] result = value(run(dir, java, "-cp", classpath, "DurabilityBenchmark", "load",
+                    String.valueOf(clients), String.valueOf(seconds)), "RESULT:").split(",");
+            long total = Long.parseLong(value(run(dir, java, "-cp", classpath, "DurabilityBenchmark", "verify"), "TOTAL:"));
+
+            // RESULT:thao tác,ms,lỗi,tổng tiền,TB µs,p50 µs,p99 µs,max µs
+            long operations = Long.parseLong(result[0]);
+            long failed = Long.parseLong(result[2]);
+            long acknowledged = Long.parseLong(result[3]);
+            String restart;
+            boolean modeOk = failed == 0 && operations > 0;
+            if (total == acknowledged) {
+                restart = "đủ " + acknowledged + " - OK";
+            } else if (mode.equals("async") && total < acknowledged) {
+                restart = "mất " + (acknowledged - total) + " (async) - OK";
+            } else {
+                restart = total + ", mong đợi " + acknowledged + " - LỖI";
+                modeOk = false;
+            }
+            if (failed > 0) {
+                restart += ", " + failed + " thao tác lỗi - LỖI";
+            }
+            System.out.printf("%-6s %12.0f %10.2f %10.2f %10.2f %10.2f  %s%n", mode,
+                    operations * 1000.0 / Math.max(1, Long.parseLong(result[1])),
+                    Long.parseLong(result[4]) / 1000.0, Long.parseLong(result[5]) / 1000.0,
+                    Long.parseLong(result[6]) / 1000.0, Long.parseLong(result[7]) / 1000.0, restart);
+            ok &= modeOk;
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Mỗi client nạp tiền vào tài khoản của mình rồi chuyển khoản cho client khác, xen kẽ
+    private static void load(int clients, int seconds) throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String[] accounts = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            String result = service.register("durability-" + i, "pw", "Durability " + i);
+            if (!result.startsWith("SUCCESS:")) {
+                throw new IllegalStateException("Đăng ký thất bại: " + result);
+            }
+            accounts[i] = result.substring("SUCCESS:".length()).split(":")[0];
+            service.deposit(accounts[i], INITIAL_BALANCE);
+        }
+        Files.write(new File("durability-accounts.txt").toPath(), String.join("\n", accounts).getBytes(StandardCharsets.UTF_8));
+
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        long[] window = new long[2];
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            Thread thread = new Thread(() -> {
+                long[] samples = new long[1024];
+                int n = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    while (System.nanoTime() < window[1]) {
+                        long begin = System.nanoTime();
+                        String result;
+                        if (n % 2 == 0) {
+                            result = service.deposit(accounts[client], 1);
+                            if (result.startsWith("Đã nạp")) {
+                                deposited.incrementAndGet();
+                            }
+                        } else {
+                            int to = random.nextInt(accounts.length - 1);
+                            result = service.transfer(accounts[client], accounts[to >= client ? to + 1 : to], 1, "durability");
+                        }
+                        if (!result.startsWith("Đã nạp") && !result.startsWith("Đã chuyển")) {
+                            failed.incrementAndGet();
+                        }
+                        if (n == samples.length) {
+                            samples = Arrays.copyOf(samples, n * 2);
+                        }
+                        samples[n++] = System.nanoTime() - begin;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failed.incrementAndGet();
+                }
+                latencies[client] = samples;
+                counts[client] = n;
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        window[0] = System.nanoTime();
+        window[1] = window[0] + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long millis = (System.nanoTime() - window[0]) / 1_000_000;
+
+        int operations = Arrays.stream(counts).sum();
+        long[] all = new long[operations];
+        int pos = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, pos, counts[c]);
+            pos += counts[c];
+        }
+        Arrays.sort(all);
+        long mean = operations == 0 ? 0 : Arrays.stream(all).sum() / operations / 1000;
+        long total = (long) clients * INITIAL_BALANCE + deposited.get();
+        System.out.println("RESULT:" + operations + "," + millis + "," + failed.get() + "," + total + "," + mean + ","
+                + (operations == 0 ? 0 : all[operations / 2] / 1000) + ","
+                + (operations == 0 ? 0 : all[operations * 99 / 100] / 1000) + ","
+                + (operations == 0 ? 0 : all[operations - 1] / 1000));
+        System.out.flush();
+        Runtime.getRuntime().halt(0); // như server bị dừng đột ngột
+    }
+
+    private static void verify() throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String[] accounts = new String(Files.readAllBytes(new File("durability-accounts.txt").toPath()),
+                StandardCharsets.UTF_8).split("\n");
+        long total = 0;
+        for (String account : accounts) {
+            String result = service.queryAccount(account);
+            total += Math.round(Double.parseDouble(result.substring(result.indexOf(':') + 1).trim()));
+        }
+        System.out.println("TOTAL:" + total);
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static String value(List<String> lines, String prefix) {
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                return line.substring(prefix.length());
+            }
+        }
+        throw new IllegalStateException("Không có " + prefix + " trong kết quả");
+    }
+
+    /**
+     * Chạy một lần và trả về các dòng stdout
+     */
+    private static List<String> run(File dir, String... command) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Lần chạy " + String.join(" ", command) + " kết thúc với mã " + process.exitValue());
+        }
+        return lines;
+    }
+
+    private static void writeConfig(File file, String durability) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("journal.durability=" + durability + "\n");
+            out.write("checkpoint.intervalSeconds=1\n");
+        }
+    }
+}
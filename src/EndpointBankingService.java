@@ -0,0 +1,305 @@
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
+import java.rmi.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Phía client: kết nối tới một trong nhiều server cùng phục vụ dữ liệu
+ * (server.endpoints, ví dụ nhiều BankingRouter), tự chuyển sang server khác khi server đang dùng lỗi.
+ *
+ * - Khi kết nối, mọi server được thử song song (tra registry rồi gọi thử queryAccount);
+ *   các lần thử bắt đầu cùng lúc nên server trả lời đầu tiên là server có độ trễ thấp nhất.
+ * - Nếu không server nào trả lời, thử lại sau khoảng chờ tăng gấp đôi mỗi lần (có ngẫu nhiên
+ *   để nhiều client không cùng thử lại một lúc), cho đến hết failoverMillis.
+ * - Lời gọi gặp lỗi kết nối thì chuyển server rồi gọi lại: thao tác đọc và thao tác có
+ *   idempotency key (Operation.withIdempotencyKey) luôn được gọi lại, thao tác ghi khác chỉ gọi lại
+ *   khi lỗi cho biết lời gọi chưa đến server (không thực hiện hai lần).
+ * - Callback đã đăng ký được đăng ký lại trên server mới.
+ */
+public class EndpointBankingService implements BankingService {
+    /**
+     * Một lời gọi tới server
+     */
+    private interface Call<T> {
+        T call(BankingService service) throws RemoteException;
+    }
+    
+    private final List<String> urls;
+    private final long failoverMillis;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final ExecutorService probes;
+    private final Map<BankingCallback, String> callbacks = new ConcurrentHashMap<>(); // callback -> tài khoản
+    private volatile BankingService current;
+    private volatile String currentUrl;
+    
+    public EndpointBankingService(List<String> urls, long failoverMillis, long backoffBaseMillis, long backoffMaxMillis) {
+        this.urls = new ArrayList<>(urls);
+        this.failoverMillis = failoverMillis;
+        this.backoffBaseMillis = Math.max(1, backoffBaseMillis);
+        this.backoffMaxMillis = Math.max(this.backoffBaseMillis, backoffMaxMillis);
+        this.probes = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "endpoint-probe");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
+    /**
+     * Chọn server trả lời nhanh nhất, thử lại với thời gian chờ tăng dần đến hết failoverMillis
+     * @return URL của server được chọn
+     */
+    public synchronized String connect() throws RemoteException {
+        long deadline = System.currentTimeMillis() + failoverMillis;
+        long backoff = backoffBaseMillis;
+        while (true) {
+            RemoteException failure;
+            try {
+                select();
+                return currentUrl;
+            } catch (RemoteException e) {
+                failure = e;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw failure;
+            }
+            try {
+                // Chờ ngẫu nhiên trong [backoff/2, backoff]
+                Thread.sleep(Math.min(remaining, ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw failure;
+            }
+            backoff = Math.min(backoff * 2, backoffMaxMillis);
+        }
+    }
+    
+    public String getCurrentUrl() {
+        return currentUrl;
+    }
+    
+    /**
+     * Thử song song mọi server, dùng server trả lời đầu tiên
+     */
+    private void select() throws RemoteException {
+        ExecutorCompletionService<Object[]> completion = new ExecutorCompletionService<>(probes);
+        List<Future<Object[]>> pending = new ArrayList<>();
+        for (String url : urls) {
+            pending.add(completion.submit(() -> {
+                BankingService service = (BankingService) Naming.lookup(url);
+                service.queryAccount("");
+                return new Object[] {url, service};
+            }));
+        }
+        Exception last = null;
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                try {
+                    Object[] result = completion.take().get();
+                    currentUrl = (String) result[0];
+                    current = (BankingService) result[1];
+                    return;
+                } catch (ExecutionException e) {
+                    last = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            last = e;
+        } finally {
+            // Các server chậm hơn không còn cần nữa
+            for (Future<Object[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+        if (last instanceof RemoteException) {
+            throw (RemoteException) last;
+        }
+        throw new RemoteException("Không kết nối được server nào trong " + urls, last);
+    }
+    
+    /**
+     * Chuyển sang server khác sau khi server đang dùng bị lỗi
+     */
+    private void failover(BankingService failed, RemoteException cause) throws RemoteException {
+        synchronized (this) {
+            if (current != failed) {
+                return; // luồng khác đã chuyển server
+            }
+            System.err.println("Mất kết nối tới " + currentUrl + ": " + cause.getMessage() + ", đang chuyển server...");
+            current = null;
+            connect();
+            System.out.println("Đã chuyển sang server " + currentUrl);
+        }
+        for (Map.Entry<BankingCallback, String> entry : callbacks.entrySet()) {
+            try {
+                current.registerCallback(entry.getValue(), entry.getKey());
+            } catch (RemoteException e) {
+                System.err.println("Lỗi đăng ký lại callback cho tài khoản " + entry.getValue() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Lỗi do không liên lạc được server (khác với lỗi server ném ra khi xử lý)
+     */
+    private static boolean isConnectionFailure(RemoteException e) {
+        return !(e instanceof ServerException) && !(e instanceof ServerError);
+    }
+    
+    /**
+     * Lỗi xảy ra trước khi lời gọi đến server, gọi lại không làm thao tác bị thực hiện hai lần
+     */
+    private static boolean notDelivered(RemoteException e) {
+        return e instanceof ConnectException || e instanceof ConnectIOException
+                || e instanceof NoSuchObjectException || e instanceof UnknownHostException;
+    }
+    
+    private <T> T call(boolean idempotent, Call<T> call) throws RemoteException {
+        BankingService service = current;
+        if (service == null) {
+            connect();
+            service = current;
+        }
+        try {
+            return call.call(service);
+        } catch (RemoteException e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
+            failover(service, e);
+            if (!idempotent && !notDelivered(e)) {
+                throw e;
+            }
+            return call.call(current);
+        }
+    }
+    
+    private <T> T read(Call<T> call) throws RemoteException {
+        return call(true, call);
+    }
+    
+    private <T> T write(Call<T> call) throws RemoteException {
+        return call(false, call);
+    }
+    
+    @Override
+    public String register(String username, String password, String fullName) throws RemoteException {
+        return write(service -> service.register(username, password, fullName));
+    }
+    
+    @Override
+    public String login(String username, String password) throws RemoteException {
+        return read(service -> service.login(username, password));
+    }
+    
+    @Override
+    public String queryAccount(String accountNumber) throws RemoteException {
+        return read(service -> service.queryAccount(accountNumber));
+    }
+    
+    @Override
+    public String deposit(String accountNumber, double amount) throws RemoteException {
+        return write(service -> service.deposit(accountNumber, amount));
+    }
+    
+    @Override
+    public String withdraw(String accountNumber, double amount) throws RemoteException {
+        return write(service -> service.withdraw(accountNumber, amount));
+    }
+    
+    @Override
+    public String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException {
+        return write(service -> service.transfer(fromAccount, toAccount, amount, content));
+    }
+    
+    @Override
+    public List<String> submitBatch(List<Operation> operations) throws RemoteException {
+        boolean retrySafe = operations != null;
+        if (operations != null) {
+            for (Operation operation : operations) {
+                retrySafe &= operation == null || operation.isRetrySafe();
+            }
+        }
+        return call(retrySafe, service -> service.submitBatch(operations));
+    }
+    
+    @Override
+    public String submitAsync(Operation operation, BankingOperationCallback callback) throws RemoteException {
+        return call(operation != null && operation.isRetrySafe(), service -> service.submitAsync(operation, callback));
+    }
+    
+    @Override
+    public OperationStatus getOperationStatus(String operationId) throws RemoteException {
+        // Mã thao tác chỉ có trên server đã nhận thao tác: sau khi chuyển server sẽ trả về UNKNOWN
+        return read(service -> service.getOperationStatus(operationId));
+    }
+    
+    @Override
+    public String bulkTransfer(String fromAccount, Map<String, Double> payments, String content) throws RemoteException {
+        return write(service -> service.bulkTransfer(fromAccount, payments, content));
+    }
+    
+    @Override
+    public List<Transaction> getTransactionHistory(String accountNumber) throws RemoteException {
+        return read(service -> service.getTransactionHistory(accountNumber));
+    }
+    
+    @Override
+    public TransactionPage getTransactionHistoryPage(String accountNumber, String cursor, int pageSize) throws RemoteException {
+        return read(service -> service.getTransactionHistoryPage(accountNumber, cursor, pageSize));
+    }
+    
+    @Override
+    public TransactionPage getTransactionsSince(String accountNumber, long lastSeenSequence) throws RemoteException {
+        return read(service -> service.getTransactionsSince(accountNumber, lastSeenSequence));
+    }
+    
+    @Override
+    public void registerCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        callbacks.put(callback, accountNumber);
+        read(service -> {
+            service.registerCallback(accountNumber, callback);
+            return null;
+        });
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber) throws RemoteException {
+        callbacks.values().removeIf(accountNumber::equals);
+        read(service -> {
+            service.unregisterCallback(accountNumber);
+            return null;
+        });
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        callbacks.remove(callback);
+        read(service -> {
+            service.unregisterCallback(accountNumber, callback);
+            return null;
+        });
+    }
+    
+    @Override
+    public NotificationPage pollNotifications(String accountNumber, long sinceSequence, long maxWaitMillis) throws RemoteException {
+        // Gọi lại an toàn: thông báo chỉ được coi là đã nhận khi client gửi mốc ở lần poll sau
+        return read(service -> service.pollNotifications(accountNumber, sinceSequence, maxWaitMillis));
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Đo thời gian tra lịch sử giao dịch của một tài khoản khi ngân hàng lớn dần.
+ * Mỗi mốc dựng một TransactionIndex với số tài khoản cho trước (mặc định 1k, 10k, 100k), mỗi tài khoản
+ * cùng số giao dịch (mặc định 50, các giao dịch của các tài khoản xen kẽ nhau như khi ghi thật), rồi đo
+ * getHistory và trang đầu của getPage trên các tài khoản ngẫu nhiên. Thời gian tra phải gần như không đổi
+ * giữa các mốc; cột "quét toàn bộ" là cách làm trước đây (lọc danh sách chung rồi sắp xếp) để so sánh.
+ * Chạy: java -Xmx12g HistoryIndexBenchmark [số tài khoản các mốc, vd 1000,10000,100000,1000000] [giao dịch mỗi tài khoản]
+ * (1M tài khoản x 50 giao dịch = 50M giao dịch cần khoảng 10 GB heap nên không nằm trong mặc định)
+ */
+public class HistoryIndexBenchmark {
+
+    private static final String DEFAULT_ACCOUNTS = "1000,10000,100000";
+    private static final int DEFAULT_PER_ACCOUNT = 50;
+    private static final int LOOKUPS = 20000;
+    private static final int SCAN_LOOKUPS = 5;
+    private static final double FLAT_LIMIT = 3.0; // mốc lớn nhất không chậm hơn mốc nhỏ nhất quá 3 lần
+
+    public static void main(String[] args) {
+        int[] steps = Arrays.stream((args.length > 0 ? args[0] : DEFAULT_ACCOUNTS).split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).sorted().toArray();
+        int perAccount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PER_ACCOUNT;
+
+        boolean ok = true;
+        double[] means = new double[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            int accounts = steps[i];
+            TransactionIndex index = new TransactionIndex();
+            List<Transaction> all = new ArrayList<>(accounts * perAccount);
+            String[] numbers = new String[accounts];
+            for (int a = 0; a < accounts; a++) {
+                numbers[a] = String.valueOf(10000 + a);
+            }
+            for (int n = 0; n < perAccount; n++) {
+                for (int a = 0; a < accounts; a++) {
+                    Transaction transaction = new Transaction(numbers[a], "DEPOSIT", 100, "Nạp tiền vào tài khoản");
+                    index.append(transaction);
+                    index.commit(transaction); // như sau khi ghi journal
+                    all.add(transaction);
+                }
+            }
+
+            Random random = new Random(42);
+            for (int l = 0; l < LOOKUPS; l++) { // làm nóng JIT để mốc đầu tiên không bị tính chậm
+                index.getPage(numbers[random.nextInt(accounts)], null, 20);
+                index.getHistory(numbers[random.nextInt(accounts)]);
+            }
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int l = 0; l < LOOKUPS; l++) {
+                String account = numbers[random.nextInt(accounts)];
+                List<Transaction> history = index.getHistory(account);
+                TransactionPage page = index.getPage(account, null, 20);
+                checksum += history.size() + page.getTransactions().size();
+                if (l % 1000 == 0) {
+                    ok &= verify(account, history, perAccount);
+                }
+            }
+            means[i] = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+            if (checksum != (long) LOOKUPS * (perAccount + Math.min(20, perAccount))) {
+                System.out.println("Số giao dịch trả về sai (" + checksum + ") - LỖI");
+                ok = false;
+            }
+
+            start = System.nanoTime();
+            for (int l = 0; l < SCAN_LOOKUPS; l++) {
+                String account = numbers[random.nextInt(accounts)];
+                all.stream()
+                        .filter(t -> t.getAccountNumber().equals(account))
+                        .sorted(Comparator.comparing(Transaction::getTimestamp).reversed())
+                        .collect(Collectors.toList());
+            }
+            double scan = (System.nanoTime() - start) / 1000.0 / SCAN_LOOKUPS;
+            System.out.printf("%,10d tài khoản, %,12d giao dịch: chỉ mục %8.1f µs/lần, quét toàn bộ %,12.1f µs/lần%n",
+                    accounts, index.size(), means[i], scan);
+        }
+
+        double ratio = means[means.length - 1] / means[0];
+        boolean flat = ratio <= FLAT_LIMIT;
+        System.out.printf("Thời gian tra mốc lớn nhất / mốc nhỏ nhất: %.2f lần%s%n", ratio, flat ? " - OK" : " - LỖI");
+        ok &= flat;
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Lịch sử đủ giao dịch, đúng tài khoản, mới nhất trước
+    private static boolean verify(String account, List<Transaction> history, int perAccount) {
+        boolean ok = history.size() == perAccount;
+        for (int i = 0; i < history.size() && ok; i++) {
+            ok = history.get(i).getAccountNumber().equals(account)
+                    && history.get(i).getSequence() == perAccount - i;
+        }
+        if (!ok) {
+            System.out.println("Lịch sử của " + account + " không đúng - LỖI");
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sinh mã giao dịch 64 bit duy nhất, tăng dần theo thời gian:
+ *
+ *   41 bit thời gian (ms tính từ EPOCH) | 10 bit mã node | 12 bit số thứ tự trong cùng ms
+ *
+ * Không dùng khóa: trạng thái (thời gian, số thứ tự) của lần cấp gần nhất nằm trong một AtomicLong
+ * và được cập nhật bằng compareAndSet. Khi hết 4096 số thứ tự trong một ms, hoặc đồng hồ bị lùi,
+ * mã tiếp theo mượn ms kế tiếp thay vì chờ, nên mã vẫn tăng dần và không trùng.
+ *
+ * Duy nhất giữa các node nhờ mã node (server.nodeId), và sau khi khởi động lại nhờ observe():
+ * server đưa các mã đã có trong journal vào để không bao giờ cấp lại mã nhỏ hơn.
+ */
+public class IdGenerator {
+    public static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final String PREFIX = "TX";
+    // Mã cũ dạng "TXN" + 13 chữ số ms dài 16 ký tự; mã mới dài tối đa 2 + 13 ký tự base 36
+    private static final int MAX_LENGTH = PREFIX.length() + 13;
+
+    private static volatile IdGenerator instance = new IdGenerator(0);
+
+    private final long node;
+    private final AtomicLong last = new AtomicLong(); // (thời gian << SEQUENCE_BITS) | số thứ tự đã cấp
+
+    public IdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Mã node phải trong khoảng 0.." + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+    }
+
+    public static IdGenerator getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(IdGenerator generator) {
+        instance = generator;
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            // Cùng ms (hoặc đồng hồ lùi): tăng số thứ tự, tràn sang ms kế tiếp nếu cần
+            long next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (last.compareAndSet(previous, next)) {
+                return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+                        | (node << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Mã dạng chuỗi ngắn: "TX" + base 36 (tối đa 15 ký tự)
+     */
+    public String nextString() {
+        return format(nextId());
+    }
+
+    /**
+     * Ghi nhận một mã đã cấp trước đó (đọc từ journal): các mã sau luôn lớn hơn về thời gian/số thứ tự
+     */
+    public void observe(String transactionId) {
+        long id = parse(transactionId);
+        if (id < 0) {
+            return;
+        }
+        long state = ((id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (id & SEQUENCE_MASK);
+        last.accumulateAndGet(state, Math::max);
+    }
+
+    public static String format(long id) {
+        return PREFIX + Long.toString(id, 36).toUpperCase();
+    }
+
+    /**
+     * @return mã số của chuỗi, -1 nếu không phải mã do IdGenerator sinh (ví dụ mã cũ "TXN...")
+     */
+    public static long parse(String transactionId) {
+        if (transactionId == null || !transactionId.startsWith(PREFIX) || transactionId.length() > MAX_LENGTH
+                || transactionId.length() == PREFIX.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(transactionId.substring(PREFIX.length()), 36);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Thời điểm (ms) cấp mã
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE);
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Kết quả của các thao tác có idempotency key, để client gọi lại an toàn sau lỗi mạng.
+ *
+ * - Lời gọi lại với cùng key nhận đúng kết quả của lần đầu, thao tác không được thực hiện lần nữa.
+ * - Lời gọi lại đến khi lần đầu còn đang thực hiện thì chờ lần đầu xong. Người gọi đang giữ key khác
+ *   (lô nhiều thao tác) không chờ mà nhận IN_PROGRESS, nên hai lô không thể chờ lẫn nhau.
+ * - Giữ tối đa maxEntries key, mỗi key giữ trong ttlMillis; key cũ nhất bị bỏ trước.
+ * - Kết quả nằm trong journal cùng bản ghi với giao dịch (IdempotencyRecord) và trong checkpoint,
+ *   nên vẫn còn sau khi server khởi động lại.
+ */
+public class IdempotencyCache {
+    /**
+     * Kết quả trả về khi key đang được một lời gọi khác thực hiện
+     */
+    public static final IdempotencyRecord IN_PROGRESS = new IdempotencyRecord(null, null,
+            "Thao tác với idempotency key này đang được thực hiện, vui lòng thử lại sau", 0, Collections.emptyList());
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, IdempotencyRecord> records = new LinkedHashMap<>(); // cũ nhất trước
+    private final Set<String> inFlight = new HashSet<>(); // key đang được thực hiện
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Bắt đầu thao tác với key. Trả về null nếu người gọi được thực hiện thao tác,
+     * khi đó phải gọi complete (thành công) hoặc release (bỏ dở) sau đó
+     * @param wait chờ nếu key đang được thực hiện; false khi người gọi đang giữ key khác
+     * @return kết quả đã lưu của key, hoặc IN_PROGRESS
+     */
+    public synchronized IdempotencyRecord begin(String key, boolean wait) throws InterruptedException {
+        while (true) {
+            IdempotencyRecord record = lookup(key);
+            if (record != null) {
+                return record;
+            }
+            if (inFlight.add(key)) {
+                return null;
+            }
+            if (!wait) {
+                return IN_PROGRESS;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Lưu kết quả sau khi bản ghi đã được ghi vào journal
+     */
+    public synchronized void complete(IdempotencyRecord record) {
+        inFlight.remove(record.getKey());
+        put(record);
+        notifyAll();
+    }
+
+    /**
+     * Bỏ các key chưa có kết quả (thao tác bị lỗi giữa chừng), lời gọi lại sẽ thực hiện lại
+     */
+    public synchronized void release(Collection<String> keys) {
+        if (inFlight.removeAll(keys)) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Nạp lại key từ checkpoint hoặc journal khi khởi động
+     */
+    public synchronized void restore(IdempotencyRecord record) {
+        if (!expired(record, System.currentTimeMillis())) {
+            put(record);
+        }
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    private IdempotencyRecord lookup(String key) {
+        IdempotencyRecord record = records.get(key);
+        if (record != null && expired(record, System.currentTimeMillis())) {
+            records.remove(key);
+            return null;
+        }
+        return record;
+    }
+
+    private void put(IdempotencyRecord record) {
+        records.remove(record.getKey());
+        records.put(record.getKey(), record.withoutTransactions());
+        long now = System.currentTimeMillis();
+        Iterator<IdempotencyRecord> it = records.values().iterator();
+        while (it.hasNext()) {
+            IdempotencyRecord oldest = it.next();
+            if (records.size() <= maxEntries && !expired(oldest, now)) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    private boolean expired(IdempotencyRecord record, long now) {
+        return now - record.getCreatedAt() > ttlMillis;
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bản ghi journal của một thao tác gửi kèm idempotency key (xem Operation.withIdempotencyKey):
+ * key, mô tả thao tác, kết quả đã trả cho client và các giao dịch của thao tác.
+ *
+ * Kết quả và giao dịch là một bản ghi duy nhất, nên sau khi server sập không thể còn giao dịch
+ * mà mất key (lời gọi lại sẽ thực hiện lần nữa), hay còn key mà mất giao dịch.
+ */
+public class IdempotencyRecord {
+    final String key; // tài khoản + "/" + key của client
+    final String request; // mô tả thao tác, để nhận ra key bị dùng lại cho thao tác khác
+    final String result;
+    final long createdAt;
+    final List<Transaction> transactions; // rỗng khi thao tác thất bại hoặc khi đọc từ checkpoint
+
+    public IdempotencyRecord(String key, String request, String result, long createdAt, List<Transaction> transactions) {
+        this.key = key;
+        this.request = request;
+        this.result = result;
+        this.createdAt = createdAt;
+        this.transactions = transactions;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Bản ghi chỉ còn key và kết quả, để giữ trong bộ nhớ đệm và checkpoint
+     */
+    public IdempotencyRecord withoutTransactions() {
+        if (transactions.isEmpty()) {
+            return this;
+        }
+        return new IdempotencyRecord(key, request, result, createdAt, Collections.emptyList());
+    }
+}
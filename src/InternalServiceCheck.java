@@ -0,0 +1,256 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.rmi.Remote;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kiểm tra các dịch vụ nội bộ của server (ShardEndpoint, ReplicationEndpoint) tách khỏi stub của client:
+ * - stub BankingService client nhận được không gọi được các bước chuyển khoản giữa shard hay đọc checkpoint/journal;
+ * - checkpoint và journal gửi cho bản sao không chứa mật khẩu, trong khi server chính vẫn đăng nhập được;
+ * - socket của dịch vụ nội bộ đóng kết nối từ địa chỉ không phải loopback và không nằm trong internal.allowedHosts.
+ * Server chạy trong JVM riêng (thư mục dữ liệu tạm, registry trên một cổng trống của 127.0.0.1),
+ * bind giống BankingServer.
+ * Chạy: java InternalServiceCheck
+ */
+public class InternalServiceCheck {
+
+    private static final String SERVICE_NAME = "BankingService";
+    private static final String PASSWORD = "mat-khau-bi-mat-42";
+    private static final long CHECKPOINT_WAIT_MILLIS = 15000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            serve(Integer.parseInt(args[1]));
+            return;
+        }
+        File dir = Files.createTempDirectory("internal-service-check").toFile();
+        writeConfig(new File(dir, "config.properties"));
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ProcessBuilder builder = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(),
+                "InternalServiceCheck", "server", String.valueOf(port));
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process server = builder.start();
+        boolean ok;
+        try {
+            BufferedReader serverOut = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = serverOut.readLine()) != null && !line.equals("READY")) {
+                // bỏ qua log khởi động của server
+            }
+            if (line == null) {
+                throw new IllegalStateException("Server không khởi động được");
+            }
+            Thread drain = new Thread(() -> {
+                try {
+                    while (serverOut.readLine() != null) {
+                        // log của server không cần cho kết quả
+                    }
+                } catch (IOException e) {
+                    // server đã dừng
+                }
+            });
+            drain.setDaemon(true);
+            drain.start();
+            Registry registry = LocateRegistry.getRegistry("127.0.0.1", port);
+            ok = checkClientStub(registry);
+            ok &= checkCredentials(registry);
+        } finally {
+            server.getOutputStream().close(); // server dừng khi stdin đóng
+            server.waitFor();
+        }
+        ok &= checkSocketFactory();
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean checkClientStub(Registry registry) throws Exception {
+        Remote stub = registry.lookup(SERVICE_NAME);
+        boolean ok = stub instanceof BankingService && !(stub instanceof ShardParticipant)
+                && !(stub instanceof ReplicationSource);
+        System.out.println("Stub của client không có ShardParticipant/ReplicationSource" + (ok ? " - OK" : " - LỖI"));
+        return ok;
+    }
+
+    private static boolean checkCredentials(Registry registry) throws Exception {
+        BankingService service = (BankingService) registry.lookup(SERVICE_NAME);
+        ReplicationSource source = (ReplicationSource) registry.lookup(SERVICE_NAME + BankingServer.REPLICATION_SUFFIX);
+        String result = service.register("internal-check", PASSWORD, "Internal Check");
+        if (!result.startsWith("SUCCESS:")) {
+            throw new IllegalStateException("Đăng ký thất bại: " + result);
+        }
+        service.deposit(result.split(":")[1], 100);
+
+        // Journal: đọc từ đầu đến vị trí đã fsync
+        boolean journalOk = true;
+        int users = 0;
+        int segment = 1;
+        long offset = 0;
+        while (true) {
+            JournalChunk chunk = source.readJournal(segment, offset, 1 << 20);
+            journalOk &= !contains(chunk.getData(), PASSWORD);
+            for (Object record : TransactionJournal.decodeChunk(chunk)) {
+                if (record instanceof User) {
+                    users++;
+                    journalOk &= ((User) record).getPassword().isEmpty();
+                }
+            }
+            if (chunk.isSealed()) {
+                segment = chunk.getSegmentId() + 1;
+                offset = 0;
+            } else if (chunk.isCaughtUp()) {
+                break;
+            } else {
+                offset = chunk.getEndOffset();
+            }
+        }
+        journalOk &= users == 1;
+        System.out.println("Journal gửi cho bản sao: " + users + " bản ghi người dùng, không có mật khẩu"
+                + (journalOk ? " - OK" : " - LỖI"));
+
+        // Checkpoint: chờ server tạo checkpoint định kỳ
+        CheckpointImage image = null;
+        long deadline = System.currentTimeMillis() + CHECKPOINT_WAIT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            image = source.checkpointImage();
+            if (image != null && containsUser(image)) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        boolean imageOk = image != null && containsUser(image) && !contains(image.getCheckpoint(), PASSWORD);
+        if (imageOk) {
+            File replica = Files.createTempDirectory("internal-service-check-replica").toFile();
+            CheckpointManager checkpoints = new CheckpointManager(new File(replica, "checkpoint.dat"), null);
+            checkpoints.installImage(image);
+            User user = checkpoints.load().users.get("internal-check");
+            imageOk = user != null && user.getPassword().isEmpty();
+        }
+        System.out.println("Checkpoint gửi cho bản sao không có mật khẩu" + (imageOk ? " - OK" : " - LỖI"));
+
+        // Checkpoint của server chính vẫn giữ mật khẩu
+        boolean login = service.login("internal-check", PASSWORD).startsWith("SUCCESS:")
+                && !service.login("internal-check", "").startsWith("SUCCESS:");
+        System.out.println("Đăng nhập trên server chính sau checkpoint" + (login ? " - OK" : " - LỖI"));
+        return journalOk && imageOk && login;
+    }
+
+    private static boolean containsUser(CheckpointImage image) {
+        return contains(image.getCheckpoint(), "internal-check");
+    }
+
+    private static boolean checkSocketFactory() throws Exception {
+        InetAddress external = externalAddress();
+        RMIServerSocketFactory factory = new BankingServer.InternalServerSocketFactory(Collections.emptySet());
+        try (ServerSocket server = factory.createServerSocket(0)) {
+            CompletableFuture<Socket> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return server.accept();
+                } catch (IOException e) {
+                    return null;
+                }
+            });
+            boolean rejected = true;
+            if (external != null) {
+                try (Socket client = new Socket(external, server.getLocalPort())) {
+                    client.setSoTimeout(5000);
+                    rejected = client.getInputStream().read() == -1; // server đóng kết nối
+                } catch (SocketTimeoutException e) {
+                    rejected = false; // kết nối vẫn mở
+                } catch (SocketException e) {
+                    rejected = true; // kết nối bị reset
+                }
+                rejected &= !accepted.isDone();
+                System.out.println("Kết nối từ " + external.getHostAddress() + " bị từ chối"
+                        + (rejected ? " - OK" : " - LỖI"));
+            } else {
+                System.out.println("Không có địa chỉ ngoài loopback, bỏ qua kiểm tra từ chối kết nối");
+            }
+            try (Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+                Socket socket = accepted.get(5, TimeUnit.SECONDS);
+                boolean loopback = socket != null;
+                if (socket != null) {
+                    socket.close();
+                }
+                System.out.println("Kết nối từ loopback được nhận" + (loopback ? " - OK" : " - LỖI"));
+                return rejected && loopback;
+            }
+        }
+    }
+
+    private static InetAddress externalAddress() throws IOException {
+        for (NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!iface.isUp() || iface.isLoopback()) {
+                continue;
+            }
+            for (InetAddress address : Collections.list(iface.getInetAddresses())) {
+                if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                    return address;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(byte[] data, String text) {
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // JVM chạy server: bind service và các dịch vụ nội bộ như BankingServer, dừng khi stdin đóng
+    private static void serve(int port) throws Exception {
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+        BankingServiceImpl service = new BankingServiceImpl();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind(SERVICE_NAME, service);
+        RMIServerSocketFactory internal = BankingServer.internalSocketFactory();
+        registry.rebind(SERVICE_NAME + BankingServer.PARTICIPANT_SUFFIX, new ShardEndpoint(service, internal));
+        registry.rebind(SERVICE_NAME + BankingServer.REPLICATION_SUFFIX, new ReplicationEndpoint(service, internal));
+        System.out.println("READY");
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // chờ tiến trình cha đóng stdin
+        }
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static void writeConfig(File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("checkpoint.intervalSeconds=1\n");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Đo chi phí ghi mỗi thao tác vào journal khi số giao dịch đã lưu tăng dần.
+ * Journal trong thư mục tạm được nạp sẵn đến từng mốc (mặc định 1k, 10k, 100k, 1M giao dịch), tại mỗi mốc
+ * đo thời gian ghi một giao dịch (như một lần nạp tiền). Chi phí phải gần như không đổi giữa các mốc
+ * (trước đây mỗi thao tác ghi lại toàn bộ transactions.json). Cuối cùng replay journal để kiểm tra
+ * số giao dịch đọc lại đúng bằng số đã ghi.
+ * Chạy: java JournalBenchmark [các mốc, vd 1000,10000,100000,1000000,10000000] [số lần đo mỗi mốc] [fsync|group|async]
+ * (mốc 10M cần khoảng 1 GB đĩa nên không nằm trong mặc định)
+ */
+public class JournalBenchmark {
+
+    private static final String DEFAULT_SIZES = "1000,10000,100000,1000000";
+    private static final int DEFAULT_SAMPLES = 2000;
+    private static final int FILL_BATCH = 1000;
+    private static final int ACCOUNTS = 1000;
+    private static final double FLAT_LIMIT = 3.0; // mốc lớn nhất không chậm hơn mốc nhỏ nhất quá 3 lần
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = Arrays.stream((args.length > 0 ? args[0] : DEFAULT_SIZES).split(","))
+                .mapToLong(s -> Long.parseLong(s.trim())).sorted().toArray();
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SAMPLES;
+        TransactionJournal.Durability durability = TransactionJournal.Durability.parse(args.length > 2 ? args[2] : "group");
+
+        File dir = Files.createTempDirectory("journal-benchmark").toFile();
+        TransactionJournal journal = new TransactionJournal(dir, durability, 10, 16L << 20);
+        journal.open();
+
+        long stored = 0;
+        double[] means = new double[sizes.length];
+        System.out.println("journal.durability=" + durability.name().toLowerCase() + ", " + samples + " lần ghi mỗi mốc");
+        for (int i = 0; i < sizes.length; i++) {
+            stored = fill(journal, stored, sizes[i]);
+            long[] nanos = new long[samples];
+            for (int s = 0; s < samples; s++) {
+                Transaction transaction = newTransaction(stored + s);
+                long start = System.nanoTime();
+                journal.append(Collections.singletonList(transaction));
+                nanos[s] = System.nanoTime() - start;
+            }
+            stored += samples;
+            Arrays.sort(nanos);
+            means[i] = Arrays.stream(nanos).average().orElse(0) / 1000.0;
+            System.out.printf("%,12d giao dịch đã lưu: trung bình %8.1f µs, p50 %8.1f µs, p99 %8.1f µs%n",
+                    sizes[i], means[i], nanos[samples / 2] / 1000.0, nanos[samples * 99 / 100] / 1000.0);
+        }
+        journal.close();
+
+        long[] replayed = new long[1];
+        for (File segment : journal.segments()) {
+            TransactionJournal.replay(segment, record -> {
+                if (record instanceof Transaction) {
+                    replayed[0]++;
+                }
+            });
+        }
+
+        boolean ok = true;
+        if (replayed[0] != stored) {
+            System.out.println("Replay đọc lại " + replayed[0] + " giao dịch, mong đợi " + stored + " - LỖI");
+            ok = false;
+        } else {
+            System.out.println("Replay đọc lại đủ " + stored + " giao dịch - OK");
+        }
+        double ratio = means[means.length - 1] / means[0];
+        boolean flat = ratio <= FLAT_LIMIT;
+        System.out.printf("Chi phí ghi mốc lớn nhất / mốc nhỏ nhất: %.2f lần%s%n", ratio, flat ? " - OK" : " - LỖI");
+        ok &= flat;
+        deleteRecursively(dir);
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Nạp journal đến target giao dịch bằng các lần ghi lớn (không tính vào thời gian đo)
+    private static long fill(TransactionJournal journal, long stored, long target) throws IOException {
+        while (stored < target) {
+            int count = (int) Math.min(FILL_BATCH, target - stored);
+            List<Transaction> batch = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                batch.add(newTransaction(stored + i));
+            }
+            journal.append(batch);
+            stored += count;
+        }
+        return stored;
+    }
+
+    private static Transaction newTransaction(long n) {
+        Transaction transaction = new Transaction(String.valueOf(10000 + n % ACCOUNTS), "DEPOSIT",
+                Money.parse("1.0"), "Nạp tiền vào tài khoản");
+        transaction.setSequence(n / ACCOUNTS + 1);
+        return transaction;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.Serializable;
+
+/**
+ * Một đoạn journal server chính gửi cho bản sao chỉ đọc: các bản ghi nguyên vẹn (đã fsync)
+ * của một segment trong khoảng [startOffset, endOffset), giữ nguyên định dạng trong file,
+ * trừ mật khẩu trong bản ghi người dùng được bỏ trống (bản sao không phục vụ đăng nhập).
+ */
+public class JournalChunk implements Serializable {
+    private final int segmentId;
+    private final int version; // phiên bản định dạng của segment
+    private final long startOffset;
+    private final long endOffset;
+    private final byte[] data;
+    private final boolean sealed; // segment đã đóng và đã đọc hết: lần sau đọc segment tiếp theo
+    private final boolean caughtUp; // đã đọc đến vị trí mới nhất của server chính
+    
+    public JournalChunk(int segmentId, int version, long startOffset, long endOffset, byte[] data,
+                        boolean sealed, boolean caughtUp) {
+        this.segmentId = segmentId;
+        this.version = version;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.data = data;
+        this.sealed = sealed;
+        this.caughtUp = caughtUp;
+    }
+    
+    public int getSegmentId() {
+        return segmentId;
+    }
+    
+    public int getVersion() {
+        return version;
+    }
+    
+    public long getStartOffset() {
+        return startOffset;
+    }
+    
+    public long getEndOffset() {
+        return endOffset;
+    }
+    
+    public byte[] getData() {
+        return data;
+    }
+    
+    public boolean isSealed() {
+        return sealed;
+    }
+    
+    public boolean isCaughtUp() {
+        return caughtUp;
+    }
+}
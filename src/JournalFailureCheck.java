@@ -0,0 +1,359 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kiểm tra xử lý lỗi ghi journal và replay sau lỗi.
+ * Lần chạy thứ nhất (JVM riêng, giới hạn kích thước file bằng ulimit -f) nạp tiền liên tục cho đến khi
+ * journal không ghi được: thao tác lỗi phải trả về lỗi cho client và được hoàn lại trong bộ nhớ.
+ * Lần chạy thứ hai (không giới hạn) replay journal: số dư và lịch sử phải đúng bằng các lần nạp
+ * đã báo thành công, và journal không còn phần ghi dở.
+ * Trường hợp thứ hai lấp journal đến khi chỉ còn chỗ cho bản ghi nhỏ, rồi lặp một lần chuyển khoản cho nhiều
+ * tài khoản (bản ghi quá lớn, luôn ghi lỗi) trong khi một luồng khác liên tục rút tiền từ một tài khoản nhận:
+ * khoản cộng chưa ghi journal không được tiêu, tài khoản nhận không bao giờ âm, kể cả sau replay.
+ * Trường hợp thứ ba làm vài chuyển khoản ghi lỗi (nội dung lớn hơn giới hạn file), chờ checkpoint rồi dừng đột ngột:
+ * sau khi khởi động lại, giao dịch mới phải nhận sequence lớn hơn mọi sequence đã cấp cho giao dịch bị bỏ.
+ * Chạy: java JournalFailureCheck (cần /bin/sh, dùng cho Linux/macOS)
+ */
+public class JournalFailureCheck {
+
+    private static final int FILE_LIMIT_BLOCKS = 200; // ulimit -f, đơn vị 512 byte
+    private static final int MAX_DEPOSITS = 100000;
+    private static final int OVERDRAFT_RECIPIENTS = 150; // bản ghi chuyển khoản lớn hơn phần còn trống
+    private static final int OVERDRAFT_ROOM = 6000; // byte còn trống trong segment khi bắt đầu chuyển khoản
+    private static final int OVERDRAFT_ATTEMPTS = 2000;
+    private static final int DISCARDED_TRANSFERS = 3;
+    private static final long CHECKPOINT_WAIT_MILLIS = 10000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("fill")) {
+            fill();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("overdraft")) {
+            overdraft();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("discard")) {
+            discard();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("verify")) {
+            verify(args[1]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("sequence")) {
+            sequence(args[1]);
+            return;
+        }
+        boolean ok = true;
+        for (String durability : new String[] {"group", "fsync"}) {
+            ok &= check(durability);
+            ok &= checkOverdraft(durability);
+            ok &= checkSequence(durability);
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Lần chạy bị giới hạn kích thước file: nạp đến khi journal lỗi
+    private static void fill() throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String registered = service.register("journal-check", "pw", "Journal Check");
+        if (!registered.startsWith("SUCCESS:")) {
+            throw new IllegalStateException("Đăng ký thất bại: " + registered);
+        }
+        String account = registered.substring("SUCCESS:".length());
+        int deposited = 0;
+        String failure = null;
+        for (int i = 0; i < MAX_DEPOSITS && failure == null; i++) {
+            String result = service.deposit(account, 1.0);
+            if (result.startsWith("Đã nạp")) {
+                deposited++;
+            } else {
+                failure = result.startsWith("Lỗi lưu giao dịch") ? "journal" : result;
+            }
+        }
+        // Các lần nạp sau lỗi cũng không được ghi nhận nửa vời
+        for (int i = 0; i < 3 && failure != null; i++) {
+            if (service.deposit(account, 1.0).startsWith("Đã nạp")) {
+                deposited++;
+            }
+        }
+        System.out.println("ACCOUNT:" + account);
+        System.out.println("DEPOSITED:" + deposited);
+        System.out.println("FAILURE:" + failure);
+        System.out.println("BALANCE:" + balance(service, account));
+        System.out.println("HISTORY:" + service.getTransactionHistory(account).size());
+        System.out.flush();
+        Runtime.getRuntime().halt(0); // như server bị dừng khi đĩa đầy
+    }
+
+    // Lần chạy bị giới hạn kích thước file: chuyển khoản luôn ghi lỗi trong khi tài khoản nhận bị rút tiền
+    private static void overdraft() throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String payer = open(service, "overdraft-payer");
+        Map<String, Double> payments = new LinkedHashMap<>();
+        for (int i = 0; i < OVERDRAFT_RECIPIENTS; i++) {
+            payments.put(open(service, "overdraft-" + i), 1.0);
+        }
+        String receiver = payments.keySet().iterator().next();
+        service.deposit(payer, 1000000);
+        while (segmentSize(new File("journal")) < FILE_LIMIT_BLOCKS * 512L - OVERDRAFT_ROOM) {
+            String result = service.deposit(payer, 1.0);
+            if (!result.startsWith("Đã nạp")) {
+                throw new IllegalStateException("Journal lỗi trước khi lấp xong: " + result);
+            }
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger withdrawn = new AtomicInteger();
+        Thread drain = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    if (service.withdraw(receiver, 1.0).startsWith("Đã rút")) {
+                        withdrawn.incrementAndGet();
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        drain.start();
+        int transferred = 0;
+        for (int i = 0; i < OVERDRAFT_ATTEMPTS; i++) {
+            if (service.bulkTransfer(payer, payments, "overdraft").startsWith("Đã chuyển")) {
+                transferred++;
+            }
+        }
+        running.set(false);
+        drain.join();
+
+        System.out.println("ACCOUNT:" + receiver);
+        System.out.println("TRANSFERRED:" + transferred);
+        System.out.println("WITHDRAWN:" + withdrawn.get());
+        System.out.println("BALANCE:" + balance(service, receiver));
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    // Lần chạy bị giới hạn kích thước file: chuyển khoản ghi lỗi (sequence bị bỏ), chờ checkpoint rồi dừng đột ngột
+    private static void discard() throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String payer = open(service, "sequence-payer");
+        String receiver = open(service, "sequence-receiver");
+        service.deposit(payer, 100);
+        String content = new String(new char[FILE_LIMIT_BLOCKS * 512]).replace('\0', 'x');
+        int failed = 0;
+        for (int i = 0; i < DISCARDED_TRANSFERS; i++) {
+            if (service.transfer(payer, receiver, 1, content).startsWith("Lỗi lưu giao dịch")) {
+                failed++;
+            }
+        }
+        // Segment hiện tại có bản ghi mới, nên checkpoint kế tiếp được tạo
+        long start = System.currentTimeMillis();
+        service.deposit(receiver, 1);
+        File checkpoint = new File("checkpoint.dat");
+        while (checkpoint.lastModified() <= start && System.currentTimeMillis() - start < CHECKPOINT_WAIT_MILLIS) {
+            Thread.sleep(100);
+        }
+        System.out.println("ACCOUNT:" + payer);
+        System.out.println("FAILED:" + failed);
+        System.out.println("SEQUENCE:" + service.getTransactionHistory(payer).get(0).getSequence());
+        System.out.println("CHECKPOINT:" + (checkpoint.lastModified() > start));
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    // Sau khi khởi động lại: sequence của giao dịch mới
+    private static void sequence(String account) throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        service.deposit(account, 1);
+        System.out.println("SEQUENCE:" + service.getTransactionHistory(account).get(0).getSequence());
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static String open(BankingServiceImpl service, String username) throws Exception {
+        String registered = service.register(username, "pw", "Journal Check");
+        if (!registered.startsWith("SUCCESS:")) {
+            throw new IllegalStateException("Đăng ký thất bại: " + registered);
+        }
+        return registered.substring("SUCCESS:".length());
+    }
+
+    // Kích thước segment đang ghi (segment lớn nhất)
+    private static long segmentSize(File journal) {
+        long size = 0;
+        File[] segments = journal.listFiles((d, name) -> name.endsWith(".log"));
+        if (segments != null) {
+            for (File segment : segments) {
+                size = Math.max(size, segment.length());
+            }
+        }
+        return size;
+    }
+
+    private static void verify(String account) throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        System.out.println("BALANCE:" + balance(service, account));
+        System.out.println("HISTORY:" + service.getTransactionHistory(account).size());
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static String balance(BankingServiceImpl service, String account) throws Exception {
+        String result = service.queryAccount(account);
+        return result.substring(result.indexOf(':') + 1).trim();
+    }
+
+    /**
+     * Segment có byte sau bản ghi hợp lệ cuối cùng (phần ghi dở chưa được cắt bỏ)
+     */
+    private static boolean hasTornSegment(File dir) throws IOException {
+        File[] segments = new File(dir, "journal").listFiles((d, name) -> name.endsWith(".log"));
+        if (segments != null) {
+            for (File segment : segments) {
+                if (TransactionJournal.replay(segment, null) < segment.length()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean check(String durability) throws Exception {
+        File dir = Files.createTempDirectory("journal-failure-check").toFile();
+        writeConfig(new File(dir, "config.properties"), durability);
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = new File(System.getProperty("java.class.path")).getAbsolutePath();
+
+        Map<String, String> filled = run(dir, "/bin/sh", "-c", "ulimit -f " + FILE_LIMIT_BLOCKS
+                + " && exec \"$0\" -cp \"$1\" JournalFailureCheck fill", java, classpath);
+        boolean torn = hasTornSegment(dir);
+        Map<String, String> replayed = run(dir, java, "-cp", classpath, "JournalFailureCheck", "verify",
+                filled.get("ACCOUNT"));
+
+        int deposited = Integer.parseInt(filled.get("DEPOSITED"));
+        String failure = filled.get("FAILURE");
+        boolean ok = true;
+        if (deposited == 0 || !"journal".equals(failure)) {
+            System.out.println(durability + ": journal không lỗi như mong đợi (" + deposited + " lần nạp, " + failure + ")");
+            ok = false;
+        }
+        // Thao tác lỗi đã được hoàn lại: số dư trong bộ nhớ bằng số lần nạp thành công
+        String expected = String.valueOf((double) deposited);
+        if (!expected.equals(filled.get("BALANCE")) || !String.valueOf(deposited).equals(filled.get("HISTORY"))) {
+            System.out.println(durability + ": sau lỗi ghi " + filled.get("BALANCE") + ", " + filled.get("HISTORY")
+                    + " giao dịch (mong đợi " + deposited + ")");
+            ok = false;
+        }
+        if (!expected.equals(replayed.get("BALANCE")) || !String.valueOf(deposited).equals(replayed.get("HISTORY"))) {
+            System.out.println(durability + ": sau replay " + replayed.get("BALANCE") + ", " + replayed.get("HISTORY")
+                    + " giao dịch (mong đợi " + deposited + ")");
+            ok = false;
+        }
+        if (torn) {
+            System.out.println(durability + ": journal còn phần ghi dở khi khởi động lại");
+            ok = false;
+        }
+        System.out.println("journal.durability=" + durability + ": " + deposited + " lần nạp trước khi đầy, "
+                + "số dư sau replay " + replayed.get("BALANCE") + (ok ? " - OK" : " - LỖI"));
+        return ok;
+    }
+
+    private static boolean checkOverdraft(String durability) throws Exception {
+        File dir = Files.createTempDirectory("journal-failure-check").toFile();
+        writeConfig(new File(dir, "config.properties"), durability);
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = new File(System.getProperty("java.class.path")).getAbsolutePath();
+
+        Map<String, String> filled = run(dir, "/bin/sh", "-c", "ulimit -f " + FILE_LIMIT_BLOCKS
+                + " && exec \"$0\" -cp \"$1\" JournalFailureCheck overdraft", java, classpath);
+        Map<String, String> replayed = run(dir, java, "-cp", classpath, "JournalFailureCheck", "verify",
+                filled.get("ACCOUNT"));
+
+        // Mỗi chuyển khoản ghi được cộng 1 cho tài khoản nhận, mỗi lần rút trừ 1; số dư không được âm
+        double expected = Integer.parseInt(filled.get("TRANSFERRED")) - Integer.parseInt(filled.get("WITHDRAWN"));
+        double balance = Double.parseDouble(filled.get("BALANCE"));
+        double replayedBalance = Double.parseDouble(replayed.get("BALANCE"));
+        boolean ok = balance == expected && replayedBalance == expected && balance >= 0;
+        System.out.println("journal.durability=" + durability + ": " + filled.get("TRANSFERRED") + "/" + OVERDRAFT_ATTEMPTS
+                + " chuyển khoản ghi được, rút " + filled.get("WITHDRAWN") + " lần, số dư tài khoản nhận " + balance
+                + ", sau replay " + replayedBalance + (ok ? " - OK" : " - LỖI"));
+        return ok;
+    }
+
+    private static boolean checkSequence(String durability) throws Exception {
+        File dir = Files.createTempDirectory("journal-failure-check").toFile();
+        writeConfig(new File(dir, "config.properties"), durability, 1);
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = new File(System.getProperty("java.class.path")).getAbsolutePath();
+
+        Map<String, String> discarded = run(dir, "/bin/sh", "-c", "ulimit -f " + FILE_LIMIT_BLOCKS
+                + " && exec \"$0\" -cp \"$1\" JournalFailureCheck discard", java, classpath);
+        Map<String, String> restarted = run(dir, java, "-cp", classpath, "JournalFailureCheck", "sequence",
+                discarded.get("ACCOUNT"));
+
+        // Giao dịch thành công cuối cùng có sequence S, các chuyển khoản bị bỏ đã dùng S+1..S+DISCARDED_TRANSFERS
+        long last = Long.parseLong(discarded.get("SEQUENCE"));
+        long next = Long.parseLong(restarted.get("SEQUENCE"));
+        boolean ok = discarded.get("FAILED").equals(String.valueOf(DISCARDED_TRANSFERS))
+                && "true".equals(discarded.get("CHECKPOINT")) && next > last + DISCARDED_TRANSFERS;
+        System.out.println("journal.durability=" + durability + ": " + discarded.get("FAILED") + " chuyển khoản bị bỏ sau sequence "
+                + last + ", giao dịch mới sau khởi động lại nhận sequence " + next
+                + (ok ? " - OK" : " - LỖI (mong đợi > " + (last + DISCARDED_TRANSFERS) + ", checkpoint "
+                        + discarded.get("CHECKPOINT") + ")"));
+        return ok;
+    }
+
+    /**
+     * Chạy một lần và đọc các dòng KEY:value của stdout
+     */
+    private static Map<String, String> run(File dir, String... command) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        Map<String, String> values = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).matches("[A-Z]+")) {
+                    values.put(line.substring(0, colon), line.substring(colon + 1));
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Lần chạy " + String.join(" ", command) + " kết thúc với mã " + process.exitValue());
+        }
+        return values;
+    }
+
+    private static void writeConfig(File file, String durability) throws IOException {
+        writeConfig(file, durability, 3600);
+    }
+
+    private static void writeConfig(File file, String durability, int checkpointSeconds) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("journal.durability=" + durability + "\n");
+            out.write("checkpoint.intervalSeconds=" + checkpointSeconds + "\n");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Đo thời gian và bộ nhớ heap đỉnh khi khởi động server từ một transactions.json lớn (định dạng cũ).
+ * File được sinh trong thư mục tạm (mặc định 256 MB), sau đó một JVM riêng khởi động BankingServiceImpl
+ * trong thư mục đó: đọc file bằng JsonStreamReader và chuyển sang journal như lần nâng cấp thật.
+ * Kết quả gồm thời gian khởi động, heap đỉnh, heap còn giữ sau khi nạp (các giao dịch trong bộ nhớ)
+ * và phần chênh lệch dùng cho việc đọc file. Phần chênh lệch phải nhỏ hơn kích thước file
+ * (trước đây riêng StringBuilder chứa cả file đã chiếm gấp đôi kích thước file).
+ * Heap đỉnh là dữ liệu còn sống lớn nhất sau các lần GC trong lúc khởi động (không tính rác chưa thu gom),
+ * nên heap nhỏ (-Xmx) cho kết quả sát hơn vì GC chạy thường xuyên hơn.
+ * Chạy: java JsonLoadBenchmark [kích thước MB, vd 1024] [-Xmx của lần khởi động, vd 8g]
+ */
+public class JsonLoadBenchmark {
+
+    private static final int DEFAULT_SIZE_MB = 256;
+    private static final String DEFAULT_HEAP = "1g";
+    private static final int ACCOUNTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            load();
+            return;
+        }
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE_MB;
+        String heap = args.length > 1 ? args[1] : DEFAULT_HEAP;
+
+        File dir = Files.createTempDirectory("json-load-benchmark").toFile();
+        writeConfig(new File(dir, "config.properties"));
+        File file = new File(dir, "transactions.json");
+        long generateStart = System.nanoTime();
+        long generated = generate(file, (long) sizeMb << 20);
+        System.out.printf("Đã sinh %s: %,d MB, %,d giao dịch (%.1f s)%n", file.getName(), file.length() >> 20,
+                generated, (System.nanoTime() - generateStart) / 1e9);
+
+        Map<String, String> result = run(dir, new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-Xmx" + heap, "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(),
+                "JsonLoadBenchmark", "child");
+        long loaded = Long.parseLong(result.get("LOADED"));
+        long peak = Long.parseLong(result.get("PEAK"));
+        long retained = Long.parseLong(result.get("RETAINED"));
+        long overhead = Math.max(0, peak - retained);
+
+        boolean ok = true;
+        System.out.printf("Khởi động: %.1f s, heap đỉnh %,d MB, giữ lại sau khi nạp %,d MB, dùng cho việc đọc %,d MB%n",
+                Long.parseLong(result.get("MILLIS")) / 1000.0, peak >> 20, retained >> 20, overhead >> 20);
+        if (loaded != generated) {
+            System.out.println("Nạp được " + loaded + " giao dịch, mong đợi " + generated + " - LỖI");
+            ok = false;
+        } else {
+            System.out.println("Nạp đủ " + loaded + " giao dịch - OK");
+        }
+        boolean bounded = overhead < file.length();
+        System.out.printf("Bộ nhớ dùng cho việc đọc / kích thước file: %.2f%s%n",
+                (double) overhead / file.length(), bounded ? " - OK" : " - LỖI");
+        ok &= bounded;
+        deleteRecursively(dir);
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // JVM khởi động server trong thư mục có transactions.json
+    private static void load() throws Exception {
+        AtomicLong peak = new AtomicLong();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    long live = 0;
+                    for (MemoryUsage usage : GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                            .getGcInfo().getMemoryUsageAfterGc().values()) {
+                        live += usage.getUsed();
+                    }
+                    peak.accumulateAndGet(live, Math::max);
+                }
+            }, null, null);
+        }
+        long start = System.nanoTime();
+        BankingServiceImpl service = new BankingServiceImpl();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long loaded = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            loaded += service.getTransactionHistory(account(i)).size();
+        }
+        System.gc();
+        long retained = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.println("MILLIS:" + millis);
+        System.out.println("PEAK:" + Math.max(peak.get(), retained));
+        System.out.println("RETAINED:" + retained);
+        System.out.println("LOADED:" + loaded);
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static String account(long i) {
+        return String.valueOf(20000 + i % ACCOUNTS);
+    }
+
+    /**
+     * Sinh transactions.json theo định dạng server cũ ghi ra, đến khi đạt kích thước yêu cầu
+     * @return số giao dịch đã ghi
+     */
+    private static long generate(File file, long targetBytes) throws IOException {
+        long count = 0;
+        long bytes = 0;
+        long timestamp = 1764046864038L;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            out.write("{\n  \"transactions\": [\n");
+            while (bytes < targetBytes) {
+                boolean transfer = count % 3 == 0;
+                String entry = (count > 0 ? ",\n" : "") + "    {\n"
+                        + "      \"transactionId\": \"TXN" + (timestamp + count) + "\",\n"
+                        + "      \"accountNumber\": \"" + account(count) + "\",\n"
+                        + "      \"transactionType\": \"" + (transfer ? "TRANSFER_OUT" : "DEPOSIT") + "\",\n"
+                        + "      \"amount\": " + (count % 500 + 1) + ".0,\n"
+                        + "      \"description\": \"" + (transfer ? "Chuyển tiền" : "Nạp tiền vào tài khoản") + "\",\n"
+                        + "      \"relatedAccount\": \"" + (transfer ? account(count + 1) : ",") + "\",\n"
+                        + "      \"timestamp\": " + (timestamp + count) + "\n"
+                        + "    }";
+                out.write(entry);
+                bytes += entry.getBytes(StandardCharsets.UTF_8).length;
+                count++;
+            }
+            out.write("\n  ]\n}\n");
+        }
+        return count;
+    }
+
+    /**
+     * Chạy một lần và đọc các dòng KEY:value của stdout
+     */
+    private static Map<String, String> run(File dir, String... command) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        Map<String, String> values = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).matches("[A-Z]+")) {
+                    values.put(line.substring(0, colon), line.substring(colon + 1));
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Lần chạy " + String.join(" ", command) + " kết thúc với mã " + process.exitValue());
+        }
+        return values;
+    }
+
+    private static void writeConfig(File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("checkpoint.intervalSeconds=3600\n");
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Bộ đọc JSON dạng kéo (pull) đọc một lượt, dùng cho các file JSON cũ
+ * (accounts.json, users.json, transactions.json).
+ *
+ * Chỉ giữ trong bộ nhớ một bộ đệm nhỏ và giá trị đang đọc, nên bộ nhớ dùng khi khởi động
+ * không phụ thuộc vào kích thước file (khác với cách đọc cả file vào StringBuilder rồi split).
+ *
+ * Phiên bản cũ ghi chuỗi nguyên văn, không escape (nội dung chuyển khoản, họ tên có thể chứa '"' hoặc '\'),
+ * nên chuỗi cũng được đọc nguyên văn: '\' là ký tự thường, và '"' chỉ kết thúc chuỗi khi phần tiếp theo
+ * (bỏ khoảng trắng) hợp lệ sau chuỗi: ':' sau tên thuộc tính; '}', ']', kết thúc file, hoặc ',' rồi
+ * phần tử kế tiếp sau giá trị. Các dấu '"' khác được giữ trong giá trị.
+ *
+ * Cách dùng:
+ *   reader.beginObject();
+ *   while (reader.hasNext()) {
+ *       String name = reader.nextName();
+ *       String value = reader.nextString(); // hoặc reader.skipValue()
+ *   }
+ *   reader.endObject();
+ */
+public class JsonStreamReader implements Closeable {
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, LITERAL, END_DOCUMENT
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder value = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder(); // ký tự đã xem trước, được đọc lại trước bộ đệm
+    private int pendingPos;
+    private int pos;
+    private int limit;
+    private long offset; // vị trí ký tự đầu bộ đệm trong file, dùng cho thông báo lỗi
+
+    private Token peeked;
+    // Ngữ cảnh lồng nhau: true = đang trong object, false = đang trong array
+    private boolean[] stack = new boolean[32];
+    private int depth;
+    private boolean expectName; // trong object: phần tử tiếp theo là tên thuộc tính
+    private boolean first = true; // phần tử đầu tiên của object/array hiện tại
+    private boolean afterName; // vừa đọc tên thuộc tính, tiếp theo là giá trị
+
+    public JsonStreamReader(Reader in) {
+        this.in = in;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = readToken();
+        }
+        return peeked;
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return value.toString();
+    }
+
+    /**
+     * Đọc giá trị chuỗi hoặc số/true/false dưới dạng chuỗi, null với literal null
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.LITERAL) {
+            throw error("Cần chuỗi hoặc số nhưng gặp " + token);
+        }
+        peeked = null;
+        String result = value.toString();
+        return token == Token.LITERAL && result.equals("null") ? null : result;
+    }
+
+    /**
+     * Bỏ qua giá trị tiếp theo (kể cả object/array lồng nhau)
+     */
+    public void skipValue() throws IOException {
+        int nested = 0;
+        do {
+            Token token = peek();
+            peeked = null;
+            if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+                nested++;
+            } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+                nested--;
+            } else if (token == Token.END_DOCUMENT) {
+                throw error("Kết thúc file khi đang bỏ qua giá trị");
+            }
+        } while (nested > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw error("Cần " + expected + " nhưng gặp " + token);
+        }
+        peeked = null;
+    }
+
+    private Token readToken() throws IOException {
+        int c = nextNonWhitespace();
+
+        // Kết thúc object/array
+        if (depth > 0 && (c == '}' || c == ']')) {
+            boolean inObject = stack[depth - 1];
+            if ((c == '}') != inObject) {
+                throw error("Ký tự đóng không khớp: " + (char) c);
+            }
+            depth--;
+            first = false;
+            expectName = depth > 0 && stack[depth - 1];
+            return inObject ? Token.END_OBJECT : Token.END_ARRAY;
+        }
+
+        if (depth > 0 && !first && !afterName) {
+            if (c != ',') {
+                throw error("Cần ',' nhưng gặp " + describe(c));
+            }
+            c = nextNonWhitespace();
+        }
+
+        if (depth > 0 && expectName) {
+            if (c != '"') {
+                throw error("Cần tên thuộc tính nhưng gặp " + describe(c));
+            }
+            readString(true);
+            if (nextNonWhitespace() != ':') {
+                throw error("Cần ':' sau tên thuộc tính");
+            }
+            expectName = false;
+            first = false;
+            afterName = true;
+            return Token.NAME;
+        }
+
+        if (c == -1) {
+            if (depth > 0) {
+                throw error("Kết thúc file khi chưa đóng object/array");
+            }
+            return Token.END_DOCUMENT;
+        }
+
+        // Giá trị: sau giá trị trong object thì phần tử tiếp theo lại là tên thuộc tính
+        boolean inObject = depth > 0 && stack[depth - 1];
+        first = false;
+        afterName = false;
+        switch (c) {
+            case '{':
+                push(true);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(false);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString(false);
+                expectName = inObject;
+                return Token.STRING;
+            default:
+                readLiteral(c);
+                expectName = inObject;
+                return Token.LITERAL;
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) {
+            boolean[] larger = new boolean[depth * 2];
+            System.arraycopy(stack, 0, larger, 0, depth);
+            stack = larger;
+        }
+        stack[depth++] = object;
+        expectName = object;
+        first = true;
+    }
+
+    private void readString(boolean name) throws IOException {
+        value.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw error("Chuỗi chưa được đóng");
+            }
+            if (c == '"' && closesString(name)) {
+                return;
+            }
+            value.append((char) c);
+        }
+    }
+
+    /**
+     * Xem trước phần sau dấu '"' để biết dấu này có kết thúc chuỗi không, rồi trả lại các ký tự đã xem
+     */
+    private boolean closesString(boolean name) throws IOException {
+        StringBuilder seen = new StringBuilder();
+        int c = lookahead(seen);
+        boolean closes;
+        if (name) {
+            closes = c == ':';
+        } else if (c == -1 || c == '}' || c == ']') {
+            closes = true;
+        } else if (c == ',') {
+            int next = lookahead(seen);
+            boolean inObject = depth > 0 && stack[depth - 1];
+            closes = next == '"' || (!inObject && (next == '{' || next == '[' || next == '-'
+                    || Character.isDigit(next) || next == 't' || next == 'f' || next == 'n'));
+        } else {
+            closes = false;
+        }
+        unread(seen);
+        return closes;
+    }
+
+    // Đọc đến ký tự khác khoảng trắng, ghi lại mọi ký tự đã đọc để trả lại
+    private int lookahead(StringBuilder seen) throws IOException {
+        int c;
+        do {
+            c = read();
+            if (c != -1) {
+                seen.append((char) c);
+            }
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private void unread(CharSequence chars) {
+        pending.delete(0, pendingPos);
+        pending.insert(0, chars);
+        pendingPos = 0;
+    }
+
+    private void readLiteral(int c) throws IOException {
+        value.setLength(0);
+        while (c != -1 && c != ',' && c != '}' && c != ']' && c != ':' && !Character.isWhitespace(c)) {
+            value.append((char) c);
+            c = read();
+        }
+        if (c != -1) {
+            unread(String.valueOf((char) c)); // trả lại ký tự kết thúc
+        }
+        if (value.length() == 0) {
+            throw error("Giá trị không hợp lệ");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF');
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pendingPos < pending.length()) {
+            return pending.charAt(pendingPos++);
+        }
+        if (pos == limit) {
+            offset += limit;
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "kết thúc file" : "'" + (char) c + "'";
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " (vị trí " + (offset + pos) + ")");
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kiểm tra sổ cái khi nhiều luồng chuyển khoản đồng thời và đo số chuyển khoản mỗi giây.
+ * Một JVM riêng (thư mục dữ liệu tạm) mở các tài khoản, nạp cùng số tiền, rồi lần lượt cho 1, 2, 4, 8 luồng
+ * chuyển khoản ngẫu nhiên giữa các tài khoản (cả hai chiều, nên khóa theo thứ tự sai sẽ deadlock).
+ * Sau mỗi lượt tổng tiền phải không đổi; sau đó server bị dừng đột ngột và lần khởi động lại (replay journal)
+ * cũng phải ra đúng tổng tiền đó. Số luồng chỉ tăng tốc được khi máy có nhiều lõi (số lõi được in ra).
+ * Chạy: java LedgerStressBenchmark [số giây mỗi lượt] [số tài khoản] [fsync|group|async]
+ */
+public class LedgerStressBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int DEFAULT_SECONDS = 3;
+    private static final int DEFAULT_ACCOUNTS = 1000;
+    private static final int INITIAL_BALANCE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("stress")) {
+            stress(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("verify")) {
+            verify();
+            return;
+        }
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ACCOUNTS;
+        String durability = args.length > 2 ? args[2] : "group";
+
+        File dir = Files.createTempDirectory("ledger-stress-benchmark").toFile();
+        writeConfig(new File(dir, "config.properties"), durability);
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = new File(System.getProperty("java.class.path")).getAbsolutePath();
+        long expected = (long) accounts * INITIAL_BALANCE;
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " lõi, " + accounts + " tài khoản, journal.durability="
+                + durability + ", " + seconds + " giây mỗi lượt");
+        boolean ok = true;
+        for (String line : run(dir, java, "-cp", classpath, "LedgerStressBenchmark", "stress",
+                String.valueOf(seconds), String.valueOf(accounts))) {
+            // ROUND:threads,thành công,bị từ chối,ms,tổng tiền
+            if (!line.startsWith("ROUND:")) {
+                continue;
+            }
+            String[] values = line.substring("ROUND:".length()).split(",");
+            long transfers = Long.parseLong(values[1]);
+            long millis = Long.parseLong(values[3]);
+            long total = Long.parseLong(values[4]);
+            boolean conserved = total == expected;
+            System.out.printf("%2s luồng: %,8d chuyển khoản (%,d bị từ chối), %,10.0f lần/giây, tổng tiền %,d%s%n",
+                    values[0], transfers, Long.parseLong(values[2]), transfers * 1000.0 / Math.max(1, millis),
+                    total, conserved ? " - OK" : " - LỖI (mong đợi " + expected + ")");
+            ok &= conserved && transfers > 0;
+        }
+        for (String line : run(dir, java, "-cp", classpath, "LedgerStressBenchmark", "verify")) {
+            if (line.startsWith("TOTAL:")) {
+                long total = Long.parseLong(line.substring("TOTAL:".length()));
+                boolean conserved = total == expected;
+                System.out.printf("Sau khi khởi động lại: tổng tiền %,d%s%n", total,
+                        conserved ? " - OK" : " - LỖI (mong đợi " + expected + ")");
+                ok &= conserved;
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void stress(int seconds, int count) throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String[] accounts = new String[count];
+        for (int i = 0; i < count; i++) {
+            String result = service.register("ledger-" + i, "pw", "Ledger " + i);
+            if (!result.startsWith("SUCCESS:")) {
+                throw new IllegalStateException("Đăng ký thất bại: " + result);
+            }
+            accounts[i] = result.substring("SUCCESS:".length());
+            service.deposit(accounts[i], INITIAL_BALANCE);
+        }
+        Files.write(new File("ledger-accounts.txt").toPath(), String.join("\n", accounts).getBytes(StandardCharsets.UTF_8));
+
+        for (int threads : THREADS) {
+            AtomicLong transfers = new AtomicLong();
+            AtomicLong rejected = new AtomicLong();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            List<Thread> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            int from = random.nextInt(accounts.length);
+                            int to = random.nextInt(accounts.length - 1);
+                            if (to >= from) {
+                                to++;
+                            }
+                            String result = service.transfer(accounts[from], accounts[to], random.nextInt(1, 51), "stress");
+                            if (result.startsWith("Đã chuyển")) {
+                                transfers.incrementAndGet();
+                            } else {
+                                rejected.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("ROUND:" + threads + "," + transfers.get() + "," + rejected.get() + "," + millis
+                    + "," + total(service, accounts));
+        }
+        System.out.flush();
+        Runtime.getRuntime().halt(0); // như server bị dừng đột ngột
+    }
+
+    private static void verify() throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String[] accounts = new String(Files.readAllBytes(new File("ledger-accounts.txt").toPath()),
+                StandardCharsets.UTF_8).split("\n");
+        System.out.println("TOTAL:" + total(service, accounts));
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static long total(BankingServiceImpl service, String[] accounts) throws Exception {
+        long total = 0;
+        for (String account : accounts) {
+            String result = service.queryAccount(account);
+            total += Math.round(Double.parseDouble(result.substring(result.indexOf(':') + 1).trim()));
+        }
+        return total;
+    }
+
+    /**
+     * Chạy một lần và trả về các dòng stdout
+     */
+    private static List<String> run(File dir, String... command) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Lần chạy " + String.join(" ", command) + " kết thúc với mã " + process.exitValue());
+        }
+        return lines;
+    }
+
+    private static void writeConfig(File file, String durability) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("journal.durability=" + durability + "\n");
+            out.write("checkpoint.intervalSeconds=1\n");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Kiểm tra chuyển dữ liệu từ các file JSON cũ khi khởi động lần đầu.
+ * Phiên bản cũ ghi nội dung chuyển khoản và họ tên nguyên văn, không escape, nên file thật có thể chứa
+ * '"' và '\' trong chuỗi: các file mẫu như vậy phải được đọc đủ, đúng nội dung, và người dùng vẫn đăng nhập được.
+ * File hỏng (bị cắt giữa chừng) phải làm server dừng khởi động mà không ghi checkpoint hay journal,
+ * để dữ liệu cũ không bị thay bằng phần đọc được.
+ * Mỗi lần khởi động là một JVM riêng trong thư mục dữ liệu tạm.
+ * Chạy: java LegacyJsonCheck
+ */
+public class LegacyJsonCheck {
+
+    private static final String[] DESCRIPTIONS = {"tra tien \"com\" trua", "an \"pho\"", "C:\\temp\\", "\"", "a\", b"};
+    private static final String FULL_NAME = "Nguyen \"Ti\" Van";
+    private static final String PASSWORD = "p\"w\\1";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            runChild();
+            return;
+        }
+        boolean ok = checkUnescaped();
+        ok &= checkTruncated();
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void runChild() throws Exception {
+        BankingServiceImpl service;
+        try {
+            service = new BankingServiceImpl();
+        } catch (RemoteException e) {
+            // như BankingServer: không khởi động được thì thoát
+            System.out.println("ERROR:" + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("LOGIN:" + service.login("ti", PASSWORD));
+        System.out.println("BALANCE:" + service.queryAccount("10000"));
+        for (Transaction t : service.getTransactionHistory("10000")) {
+            System.out.println("DESC:" + t.getDescription());
+        }
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static boolean checkUnescaped() throws Exception {
+        File dir = Files.createTempDirectory("legacy-json-check").toFile();
+        writeConfig(dir);
+        writeAccounts(dir);
+        writeUsers(dir);
+        writeTransactions(dir, false);
+        List<String> lines = new ArrayList<>();
+        int exit = run(dir, lines);
+
+        List<String> descriptions = new ArrayList<>();
+        String login = null;
+        String balance = null;
+        for (String line : lines) {
+            if (line.startsWith("DESC:")) {
+                descriptions.add(line.substring("DESC:".length()));
+            } else if (line.startsWith("LOGIN:")) {
+                login = line.substring("LOGIN:".length());
+            } else if (line.startsWith("BALANCE:")) {
+                balance = line.substring("BALANCE:".length());
+            }
+        }
+        // Lịch sử trả về mới nhất trước
+        List<String> expected = new ArrayList<>(Arrays.asList(DESCRIPTIONS));
+        Collections.reverse(expected);
+        boolean ok = exit == 0 && expected.equals(descriptions)
+                && ("SUCCESS:10000:" + FULL_NAME).equals(login) && balance != null && balance.endsWith("800.0");
+        if (!ok) {
+            System.out.println("Mã thoát " + exit + ", đăng nhập " + login + ", số dư " + balance
+                    + ", nội dung " + descriptions + " (mong đợi " + expected + ")");
+        }
+        System.out.println("File JSON cũ có '\"' và '\\' không escape: " + descriptions.size() + "/" + DESCRIPTIONS.length
+                + " giao dịch" + (ok ? " - OK" : " - LỖI"));
+        return ok;
+    }
+
+    private static boolean checkTruncated() throws Exception {
+        File dir = Files.createTempDirectory("legacy-json-check").toFile();
+        writeConfig(dir);
+        writeAccounts(dir);
+        writeUsers(dir);
+        writeTransactions(dir, true);
+        int exit = run(dir, new ArrayList<>());
+        boolean wroteState = new File(dir, "checkpoint.dat").exists() || new File(dir, "journal").exists();
+        boolean ok = exit != 0 && !wroteState;
+        System.out.println("File transactions.json bị cắt: mã thoát " + exit
+                + (wroteState ? ", đã ghi checkpoint/journal" : ", không ghi checkpoint/journal") + (ok ? " - OK" : " - LỖI"));
+
+        // Sửa file rồi khởi động lại: dữ liệu cũ được chuyển đủ
+        writeTransactions(dir, false);
+        List<String> lines = new ArrayList<>();
+        exit = run(dir, lines);
+        long loaded = lines.stream().filter(line -> line.startsWith("DESC:")).count();
+        boolean recovered = exit == 0 && loaded == DESCRIPTIONS.length && lines.contains("BALANCE:Số dư hiện tại: 800.0");
+        System.out.println("Khởi động lại sau khi sửa file: mã thoát " + exit + ", " + loaded + "/" + DESCRIPTIONS.length
+                + " giao dịch" + (recovered ? " - OK" : " - LỖI"));
+        return ok && recovered;
+    }
+
+    /**
+     * Chạy server một lần, trả về mã thoát; các dòng stdout được thêm vào lines
+     */
+    private static int run(File dir, List<String> lines) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-Dfile.encoding=UTF-8", "-Dstdout.encoding=UTF-8",
+                "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(), "LegacyJsonCheck", "child");
+        builder.directory(dir);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return process.waitFor();
+    }
+
+    // Các file dưới đây theo đúng cách phiên bản cũ ghi (saveAccounts/saveUsers/saveTransactions)
+    private static void writeAccounts(File dir) throws IOException {
+        write(new File(dir, "accounts.json"), "{\n"
+                + "  \"10000\": {\n    \"accountNumber\": \"10000\",\n    \"balance\": 800.0\n  },\n"
+                + "  \"10001\": {\n    \"accountNumber\": \"10001\",\n    \"balance\": 201.0\n  }\n}");
+    }
+
+    private static void writeUsers(File dir) throws IOException {
+        write(new File(dir, "users.json"), "{\n"
+                + "  \"ti\": {\n"
+                + "    \"username\": \"ti\",\n"
+                + "    \"password\": \"" + PASSWORD + "\",\n"
+                + "    \"accountNumber\": \"10000\",\n"
+                + "    \"fullName\": \"" + FULL_NAME + "\"\n"
+                + "  }\n}");
+    }
+
+    private static void writeTransactions(File dir, boolean truncated) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"transactions\": [\n");
+        for (int i = 0; i < DESCRIPTIONS.length; i++) {
+            json.append("    {\n")
+                    .append("      \"transactionId\": \"TXN176404686403").append(i).append("\",\n")
+                    .append("      \"accountNumber\": \"10000\",\n")
+                    .append("      \"transactionType\": \"TRANSFER_OUT\",\n")
+                    .append("      \"amount\": 1.0,\n")
+                    .append("      \"description\": \"").append(DESCRIPTIONS[i]).append("\",\n")
+                    .append("      \"relatedAccount\": \"10001\",\n")
+                    .append("      \"timestamp\": ").append(1764046864030L + i).append("\n")
+                    .append("    }");
+            if (i < DESCRIPTIONS.length - 1) {
+                json.append(",");
+            }
+            json.append("\n");
+        }
+        json.append("  ]\n}");
+        write(new File(dir, "transactions.json"), truncated ? json.substring(0, json.length() / 2) : json.toString());
+    }
+
+    private static void writeConfig(File dir) throws IOException {
+        write(new File(dir, "config.properties"), "server.host=127.0.0.1\ncheckpoint.intervalSeconds=3600\n");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(content);
+        }
+    }
+}
@@ -4,9 +4,11 @@ import java.awt.*;
 import java.awt.geom.RoundRectangle2D;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
-import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.rmi.server.RMISocketFactory;
 
 public class LoginFrame extends JFrame {
     private BankingService bankingService;
@@ -22,6 +24,14 @@ public class LoginFrame extends JFrame {
     private static String SERVER_HOST = "localhost";
     private static int SERVER_PORT = 1099;
     private static String SERVICE_NAME = "BankingService";
+    private static String ENDPOINTS = ""; // danh sách host:port, cách nhau bởi dấu phẩy (rỗng: dùng server.host)
+    private static int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static long FAILOVER_MILLIS = 10000;
+    private static long BACKOFF_BASE_MILLIS = 50;
+    private static long BACKOFF_MAX_MILLIS = 2000;
+    private static String NOTIFICATION_MODE = "callback"; // callback hoặc poll
+    private static String REPLICAS = ""; // URL các bản sao chỉ đọc, cách nhau bởi dấu phẩy
+    private static long READ_YOUR_WRITES_MILLIS = 5000;
     
     // Màu sắc chủ đạo - Modern Banking Theme
     private static final Color PRIMARY_COLOR = new Color(37, 99, 235);      // Blue
@@ -47,6 +57,14 @@ public class LoginFrame extends JFrame {
             SERVER_HOST = props.getProperty("server.host", "localhost");
             SERVER_PORT = Integer.parseInt(props.getProperty("server.port", "1099"));
             SERVICE_NAME = props.getProperty("service.name", "BankingService");
+            ENDPOINTS = props.getProperty("server.endpoints", "").trim();
+            CONNECT_TIMEOUT_MILLIS = Integer.parseInt(props.getProperty("client.connectTimeoutMillis", "1000"));
+            FAILOVER_MILLIS = Long.parseLong(props.getProperty("client.failoverMillis", "10000"));
+            BACKOFF_BASE_MILLIS = Long.parseLong(props.getProperty("client.backoffBaseMillis", "50"));
+            BACKOFF_MAX_MILLIS = Long.parseLong(props.getProperty("client.backoffMaxMillis", "2000"));
+            NOTIFICATION_MODE = props.getProperty("client.notificationMode", "callback").trim();
+            REPLICAS = props.getProperty("client.replicas", "").trim();
+            READ_YOUR_WRITES_MILLIS = Long.parseLong(props.getProperty("client.readYourWritesMillis", "5000"));
             
             System.out.println("Đã load cấu hình từ config.properties");
             System.out.println("Server: " + SERVER_HOST + ":" + SERVER_PORT);
@@ -55,10 +73,47 @@ public class LoginFrame extends JFrame {
         }
     }
     
+    /**
+     * Client nhận thông báo bằng pollNotifications thay vì export callback
+     */
+    public static boolean isPollingNotifications() {
+        return "poll".equalsIgnoreCase(NOTIFICATION_MODE);
+    }
+    
     public static String getServerURL() {
         return "rmi://" + SERVER_HOST + ":" + SERVER_PORT + "/" + SERVICE_NAME;
     }
     
+    /**
+     * URL của các server client có thể kết nối (server.endpoints, hoặc server.host nếu không cấu hình)
+     */
+    public static List<String> getServerURLs() {
+        List<String> urls = new ArrayList<>();
+        for (String endpoint : ENDPOINTS.split(",")) {
+            endpoint = endpoint.trim();
+            if (!endpoint.isEmpty()) {
+                urls.add("rmi://" + (endpoint.contains(":") ? endpoint : endpoint + ":" + SERVER_PORT) + "/" + SERVICE_NAME);
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(getServerURL());
+        }
+        return urls;
+    }
+    
+    /**
+     * URL các bản sao chỉ đọc (client.replicas), rỗng nếu chỉ dùng server chính
+     */
+    public static List<String> getReplicaURLs() {
+        List<String> urls = new ArrayList<>();
+        for (String url : REPLICAS.split(",")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
+    
     public LoginFrame() {
         initializeGUI();
         connectToServer();
@@ -496,58 +551,60 @@ public class LoginFrame extends JFrame {
     
     private void connectToServer() {
         new Thread(() -> {
-            final int[] retries = {0};
-            String serverURL = getServerURL();
-            System.out.println("Đang kết nối đến: " + serverURL);
+            List<String> serverURLs = getServerURLs();
+            System.out.println("Đang kết nối đến: " + serverURLs);
             
-            while (retries[0] < 5) {
-                try {
-                    bankingService = (BankingService) Naming.lookup(serverURL);
-                    System.out.println("Kết nối thành công đến server!");
-                    SwingUtilities.invokeLater(() -> {
-                        // Connection successful
-                    });
-                    return;
-                } catch (Exception e) {
-                    retries[0]++;
-                    String errorMsg = e.getMessage();
-                    System.out.println("Thử kết nối lần " + retries[0] + "/5... Lỗi: " + errorMsg);
-                    
-                    if (retries[0] >= 5) {
-                        SwingUtilities.invokeLater(() -> {
-                            StringBuilder message = new StringBuilder();
-                            message.append("❌ KHÔNG THỂ KẾT NỐI ĐẾN SERVER\n\n");
-                            message.append("Server URL: ").append(serverURL).append("\n");
-                            message.append("Lỗi: ").append(errorMsg).append("\n\n");
-                            message.append("📋 HƯỚNG DẪN KHẮC PHỤC:\n\n");
-                            message.append("1. Trên máy SERVER (IP: ").append(SERVER_HOST).append("):\n");
-                            message.append("   ✓ Chạy: java BankingServer\n");
-                            message.append("   ✓ Kiểm tra IP hiển thị trên server có đúng không\n");
-                            message.append("   ✓ Đảm bảo port ").append(SERVER_PORT).append(" không bị chặn\n\n");
-                            message.append("2. Trên máy CLIENT (máy này):\n");
-                            message.append("   ✓ Kiểm tra file config.properties:\n");
-                            message.append("     server.host=").append(SERVER_HOST).append("\n");
-                            message.append("     server.port=").append(SERVER_PORT).append("\n\n");
-                            message.append("3. Kiểm tra Firewall:\n");
-                            message.append("   ✓ Windows Firewall: Cho phép port ").append(SERVER_PORT).append("\n");
-                            message.append("   ✓ Antivirus: Tắt tạm thời để test\n\n");
-                            message.append("4. Kiểm tra mạng:\n");
-                            message.append("   ✓ Ping đến ").append(SERVER_HOST).append(": ping ").append(SERVER_HOST).append("\n");
-                            message.append("   ✓ Cả 2 máy cùng mạng LAN\n");
-                            
-                            JOptionPane.showMessageDialog(LoginFrame.this,
-                                message.toString(),
-                                "Lỗi kết nối - " + retries[0] + " lần thử",
-                                JOptionPane.ERROR_MESSAGE);
-                        });
-                    } else {
-                        try {
-                            Thread.sleep(2000);
-                        } catch (InterruptedException ie) {
-                            break;
-                        }
-                    }
+            try {
+                // Phát hiện nhanh server không liên lạc được thay vì chờ timeout TCP của hệ điều hành
+                if (RMISocketFactory.getSocketFactory() == null) {
+                    RMISocketFactory.setSocketFactory(new BankingServer.TimeoutSocketFactory(CONNECT_TIMEOUT_MILLIS));
+                }
+            } catch (IOException e) {
+                System.err.println("Không đặt được thời gian chờ kết nối: " + e.getMessage());
+            }
+            
+            EndpointBankingService endpoints = new EndpointBankingService(serverURLs,
+                    FAILOVER_MILLIS, BACKOFF_BASE_MILLIS, BACKOFF_MAX_MILLIS);
+            try {
+                String serverURL = endpoints.connect();
+                System.out.println("Kết nối thành công đến server: " + serverURL);
+                bankingService = endpoints;
+                List<String> replicaURLs = getReplicaURLs();
+                if (!replicaURLs.isEmpty()) {
+                    // Đọc từ các bản sao, ghi vào server chính
+                    bankingService = new ReplicatedBankingService(bankingService, replicaURLs, READ_YOUR_WRITES_MILLIS);
+                    System.out.println("Đọc dữ liệu từ " + replicaURLs.size() + " bản sao");
                 }
+            } catch (RemoteException e) {
+                String errorMsg = e.getMessage();
+                System.out.println("Không kết nối được server... Lỗi: " + errorMsg);
+                SwingUtilities.invokeLater(() -> {
+                    StringBuilder message = new StringBuilder();
+                    message.append("❌ KHÔNG THỂ KẾT NỐI ĐẾN SERVER\n\n");
+                    message.append("Server URL: ").append(String.join(", ", serverURLs)).append("\n");
+                    message.append("Lỗi: ").append(errorMsg).append("\n\n");
+                    message.append("📋 HƯỚNG DẪN KHẮC PHỤC:\n\n");
+                    message.append("1. Trên máy SERVER (IP: ").append(SERVER_HOST).append("):\n");
+                    message.append("   ✓ Chạy: java BankingServer\n");
+                    message.append("   ✓ Kiểm tra IP hiển thị trên server có đúng không\n");
+                    message.append("   ✓ Đảm bảo port ").append(SERVER_PORT).append(" không bị chặn\n\n");
+                    message.append("2. Trên máy CLIENT (máy này):\n");
+                    message.append("   ✓ Kiểm tra file config.properties:\n");
+                    message.append("     server.host=").append(SERVER_HOST).append("\n");
+                    message.append("     server.port=").append(SERVER_PORT).append("\n");
+                    message.append("     server.endpoints=").append(ENDPOINTS).append("\n\n");
+                    message.append("3. Kiểm tra Firewall:\n");
+                    message.append("   ✓ Windows Firewall: Cho phép port ").append(SERVER_PORT).append("\n");
+                    message.append("   ✓ Antivirus: Tắt tạm thời để test\n\n");
+                    message.append("4. Kiểm tra mạng:\n");
+                    message.append("   ✓ Ping đến ").append(SERVER_HOST).append(": ping ").append(SERVER_HOST).append("\n");
+                    message.append("   ✓ Cả 2 máy cùng mạng LAN\n");
+                    
+                    JOptionPane.showMessageDialog(LoginFrame.this,
+                        message.toString(),
+                        "Lỗi kết nối - " + serverURLs.size() + " server",
+                        JOptionPane.ERROR_MESSAGE);
+                });
             }
         }).start();
     }
@@ -0,0 +1,44 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Quy đổi tiền giữa số thực (VNĐ, dùng ở giao diện RMI và file JSON cũ) và số nguyên
+ * đơn vị nhỏ (long) dùng để lưu và tính toán số dư.
+ *
+ * Mọi phép cộng trừ trên số dư đều là phép tính số nguyên nên không bị sai số làm tròn
+ * tích lũy như double. 1 VNĐ = SCALE đơn vị nhỏ, đủ giữ 2 chữ số lẻ như giao diện đang hiển thị.
+ */
+public final class Money {
+    public static final int SCALE = 100;
+    private static final int DECIMALS = 2;
+
+    private Money() {
+    }
+
+    /**
+     * Số tiền VNĐ sang đơn vị nhỏ (làm tròn đến đơn vị nhỏ gần nhất)
+     */
+    public static long fromDouble(double amount) {
+        return Math.round(amount * SCALE);
+    }
+
+    /**
+     * Đơn vị nhỏ sang VNĐ, dùng khi trả kết quả cho client
+     */
+    public static double toDouble(long minorUnits) {
+        return (double) minorUnits / SCALE;
+    }
+
+    /**
+     * Đọc chính xác số tiền dạng chuỗi thập phân (trong file JSON cũ)
+     * @throws NumberFormatException nếu chuỗi không phải số hoặc vượt quá phạm vi long
+     */
+    public static long parse(String amount) {
+        try {
+            return new BigDecimal(amount.trim()).movePointRight(DECIMALS)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Số tiền vượt quá phạm vi: " + amount);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hộp thư thông báo chuyển khoản của các tài khoản chưa nhận được thông báo
+ * (không có client đăng ký, hoặc client lỗi khi gửi).
+ *
+ * Thông báo chờ gửi chính là các giao dịch TRANSFER_IN trong lịch sử (đã bền vững nhờ journal)
+ * có sequence lớn hơn mốc "đã thông báo" của tài khoản. Mốc này chỉ tăng khi có client nhận
+ * thành công và được ghi vào journal/checkpoint, nên hộp thư còn nguyên sau khi server khởi động lại
+ * mà không phải lưu lại nội dung thông báo.
+ *
+ * Khi client đăng ký callback, các thông báo còn chờ được gửi một lượt (tối đa maxSize thông báo
+ * mới nhất, bỏ qua thông báo cũ hơn thời hạn expiryMillis). Thông báo được gửi ít nhất một lần:
+ * client có thể nhận trùng một thông báo nếu giao dịch xảy ra đúng lúc đăng ký.
+ */
+public class NotificationOutbox {
+    /**
+     * Bản ghi journal: mọi thông báo có sequence <= giá trị này của tài khoản đã được gửi
+     */
+    public static class Cursor {
+        final String accountNumber;
+        final long sequence;
+
+        public Cursor(String accountNumber, long sequence) {
+            this.accountNumber = accountNumber;
+            this.sequence = sequence;
+        }
+
+        public String getAccountNumber() {
+            return accountNumber;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+    private final Map<String, Long> notified; // accountNumber -> sequence đã thông báo
+    private final int maxSize;
+    private final long expiryMillis;
+
+    public NotificationOutbox(Map<String, Long> notified, int maxSize, long expiryMillis) {
+        this.notified = new ConcurrentHashMap<>(notified);
+        this.maxSize = maxSize;
+        this.expiryMillis = expiryMillis;
+    }
+
+    /**
+     * Ghi nhận thông báo đã gửi thành công
+     * @return bản ghi cần lưu vào journal, null nếu mốc không thay đổi
+     */
+    public Cursor markDelivered(String accountNumber, long sequence) {
+        long previous = notified.getOrDefault(accountNumber, 0L);
+        if (sequence <= previous) {
+            return null;
+        }
+        long current = notified.merge(accountNumber, sequence, Math::max);
+        return current == sequence ? new Cursor(accountNumber, sequence) : null;
+    }
+
+    public long notifiedSequence(String accountNumber) {
+        return notified.getOrDefault(accountNumber, 0L);
+    }
+
+    /**
+     * Các thông báo chuyển khoản đến chưa được gửi, cũ nhất trước.
+     * Lịch sử không lưu số dư sau từng giao dịch nên mọi thông báo mang số dư hiện tại.
+     */
+    public List<TransferNotification> pending(String accountNumber, TransactionIndex transactions, double currentBalance) {
+        return since(accountNumber, notifiedSequence(accountNumber), transactions, currentBalance).getNotifications();
+    }
+
+    /**
+     * Các thông báo chuyển khoản đến có sequence lớn hơn sinceSequence (cũ nhất trước, tối đa maxSize
+     * thông báo mới nhất chưa hết hạn), kèm sequence mới nhất của tài khoản làm mốc cho lần sau
+     */
+    public NotificationPage since(String accountNumber, long sinceSequence, TransactionIndex transactions,
+                                  double currentBalance) {
+        List<TransferNotification> result = new ArrayList<>();
+        long[] latest = {-1};
+        long cutoff = System.currentTimeMillis() - expiryMillis;
+        transactions.scanSince(accountNumber, sinceSequence, (sequence, t) -> {
+            if (latest[0] < 0) {
+                latest[0] = sequence;
+            }
+            if (t.getTimestamp().getTime() < cutoff) {
+                return false;
+            }
+            if ("TRANSFER_IN".equals(t.getTransactionType())) {
+                result.add(new TransferNotification(sequence, t.getRelatedAccount(), accountNumber,
+                        Money.toDouble(t.getAmount()), t.getDescription(), currentBalance, t.getTimestamp()));
+            }
+            return result.size() < maxSize;
+        });
+        Collections.reverse(result);
+        if (latest[0] < 0) {
+            // Không có giao dịch mới; mốc của client lớn hơn lịch sử thì trả về mốc thật
+            latest[0] = Math.max(0, Math.min(sinceSequence, transactions.latestSequence(accountNumber)));
+        }
+        return new NotificationPage(result, latest[0]);
+    }
+
+    /**
+     * Mốc ban đầu khi bắt đầu theo dõi thông báo: coi mọi giao dịch hiện có là đã thông báo,
+     * tránh gửi lại toàn bộ lịch sử cũ cho client
+     */
+    public static List<Object> baseline(TransactionIndex transactions, Map<String, Long> notified) {
+        List<Object> cursors = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : transactions.latestSequences().entrySet()) {
+            if (entry.getValue() > notified.getOrDefault(entry.getKey(), 0L)) {
+                notified.put(entry.getKey(), entry.getValue());
+                cursors.add(new Cursor(entry.getKey(), entry.getValue()));
+            }
+        }
+        return cursors;
+    }
+}
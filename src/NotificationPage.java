@@ -0,0 +1,39 @@
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Kết quả của pollNotifications: các thông báo chuyển khoản đến (cũ nhất trước).
+ * sequence là mốc client gửi lại ở lần poll tiếp theo.
+ */
+public class NotificationPage implements Serializable {
+    private List<TransferNotification> notifications;
+    private long sequence;
+    
+    public NotificationPage() {
+    }
+    
+    public NotificationPage(List<TransferNotification> notifications, long sequence) {
+        this.notifications = notifications;
+        this.sequence = sequence;
+    }
+    
+    public List<TransferNotification> getNotifications() {
+        return notifications;
+    }
+    
+    public void setNotifications(List<TransferNotification> notifications) {
+        this.notifications = notifications;
+    }
+    
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    
+    public boolean isEmpty() {
+        return notifications == null || notifications.isEmpty();
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Giữ các yêu cầu pollNotifications cho đến khi tài khoản có thông báo mới hoặc hết thời gian chờ.
+ *
+ * Yêu cầu đang chờ chỉ nằm trên monitor của tài khoản (không quét định kỳ, không tốn CPU) và được
+ * đánh thức khi có chuyển khoản đến. Các tài khoản được chia vào một số monitor cố định nên
+ * bộ nhớ không tăng theo số tài khoản. Số yêu cầu chờ đồng thời bị giới hạn: khi vượt giới hạn,
+ * poll trả về ngay để tầng RMI không giữ quá nhiều luồng kết nối.
+ */
+public class NotificationWaiters {
+    private static final int STRIPES = 1024;
+
+    private final Object[] monitors = new Object[STRIPES];
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int maxWaiters;
+    private final long maxWaitMillis;
+    private volatile boolean closed;
+
+    /**
+     * @param maxWaiters số yêu cầu chờ đồng thời tối đa
+     * @param maxWaitMillis thời gian chờ tối đa của một yêu cầu (giá trị client gửi lớn hơn bị giảm xuống)
+     */
+    public NotificationWaiters(int maxWaiters, long maxWaitMillis) {
+        for (int i = 0; i < STRIPES; i++) {
+            monitors[i] = new Object();
+        }
+        this.maxWaiters = maxWaiters;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Chờ đến khi check trả về trang có thông báo, hoặc hết waitMillis
+     * @return kết quả lần kiểm tra cuối cùng (có thể rỗng)
+     */
+    public NotificationPage await(String accountNumber, long waitMillis, Supplier<NotificationPage> check)
+            throws InterruptedException {
+        NotificationPage page = check.get();
+        if (!page.isEmpty() || waitMillis <= 0 || closed) {
+            return page;
+        }
+        if (waiting.incrementAndGet() > maxWaiters) {
+            waiting.decrementAndGet();
+            return page;
+        }
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(waitMillis, maxWaitMillis));
+            Object monitor = monitorFor(accountNumber);
+            synchronized (monitor) {
+                while (true) {
+                    // Kiểm tra lại khi giữ monitor: không bỏ lỡ signal giữa lúc kiểm tra và lúc chờ
+                    page = check.get();
+                    long remaining = deadline - System.nanoTime();
+                    if (!page.isEmpty() || remaining <= 0 || closed) {
+                        return page;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Đánh thức các yêu cầu đang chờ thông báo của tài khoản
+     */
+    public void signal(String accountNumber) {
+        Object monitor = monitorFor(accountNumber);
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Trả về ngay mọi yêu cầu đang chờ (khi tắt server)
+     */
+    public void close() {
+        closed = true;
+        for (Object monitor : monitors) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    private Object monitorFor(String accountNumber) {
+        return monitors[(accountNumber.hashCode() & 0x7fffffff) % STRIPES];
+    }
+}
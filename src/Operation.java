@@ -0,0 +1,97 @@
+import java.io.Serializable;
+
+/**
+ * Một thao tác trong lô gửi qua BankingService.submitBatch hoặc submitAsync.
+ * Tạo bằng các hàm deposit/withdraw/transfer/query.
+ */
+public class Operation implements Serializable {
+    public enum Type {
+        DEPOSIT, WITHDRAW, TRANSFER, QUERY
+    }
+    
+    private final Type type;
+    private final String accountNumber; // tài khoản gốc với TRANSFER
+    private final String toAccount; // chỉ dùng với TRANSFER
+    private final double amount;
+    private final String content;
+    private final String idempotencyKey; // null nếu không gửi kèm key
+    
+    private Operation(Type type, String accountNumber, String toAccount, double amount, String content, String idempotencyKey) {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.content = content;
+        this.idempotencyKey = idempotencyKey;
+    }
+    
+    public static Operation deposit(String accountNumber, double amount) {
+        return new Operation(Type.DEPOSIT, accountNumber, null, amount, null, null);
+    }
+    
+    public static Operation withdraw(String accountNumber, double amount) {
+        return new Operation(Type.WITHDRAW, accountNumber, null, amount, null, null);
+    }
+    
+    public static Operation transfer(String fromAccount, String toAccount, double amount, String content) {
+        return new Operation(Type.TRANSFER, fromAccount, toAccount, amount, content, null);
+    }
+    
+    public static Operation query(String accountNumber) {
+        return new Operation(Type.QUERY, accountNumber, null, 0, null, null);
+    }
+    
+    /**
+     * Bản sao của thao tác kèm idempotency key do client tạo (ví dụ UUID, duy nhất trong tài khoản).
+     * Server thực hiện mỗi key một lần; gọi lại với cùng key (sau lỗi mạng, quá thời gian chờ)
+     * nhận lại kết quả của lần đầu.
+     */
+    public Operation withIdempotencyKey(String idempotencyKey) {
+        return new Operation(type, accountNumber, toAccount, amount, content, idempotencyKey);
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+    
+    public String getToAccount() {
+        return toAccount;
+    }
+    
+    public double getAmount() {
+        return amount;
+    }
+    
+    public String getContent() {
+        return content;
+    }
+    
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+    
+    /**
+     * Thao tác không thay đổi dữ liệu
+     */
+    public boolean isReadOnly() {
+        return type == Type.QUERY;
+    }
+    
+    /**
+     * Gọi lại không làm thao tác bị thực hiện hai lần
+     */
+    public boolean isRetrySafe() {
+        return isReadOnly() || idempotencyKey != null;
+    }
+    
+    /**
+     * Mô tả nội dung thao tác, để nhận ra một idempotency key bị dùng lại cho thao tác khác
+     */
+    String describe() {
+        return type + "|" + accountNumber + "|" + toAccount + "|" + Money.fromDouble(amount) + "|" + content;
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.Serializable;
+
+/**
+ * Trạng thái của một thao tác bất đồng bộ (xem BankingService.submitAsync).
+ * UNKNOWN: server không có thao tác này (mã sai, kết quả đã hết hạn lưu, hoặc server đã khởi động lại).
+ */
+public class OperationStatus implements Serializable {
+    public enum State {
+        PENDING,
+        COMPLETED,
+        UNKNOWN
+    }
+    
+    private String operationId;
+    private State state;
+    private String result; // kết quả như khi gọi đồng bộ, chỉ có khi COMPLETED
+    
+    public OperationStatus() {
+    }
+    
+    public OperationStatus(String operationId, State state, String result) {
+        this.operationId = operationId;
+        this.state = state;
+        this.result = result;
+    }
+    
+    public static OperationStatus unknown(String operationId) {
+        return new OperationStatus(operationId, State.UNKNOWN, null);
+    }
+    
+    public String getOperationId() {
+        return operationId;
+    }
+    
+    public void setOperationId(String operationId) {
+        this.operationId = operationId;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public void setState(State state) {
+        this.state = state;
+    }
+    
+    public String getResult() {
+        return result;
+    }
+    
+    public void setResult(String result) {
+        this.result = result;
+    }
+    
+    public boolean isCompleted() {
+        return state == State.COMPLETED;
+    }
+}
@@ -0,0 +1,215 @@
+import java.rmi.ConnectException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Phía client: thao tác ghi và đăng ký thông báo đi tới server chính, thao tác đọc được chia
+ * xoay vòng cho các bản sao chỉ đọc (BankingReplica).
+ *
+ * - Bản sao lỗi hoặc chậm quá giới hạn (RemoteException) thì đọc lại từ server chính.
+ * - Sau khi client ghi vào một tài khoản, các lần đọc tài khoản đó trong readYourWritesMillis
+ *   đi tới server chính, nên client luôn thấy ngay thay đổi của chính mình.
+ * - Tra tài khoản không thành công trên bản sao (tài khoản vừa mở, bản sao chưa nhận kịp)
+ *   được thử lại trên server chính.
+ * - Đăng nhập luôn đi tới server chính: bản sao không có mật khẩu người dùng.
+ */
+public class ReplicatedBankingService implements BankingService {
+    /**
+     * Một thao tác đọc
+     */
+    private interface Read<T> {
+        T call(BankingService service) throws RemoteException;
+    }
+    
+    private final BankingService primary;
+    private final List<String> replicaUrls;
+    private final BankingService[] replicas; // null: chưa tra hoặc vừa lỗi
+    private final long readYourWritesMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>(); // accountNumber -> thời điểm ghi
+    
+    public ReplicatedBankingService(BankingService primary, List<String> replicaUrls, long readYourWritesMillis) {
+        this.primary = primary;
+        this.replicaUrls = new ArrayList<>(replicaUrls);
+        this.replicas = new BankingService[replicaUrls.size()];
+        this.readYourWritesMillis = readYourWritesMillis;
+    }
+    
+    /**
+     * Đọc từ một bản sao, hoặc từ server chính nếu tài khoản vừa được ghi hay bản sao lỗi
+     * @param accountNumber tài khoản được đọc, null nếu không gắn với tài khoản
+     */
+    private <T> T read(String accountNumber, Read<T> read) throws RemoteException {
+        if (replicas.length == 0 || (accountNumber != null && recentlyWritten(accountNumber))) {
+            return read.call(primary);
+        }
+        int index = Math.floorMod(next.getAndIncrement(), replicas.length);
+        BankingService replica = replica(index);
+        if (replica != null) {
+            try {
+                return read.call(replica);
+            } catch (ConnectException | NoSuchObjectException e) {
+                // Bản sao đã dừng hoặc khởi động lại: tra lại ở lần sau
+                replicas[index] = null;
+            } catch (RemoteException e) {
+                // Bản sao chậm quá giới hạn hoặc lỗi khác
+            }
+        }
+        return read.call(primary);
+    }
+    
+    private BankingService replica(int index) {
+        BankingService replica = replicas[index];
+        if (replica == null) {
+            try {
+                replica = (BankingService) Naming.lookup(replicaUrls.get(index));
+                replicas[index] = replica;
+            } catch (Exception e) {
+                System.err.println("Không kết nối được bản sao " + replicaUrls.get(index) + ": " + e.getMessage());
+            }
+        }
+        return replica;
+    }
+    
+    private boolean recentlyWritten(String accountNumber) {
+        Long writtenAt = recentWrites.get(accountNumber);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - writtenAt > readYourWritesMillis) {
+            recentWrites.remove(accountNumber, writtenAt);
+            return false;
+        }
+        return true;
+    }
+    
+    private void written(String... accountNumbers) {
+        long now = System.currentTimeMillis();
+        for (String accountNumber : accountNumbers) {
+            if (accountNumber != null) {
+                recentWrites.put(accountNumber, now);
+            }
+        }
+    }
+    
+    @Override
+    public String register(String username, String password, String fullName) throws RemoteException {
+        String result = primary.register(username, password, fullName);
+        if (result != null && result.startsWith("SUCCESS:")) {
+            written(result.substring("SUCCESS:".length()));
+        }
+        return result;
+    }
+    
+    @Override
+    public String login(String username, String password) throws RemoteException {
+        return primary.login(username, password);
+    }
+    
+    @Override
+    public String queryAccount(String accountNumber) throws RemoteException {
+        String result = read(accountNumber, service -> service.queryAccount(accountNumber));
+        if (result == null || result.startsWith("Không tìm thấy tài khoản")) {
+            return primary.queryAccount(accountNumber);
+        }
+        return result;
+    }
+    
+    @Override
+    public String deposit(String accountNumber, double amount) throws RemoteException {
+        written(accountNumber);
+        return primary.deposit(accountNumber, amount);
+    }
+    
+    @Override
+    public String withdraw(String accountNumber, double amount) throws RemoteException {
+        written(accountNumber);
+        return primary.withdraw(accountNumber, amount);
+    }
+    
+    @Override
+    public String transfer(String fromAccount, String toAccount, double amount, String content) throws RemoteException {
+        written(fromAccount, toAccount);
+        return primary.transfer(fromAccount, toAccount, amount, content);
+    }
+    
+    @Override
+    public List<String> submitBatch(List<Operation> operations) throws RemoteException {
+        if (operations != null) {
+            for (Operation operation : operations) {
+                if (operation != null && !operation.isReadOnly()) {
+                    written(operation.getAccountNumber(), operation.getToAccount());
+                }
+            }
+        }
+        return primary.submitBatch(operations);
+    }
+    
+    @Override
+    public String submitAsync(Operation operation, BankingOperationCallback callback) throws RemoteException {
+        if (operation != null && !operation.isReadOnly()) {
+            written(operation.getAccountNumber(), operation.getToAccount());
+        }
+        return primary.submitAsync(operation, callback);
+    }
+    
+    @Override
+    public OperationStatus getOperationStatus(String operationId) throws RemoteException {
+        return primary.getOperationStatus(operationId);
+    }
+    
+    @Override
+    public String bulkTransfer(String fromAccount, Map<String, Double> payments, String content) throws RemoteException {
+        written(fromAccount);
+        if (payments != null) {
+            written(payments.keySet().toArray(new String[0]));
+        }
+        return primary.bulkTransfer(fromAccount, payments, content);
+    }
+    
+    @Override
+    public List<Transaction> getTransactionHistory(String accountNumber) throws RemoteException {
+        return read(accountNumber, service -> service.getTransactionHistory(accountNumber));
+    }
+    
+    @Override
+    public TransactionPage getTransactionHistoryPage(String accountNumber, String cursor, int pageSize) throws RemoteException {
+        return read(accountNumber, service -> service.getTransactionHistoryPage(accountNumber, cursor, pageSize));
+    }
+    
+    @Override
+    public TransactionPage getTransactionsSince(String accountNumber, long lastSeenSequence) throws RemoteException {
+        return read(accountNumber, service -> service.getTransactionsSince(accountNumber, lastSeenSequence));
+    }
+    
+    @Override
+    public void registerCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        primary.registerCallback(accountNumber, callback);
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber) throws RemoteException {
+        primary.unregisterCallback(accountNumber);
+    }
+    
+    @Override
+    public void unregisterCallback(String accountNumber, BankingCallback callback) throws RemoteException {
+        primary.unregisterCallback(accountNumber, callback);
+    }
+    
+    @Override
+    public NotificationPage pollNotifications(String accountNumber, long sinceSequence, long maxWaitMillis) throws RemoteException {
+        NotificationPage page = primary.pollNotifications(accountNumber, sinceSequence, maxWaitMillis);
+        if (!page.isEmpty()) {
+            // Vừa nhận tiền: đọc số dư/lịch sử từ server chính cho đến khi bản sao nhận kịp
+            written(accountNumber);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,27 @@
+import java.rmi.RemoteException;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * Nguồn dữ liệu cho bản sao chỉ đọc (xem ReplicationSource), export riêng với stub của client
+ * và bind với tên <tên service>-replication. Chỉ nhận kết nối từ các máy được phép (xem
+ * BankingServer.internalSocketFactory); checkpoint và journal gửi đi không mang mật khẩu người dùng.
+ */
+public class ReplicationEndpoint extends UnicastRemoteObject implements ReplicationSource {
+    private final BankingServiceImpl service;
+    
+    public ReplicationEndpoint(BankingServiceImpl service, RMIServerSocketFactory sockets) throws RemoteException {
+        super(0, null, sockets);
+        this.service = service;
+    }
+    
+    @Override
+    public CheckpointImage checkpointImage() throws RemoteException {
+        return service.checkpointImage();
+    }
+    
+    @Override
+    public JournalChunk readJournal(int segmentId, long offset, int maxBytes) throws RemoteException {
+        return service.readJournal(segmentId, offset, maxBytes);
+    }
+}
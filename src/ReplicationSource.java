@@ -0,0 +1,21 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Nguồn dữ liệu cho bản sao chỉ đọc (BankingReplica), do server chính cung cấp
+ * qua ReplicationEndpoint với tên <tên service>-replication
+ */
+public interface ReplicationSource extends Remote {
+    /**
+     * Checkpoint mới nhất, null nếu server chưa tạo checkpoint
+     */
+    CheckpointImage checkpointImage() throws RemoteException;
+    
+    /**
+     * Đọc tiếp journal của server chính
+     * @param segmentId segment cần đọc (bắt đầu từ 1)
+     * @param offset vị trí đã đọc đến trong segment (endOffset của đoạn trước, 0 với segment mới)
+     * @param maxBytes kích thước tối đa của đoạn trả về
+     */
+    JournalChunk readJournal(int segmentId, long offset, int maxBytes) throws RemoteException;
+}
@@ -0,0 +1,134 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Kiểm tra bộ cấp số tài khoản khi chạy nhiều shard và khởi động lại nhiều lần.
+ * Mỗi lần chạy là một JVM riêng (java ShardAllocatorCheck) trong thư mục dữ liệu tạm: đăng ký vài tài khoản,
+ * chờ checkpoint rồi tắt bình thường hoặc dừng đột ngột. Sau mọi lần chạy, số tài khoản phải thuộc đúng shard,
+ * không trùng, và sequence chỉ tăng tối đa một khối (account.blockSize) mỗi lần khởi động lại
+ * (trước đây mốc khôi phục từ số tài khoản thô nên tăng khoảng shard.count lần sau mỗi lần khởi động).
+ */
+public class ShardAllocatorCheck {
+
+    private static final int BLOCK_SIZE = 10;
+    private static final int ROUNDS = 6;
+    private static final int PER_ROUND = 5;
+    private static final long RANGE_START = 20000; // trên số của tài khoản mẫu (01234, 12345)
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            runChild(args[1], Integer.parseInt(args[2]), args[3], Long.parseLong(args[4]));
+            return;
+        }
+        boolean ok = true;
+        for (int shardCount : new int[] {1, 2, 3}) {
+            ok &= check(shardCount, shardCount - 1);
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Một lần chạy server: đăng ký count tài khoản, chờ waitMillis (checkpoint chạy mỗi giây) rồi thoát
+    private static void runChild(String prefix, int count, String exitMode, long waitMillis) throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        for (int i = 0; i < count; i++) {
+            String result = service.register(prefix + "-" + i, "pw", "Check " + prefix);
+            if (!result.startsWith("SUCCESS:")) {
+                throw new IllegalStateException("Đăng ký thất bại: " + result);
+            }
+            System.out.println("ACCOUNT:" + result.substring("SUCCESS:".length()));
+        }
+        System.out.flush();
+        Thread.sleep(waitMillis);
+        if (exitMode.equals("halt")) {
+            Runtime.getRuntime().halt(0); // như server bị dừng đột ngột
+        }
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static boolean check(int shardCount, int shardId) throws Exception {
+        File dir = Files.createTempDirectory("shard-allocator-check").toFile();
+        writeConfig(new File(dir, "config.properties"), shardCount, shardId);
+        ShardMap shardMap = new ShardMap(shardCount);
+        List<Long> numbers = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            // Xen kẽ: có/không chờ checkpoint, tắt bình thường/dừng đột ngột
+            String exitMode = round % 2 == 0 ? "halt" : "shutdown";
+            long waitMillis = round % 3 == 0 ? 0 : 2500;
+            numbers.addAll(runRound(dir, "u" + round, exitMode, waitMillis));
+        }
+
+        boolean ok = true;
+        Set<Long> seen = new HashSet<>();
+        long maxSequence = 0;
+        for (long number : numbers) {
+            if (shardMap.shardOf(String.valueOf(number)) != shardId) {
+                System.out.println("shard.count=" + shardCount + ": tài khoản " + number + " không thuộc shard " + shardId);
+                ok = false;
+            }
+            if (!seen.add(number)) {
+                System.out.println("shard.count=" + shardCount + ": tài khoản " + number + " bị cấp trùng");
+                ok = false;
+            }
+            maxSequence = Math.max(maxSequence, Math.floorDiv(number, shardCount));
+        }
+        // Mỗi lần khởi động bỏ tối đa phần còn lại của một khối đã ghi nhận
+        long limit = RANGE_START + (long) ROUNDS * BLOCK_SIZE;
+        if (numbers.size() != ROUNDS * PER_ROUND || maxSequence >= limit) {
+            System.out.println("shard.count=" + shardCount + ": sequence lớn nhất " + maxSequence
+                    + " (giới hạn " + limit + "), số tài khoản " + numbers);
+            ok = false;
+        }
+        System.out.println("shard.count=" + shardCount + " shard.id=" + shardId + ": "
+                + numbers.size() + " tài khoản, sequence lớn nhất " + maxSequence + (ok ? " - OK" : " - LỖI"));
+        return ok;
+    }
+
+    private static List<Long> runRound(File dir, String prefix, String exitMode, long waitMillis) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(),
+                "ShardAllocatorCheck", "child", prefix, String.valueOf(PER_ROUND), exitMode, String.valueOf(waitMillis));
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        List<Long> numbers = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("ACCOUNT:")) {
+                    numbers.add(Long.parseLong(line.substring("ACCOUNT:".length())));
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Lần chạy " + prefix + " kết thúc với mã " + process.exitValue());
+        }
+        return numbers;
+    }
+
+    private static void writeConfig(File file, int shardCount, int shardId) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("shard.count=" + shardCount + "\n");
+            out.write("shard.id=" + shardId + "\n");
+            out.write("account.rangeStart=" + RANGE_START + "\n");
+            out.write("account.blockSize=" + BLOCK_SIZE + "\n");
+            out.write("checkpoint.intervalSeconds=1\n");
+            out.write("journal.durability=group\n");
+        }
+    }
+}
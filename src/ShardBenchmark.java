@@ -0,0 +1,426 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Đo thông lượng chuyển khoản theo số shard, mỗi shard và router (bên điều phối) là một JVM riêng
+ * (thư mục dữ liệu tạm, registry trên một cổng trống của 127.0.0.1), bind giống BankingServer/BankingRouter.
+ * Với 1, 2 và 4 shard: mở các tài khoản qua router rồi cho nhiều client cùng chuyển khoản trong một khoảng
+ * thời gian, lần lượt với người nhận cùng shard với người gửi và người nhận ngẫu nhiên (phần lớn là chuyển
+ * khoản giữa hai shard, dùng giao thức hai pha). Tổng tiền của mọi tài khoản sau khi đo phải không đổi.
+ *
+ * Sau đó kiểm tra khôi phục chuyển khoản giữa hai shard khi router bị dừng đột ngột giữa prepare và commit:
+ * - sau khi cả hai shard đã prepare, trước khi ghi COMMIT: router khởi động lại phải hủy, tiền trả về người gửi;
+ * - sau khi ghi COMMIT, trước khi shard nào nhận commit: router khởi động lại phải hoàn tất chuyển khoản.
+ * Router bị dừng tại đúng thời điểm nhờ một ShardParticipant trung gian trong JVM của router.
+ * Chạy: java ShardBenchmark [số client] [số giây mỗi lần đo] [số tài khoản]
+ */
+public class ShardBenchmark {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 4};
+    private static final int DEFAULT_CLIENTS = 32;
+    private static final int DEFAULT_SECONDS = 5;
+    private static final int DEFAULT_ACCOUNTS = 64;
+    private static final long INITIAL_BALANCE = 1_000_000;
+    private static final String SERVICE_NAME = "BankingService";
+    private static final int ROUTER_NODE = 100;
+
+    /**
+     * ShardParticipant trung gian: chuyển tiếp tới shard thật, dừng JVM của router tại điểm crashAt
+     */
+    private static class CrashingParticipant implements ShardParticipant {
+        private final ShardParticipant target;
+        private final String crashAt;
+
+        CrashingParticipant(ShardParticipant target, String crashAt) {
+            this.target = target;
+            this.crashAt = crashAt;
+        }
+
+        @Override
+        public String prepareDebit(String transferId, String fromAccount, String toAccount, long amount, String content) throws RemoteException {
+            return target.prepareDebit(transferId, fromAccount, toAccount, amount, content);
+        }
+
+        @Override
+        public String prepareCredit(String transferId, String toAccount, String fromAccount, long amount, String content) throws RemoteException {
+            String result = target.prepareCredit(transferId, toAccount, fromAccount, amount, content);
+            if (crashAt.equals("prepared")) {
+                Runtime.getRuntime().halt(1); // cả hai shard đã prepare, chưa có quyết định
+            }
+            return result;
+        }
+
+        @Override
+        public void commit(String transferId) throws RemoteException {
+            if (crashAt.equals("decided")) {
+                Runtime.getRuntime().halt(1); // COMMIT đã ghi vào nhật ký, chưa shard nào commit
+            }
+            target.commit(transferId);
+        }
+
+        @Override
+        public void abort(String transferId) throws RemoteException {
+            target.abort(transferId);
+        }
+
+        @Override
+        public List<String> inDoubt() throws RemoteException {
+            return target.inDoubt();
+        }
+    }
+
+    /**
+     * Một cụm đang chạy: các JVM shard và JVM router
+     */
+    private static class Cluster {
+        final File root;
+        final List<Process> shards = new ArrayList<>();
+        final List<String> shardUrls = new ArrayList<>();
+        final File routerDir;
+        Process router;
+        BankingService service;
+
+        Cluster(int shardCount) throws Exception {
+            root = Files.createTempDirectory("shard-benchmark").toFile();
+            for (int id = 0; id < shardCount; id++) {
+                File dir = new File(root, "shard-" + id);
+                dir.mkdirs();
+                writeConfig(new File(dir, "config.properties"), "shard.count=" + shardCount + "\nshard.id=" + id
+                        + "\nserver.nodeId=" + (id + 1) + "\n");
+                int port = freePort();
+                shards.add(start(dir, "shard", String.valueOf(port)));
+                shardUrls.add("rmi://127.0.0.1:" + port + "/" + SERVICE_NAME + (shardCount > 1 ? "-shard-" + id : ""));
+            }
+            routerDir = new File(root, "router");
+            routerDir.mkdirs();
+            writeConfig(new File(routerDir, "config.properties"), "");
+        }
+
+        void startRouter(String crashAt) throws Exception {
+            int port = freePort();
+            router = start(routerDir, "router", String.valueOf(port), crashAt, String.join(",", shardUrls));
+            service = (BankingService) LocateRegistry.getRegistry("127.0.0.1", port).lookup(SERVICE_NAME);
+        }
+
+        void stopRouter() throws Exception {
+            if (router != null) {
+                router.getOutputStream().close(); // router dừng khi stdin đóng
+                router.waitFor();
+            }
+        }
+
+        void close() throws Exception {
+            stopRouter();
+            for (Process shard : shards) {
+                shard.getOutputStream().close();
+            }
+            for (Process shard : shards) {
+                shard.waitFor();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("shard")) {
+            serveShard(Integer.parseInt(args[1]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("router")) {
+            serveRouter(Integer.parseInt(args[1]), args[2], Arrays.asList(args[3].split(",")));
+            return;
+        }
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ACCOUNTS;
+
+        System.out.println(clients + " client đồng thời, " + accountCount + " tài khoản, " + seconds + " giây mỗi lần đo, "
+                + Runtime.getRuntime().availableProcessors() + " lõi");
+        System.out.printf("%-6s %20s %20s %14s  %s%n", "shard", "cùng shard (CK/s)", "ngẫu nhiên (CK/s)",
+                "giữa 2 shard", "tổng tiền");
+        boolean ok = true;
+        for (int shardCount : SHARD_COUNTS) {
+            ok &= measure(shardCount, clients, seconds, accountCount);
+        }
+        ok &= checkRecovery("prepared");
+        ok &= checkRecovery("decided");
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean measure(int shardCount, int clients, int seconds, int accountCount) throws Exception {
+        Cluster cluster = new Cluster(shardCount);
+        try {
+            cluster.startRouter("none");
+            BankingService service = cluster.service;
+            ShardMap shardMap = new ShardMap(shardCount);
+            String[] accounts = new String[accountCount];
+            List<List<String>> byShard = new ArrayList<>();
+            for (int s = 0; s < shardCount; s++) {
+                byShard.add(new ArrayList<>());
+            }
+            for (int i = 0; i < accountCount; i++) {
+                accounts[i] = open(service, "shard-benchmark-" + i);
+                byShard.get(shardMap.shardOf(accounts[i])).add(accounts[i]);
+            }
+
+            // Làm nóng kết nối RMI và JIT của mọi JVM trước khi đo
+            run(service, shardMap, accounts, clients, 1, from -> accounts[ThreadLocalRandom.current().nextInt(accounts.length)]);
+            long[] local = run(service, shardMap, accounts, clients, seconds, from -> {
+                List<String> peers = byShard.get(shardMap.shardOf(from));
+                return peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+            });
+            long[] random = run(service, shardMap, accounts, clients, seconds,
+                    from -> accounts[ThreadLocalRandom.current().nextInt(accounts.length)]);
+
+            long total = 0;
+            for (String account : accounts) {
+                total += balance(service, account);
+            }
+            long expected = INITIAL_BALANCE * accountCount;
+            boolean ok = total == expected && local[2] == 0 && random[2] == 0;
+            String failed = local[2] + random[2] > 0 ? ", " + (local[2] + random[2]) + " chuyển khoản lỗi" : "";
+            System.out.printf("%-6d %20.0f %20.0f %13.0f%%  %s%n", shardCount,
+                    local[0] * 1000.0 / local[1], random[0] * 1000.0 / random[1],
+                    random[0] == 0 ? 0.0 : random[3] * 100.0 / random[0],
+                    total == expected ? "không đổi" + failed + (ok ? " - OK" : " - LỖI")
+                            : total + ", mong đợi " + expected + failed + " - LỖI");
+            return ok;
+        } finally {
+            cluster.close();
+        }
+    }
+
+    private interface Recipient {
+        String pick(String from);
+    }
+
+    /**
+     * Các client chuyển khoản 1 đơn vị cho người nhận do recipient chọn
+     * @return {số chuyển khoản thành công, ms, số lỗi, số chuyển khoản giữa hai shard}
+     */
+    private static long[] run(BankingService service, ShardMap shardMap, String[] accounts, int clients, int seconds,
+                              Recipient recipient) throws Exception {
+        AtomicLong done = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong crossShard = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] window = new long[2];
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    while (System.nanoTime() < window[1]) {
+                        String from = accounts[random.nextInt(accounts.length)];
+                        String to = recipient.pick(from);
+                        if (to.equals(from)) {
+                            continue;
+                        }
+                        String result = service.transfer(from, to, 1, "shard-benchmark");
+                        if (result.startsWith("Đã chuyển")) {
+                            done.incrementAndGet();
+                            if (shardMap.shardOf(from) != shardMap.shardOf(to)) {
+                                crossShard.incrementAndGet();
+                            }
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failed.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        window[0] = System.nanoTime();
+        window[1] = window[0] + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new long[] {done.get(), (System.nanoTime() - window[0]) / 1_000_000, failed.get(), crossShard.get()};
+    }
+
+    private static boolean checkRecovery(String crashAt) throws Exception {
+        Cluster cluster = new Cluster(2);
+        try {
+            cluster.startRouter("none");
+            ShardMap shardMap = new ShardMap(2);
+            String[] accounts = new String[2]; // một tài khoản ở mỗi shard
+            for (int i = 0; accounts[0] == null || accounts[1] == null; i++) {
+                String account = open(cluster.service, "recovery-" + crashAt + "-" + i);
+                if (accounts[shardMap.shardOf(account)] == null) {
+                    accounts[shardMap.shardOf(account)] = account;
+                }
+            }
+            cluster.stopRouter();
+
+            cluster.startRouter(crashAt);
+            try {
+                String result = cluster.service.transfer(accounts[0], accounts[1], 100, "recovery");
+                System.out.println("Router không dừng giữa prepare và commit: " + result + " - LỖI");
+                return false;
+            } catch (RemoteException e) {
+                // router đã dừng đột ngột
+            }
+            cluster.router.waitFor();
+
+            // Router khởi động lại với cùng nhật ký điều phối khôi phục ngay khi khởi động
+            cluster.startRouter("none");
+            long from = balance(cluster.service, accounts[0]);
+            long to = balance(cluster.service, accounts[1]);
+            int inDoubt = 0;
+            for (String url : cluster.shardUrls) {
+                inDoubt += ((ShardParticipant) Naming.lookup(url + BankingServer.PARTICIPANT_SUFFIX)).inDoubt().size();
+            }
+            long moved = crashAt.equals("decided") ? 100 : 0;
+            boolean ok = from == INITIAL_BALANCE - moved && to == INITIAL_BALANCE + moved && inDoubt == 0;
+            System.out.println((crashAt.equals("decided") ? "Router dừng sau khi ghi COMMIT: " : "Router dừng sau prepare, trước COMMIT: ")
+                    + "người gửi " + from + ", người nhận " + to + ", " + inDoubt + " giao dịch còn chờ"
+                    + (ok ? " - OK" : " - LỖI (mong đợi chuyển " + moved + ")"));
+            return ok;
+        } finally {
+            cluster.close();
+        }
+    }
+
+    private static String open(BankingService service, String username) throws Exception {
+        String result = service.register(username, "pw", "Shard " + username);
+        if (!result.startsWith("SUCCESS:")) {
+            throw new IllegalStateException("Đăng ký thất bại: " + result);
+        }
+        String account = result.split(":")[1];
+        service.deposit(account, INITIAL_BALANCE);
+        return account;
+    }
+
+    private static long balance(BankingService service, String account) throws Exception {
+        String result = service.queryAccount(account);
+        return Math.round(Double.parseDouble(result.substring(result.indexOf(':') + 1).trim()));
+    }
+
+    // JVM chạy một shard: bind service và các dịch vụ nội bộ như BankingServer, dừng khi stdin đóng
+    private static void serveShard(int port) throws Exception {
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+        BankingServiceImpl service;
+        try {
+            service = new BankingServiceImpl();
+        } catch (RemoteException e) {
+            System.err.println("Lỗi khởi động shard: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        String name = BankingServer.serviceName();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind(name, service);
+        registry.rebind(name + BankingServer.PARTICIPANT_SUFFIX,
+                new ShardEndpoint(service, BankingServer.internalSocketFactory()));
+        System.out.println("READY");
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // chờ tiến trình cha đóng stdin
+        }
+        service.shutdown();
+        System.exit(0);
+    }
+
+    // JVM chạy router; crashAt khác "none" thì các shard được gọi qua CrashingParticipant
+    private static void serveRouter(int port, String crashAt, List<String> shardUrls) throws Exception {
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+        IdGenerator.setInstance(new IdGenerator(ROUTER_NODE));
+        Registry registry = LocateRegistry.createRegistry(port);
+        List<String> urls = shardUrls;
+        if (!crashAt.equals("none")) {
+            urls = new ArrayList<>();
+            for (int i = 0; i < shardUrls.size(); i++) {
+                ShardParticipant participant = (ShardParticipant) Naming.lookup(shardUrls.get(i) + BankingServer.PARTICIPANT_SUFFIX);
+                registry.rebind("shard-" + i, Naming.lookup(shardUrls.get(i)));
+                registry.rebind("shard-" + i + BankingServer.PARTICIPANT_SUFFIX,
+                        UnicastRemoteObject.exportObject(new CrashingParticipant(participant, crashAt), 0));
+                urls.add("rmi://127.0.0.1:" + port + "/shard-" + i);
+            }
+        }
+        AsyncOperations async = new AsyncOperations(2, 100, 60_000, 100, (operation, callback, status) -> { });
+        BankingRouter router = new BankingRouter(urls, new CoordinatorLog(new File("coordinator.log")), ROUTER_NODE, 1,
+                async, new IdempotencyCache(1000, 3600_000L));
+        registry.rebind(SERVICE_NAME, router);
+        System.out.println("READY");
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // chờ tiến trình cha đóng stdin
+        }
+        router.shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * Chạy một JVM con trong thư mục dir, chờ đến khi nó in READY
+     */
+    private static Process start(File dir, String... args) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(), "ShardBenchmark"));
+        Collections.addAll(command, args);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(dir);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = out.readLine()) != null && !line.equals("READY")) {
+            // bỏ qua log khởi động
+        }
+        if (line == null) {
+            throw new IllegalStateException("JVM " + String.join(" ", args) + " không khởi động được");
+        }
+        Thread drain = new Thread(() -> {
+            try {
+                while (out.readLine() != null) {
+                    // log không cần cho kết quả
+                }
+            } catch (IOException e) {
+                // JVM đã dừng
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+        return process;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void writeConfig(File file, String extra) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\n");
+            out.write("journal.durability=group\n");
+            out.write("checkpoint.intervalSeconds=3600\n");
+            out.write(extra);
+        }
+    }
+}
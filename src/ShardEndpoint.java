@@ -0,0 +1,43 @@
+import java.rmi.RemoteException;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+
+/**
+ * Các bước chuyển khoản giữa shard của một server (xem ShardParticipant), export riêng với stub của client
+ * và bind với tên <tên service>-participant. Chỉ nhận kết nối từ các máy được phép (xem
+ * BankingServer.internalSocketFactory), vì prepareCredit/commit cộng tiền mà không trừ ở đâu cả.
+ */
+public class ShardEndpoint extends UnicastRemoteObject implements ShardParticipant {
+    private final BankingServiceImpl service;
+    
+    public ShardEndpoint(BankingServiceImpl service, RMIServerSocketFactory sockets) throws RemoteException {
+        super(0, null, sockets);
+        this.service = service;
+    }
+    
+    @Override
+    public String prepareDebit(String transferId, String fromAccount, String toAccount, long amount, String content) throws RemoteException {
+        return service.prepareDebit(transferId, fromAccount, toAccount, amount, content);
+    }
+    
+    @Override
+    public String prepareCredit(String transferId, String toAccount, String fromAccount, long amount, String content) throws RemoteException {
+        return service.prepareCredit(transferId, toAccount, fromAccount, amount, content);
+    }
+    
+    @Override
+    public void commit(String transferId) throws RemoteException {
+        service.commit(transferId);
+    }
+    
+    @Override
+    public void abort(String transferId) throws RemoteException {
+        service.abort(transferId);
+    }
+    
+    @Override
+    public List<String> inDoubt() throws RemoteException {
+        return service.inDoubt();
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Phân chia tài khoản và người dùng cho các shard (mỗi shard là một tiến trình server).
+ *
+ * Tài khoản thuộc shard (số tài khoản mod số shard); số tài khoản không phải số dùng hashCode.
+ * Người dùng thuộc shard theo hash của username, và tài khoản của người dùng được tạo trên
+ * chính shard đó (accountNumber()), nên đăng nhập và mọi thao tác trên tài khoản của một
+ * người dùng chỉ cần đến một shard.
+ */
+public class ShardMap {
+    private final int shardCount;
+
+    public ShardMap(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Số shard không hợp lệ: " + shardCount);
+        }
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardOf(String accountNumber) {
+        if (accountNumber == null) {
+            return 0;
+        }
+        try {
+            return (int) Math.floorMod(Long.parseLong(accountNumber), (long) shardCount);
+        } catch (NumberFormatException e) {
+            return Math.floorMod(accountNumber.hashCode(), shardCount);
+        }
+    }
+
+    public int shardOfUser(String username) {
+        return username == null ? 0 : Math.floorMod(username.hashCode(), shardCount);
+    }
+
+    /**
+     * Số tài khoản thứ sequence của shard (luôn thuộc shard đó)
+     */
+    public long accountNumber(long sequence, int shardId) {
+        return sequence * shardCount + shardId;
+    }
+
+    /**
+     * Sequence nhỏ nhất mà mọi số tài khoản cấp từ nó (ở bất kỳ shard nào) đều lớn hơn accountNumber.
+     * Dùng để đổi số tài khoản đã có về mốc của bộ cấp số, không đưa số tài khoản thô vào bộ cấp số.
+     */
+    public long sequenceAfter(long accountNumber) {
+        return Math.floorDiv(accountNumber, shardCount) + 1;
+    }
+}
@@ -0,0 +1,38 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Các bước chuyển khoản giữa hai shard, do BankingRouter (bên điều phối) gọi.
+ * Server export qua ShardEndpoint với tên <tên service>-participant, không có trên stub của client.
+ * Mọi bước đều có thể gọi lại nhiều lần với cùng transferId (khi thử lại sau lỗi mạng).
+ * Số tiền tính bằng đơn vị nhỏ (xem Money).
+ */
+public interface ShardParticipant extends Remote {
+    /**
+     * Giữ tiền ở tài khoản gốc
+     * @return "SUCCESS:<số dư còn lại>" hoặc "ERROR:<lý do>"
+     */
+    String prepareDebit(String transferId, String fromAccount, String toAccount, long amount, String content) throws RemoteException;
+    
+    /**
+     * Xác nhận tài khoản nhận có thể nhận tiền
+     * @return "SUCCESS:" hoặc "ERROR:<lý do>"
+     */
+    String prepareCredit(String transferId, String toAccount, String fromAccount, long amount, String content) throws RemoteException;
+    
+    /**
+     * Hoàn tất: shard nhận cộng tiền, shard gốc giữ nguyên khoản đã trừ
+     */
+    void commit(String transferId) throws RemoteException;
+    
+    /**
+     * Hủy: shard gốc hoàn lại tiền đã giữ
+     */
+    void abort(String transferId) throws RemoteException;
+    
+    /**
+     * Các giao dịch đã prepare nhưng chưa có kết quả (dùng khi khôi phục)
+     */
+    List<String> inDoubt() throws RemoteException;
+}
@@ -0,0 +1,169 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Kiểm tra server từ chối khởi động khi checkpoint hoặc journal đọc lỗi, thay vì chạy tiếp với trạng thái
+ * thiếu (checkpoint lỗi từng bị coi như lần chạy đầu tiên, journal lỗi chỉ được ghi log).
+ * Lần chạy đầu ghi dữ liệu rồi tắt; sau đó checkpoint.dat hoặc segment journal bị làm hỏng phần đầu file:
+ * server phải thoát với lỗi và không thay đổi checkpoint hay journal. Khi trả lại file gốc,
+ * server khởi động bình thường với đủ dữ liệu.
+ * Mỗi lần khởi động là một JVM riêng trong thư mục dữ liệu tạm.
+ * Chạy: java StartupFailureCheck
+ */
+public class StartupFailureCheck {
+
+    private static final String USERNAME = "startup-check";
+    private static final double BALANCE = 500.0;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("write")) {
+            write();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("start")) {
+            start();
+            return;
+        }
+        boolean ok = check("checkpoint.dat");
+        ok &= check("journal");
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void write() throws Exception {
+        BankingServiceImpl service = new BankingServiceImpl();
+        String result = service.register(USERNAME, "pw", "Startup Check");
+        if (!result.startsWith("SUCCESS:")) {
+            throw new IllegalStateException("Đăng ký thất bại: " + result);
+        }
+        String account = result.split(":")[1];
+        service.deposit(account, BALANCE);
+        System.out.println("ACCOUNT:" + account);
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    private static void start() throws Exception {
+        BankingServiceImpl service;
+        try {
+            service = new BankingServiceImpl();
+        } catch (RemoteException e) {
+            // như BankingServer: không khởi động được thì thoát
+            System.out.println("ERROR:" + e.getMessage().replaceAll("\\s+", " ")); // kèm nguyên nhân trên một dòng
+            System.exit(1);
+            return;
+        }
+        System.out.println("LOGIN:" + service.login(USERNAME, "pw"));
+        String account = service.login(USERNAME, "pw").split(":")[1];
+        System.out.println("BALANCE:" + service.queryAccount(account));
+        System.out.flush();
+        service.shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * @param target "checkpoint.dat" hoặc "journal" (segment journal cuối cùng)
+     */
+    private static boolean check(String target) throws Exception {
+        File dir = Files.createTempDirectory("startup-failure-check").toFile();
+        writeConfig(dir);
+        List<String> lines = new ArrayList<>();
+        if (run(dir, "write", lines) != 0) {
+            throw new IllegalStateException("Lần chạy đầu lỗi: " + lines);
+        }
+        File file = target.equals("journal") ? lastSegment(new File(dir, "journal")) : new File(dir, target);
+        byte[] original = Files.readAllBytes(file.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0x0BADF00D); // MAGIC sai
+        }
+        Map<String, String> before = listing(dir);
+
+        lines.clear();
+        int exit = run(dir, "start", lines);
+        String error = lines.stream().filter(line -> line.startsWith("ERROR:")).findFirst().orElse("không có lỗi");
+        boolean unchanged = before.equals(listing(dir));
+        boolean ok = exit != 0 && unchanged;
+        System.out.println(file.getName() + " hỏng: mã thoát " + exit + " (" + error + ")"
+                + (unchanged ? ", thư mục dữ liệu không đổi" : ", thư mục dữ liệu đã bị thay đổi") + (ok ? " - OK" : " - LỖI"));
+
+        // Trả lại file gốc: dữ liệu còn đủ
+        Files.write(file.toPath(), original);
+        lines.clear();
+        exit = run(dir, "start", lines);
+        boolean recovered = exit == 0 && lines.contains("BALANCE:Số dư hiện tại: " + BALANCE);
+        System.out.println("Khởi động lại với " + file.getName() + " gốc: mã thoát " + exit + ", "
+                + lines.stream().filter(line -> line.startsWith("BALANCE:")).findFirst().orElse("không có số dư")
+                + (recovered ? " - OK" : " - LỖI"));
+        return ok && recovered;
+    }
+
+    private static File lastSegment(File journal) {
+        File[] segments = journal.listFiles((d, name) -> name.endsWith(".log"));
+        if (segments == null || segments.length == 0) {
+            throw new IllegalStateException("Không có segment journal trong " + journal);
+        }
+        Arrays.sort(segments);
+        return segments[segments.length - 1];
+    }
+
+    /**
+     * Đường dẫn -> kích thước và thời điểm sửa của các file dữ liệu (checkpoint, journal).
+     * Kho tài khoản đang chạy (accounts.dat) không tính: nó luôn được dựng lại từ checkpoint khi khởi động
+     */
+    private static Map<String, String> listing(File dir) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                File file = path.toFile();
+                if (file.isFile() && !file.getName().equals("accounts.dat")) {
+                    files.put(dir.toPath().relativize(path).toString(), file.length() + "@" + file.lastModified());
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Chạy server một lần, trả về mã thoát; các dòng stdout được thêm vào lines
+     */
+    private static int run(File dir, String mode, List<String> lines) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-Dfile.encoding=UTF-8", "-Dstdout.encoding=UTF-8",
+                "-cp", new File(System.getProperty("java.class.path")).getAbsolutePath(), "StartupFailureCheck", mode);
+        builder.directory(dir);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return process.waitFor();
+    }
+
+    private static void writeConfig(File dir) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, "config.properties")),
+                StandardCharsets.UTF_8)) {
+            out.write("server.host=127.0.0.1\ncheckpoint.intervalSeconds=3600\n");
+        }
+    }
+}
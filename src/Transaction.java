@@ -5,17 +5,18 @@ import java.util.Date;
 public class Transaction implements Serializable {
     private String transactionId;
     private String accountNumber;
-    private String transactionType; // DEPOSIT, WITHDRAW, TRANSFER_IN, TRANSFER_OUT
-    private double amount;
+    private String transactionType; // DEPOSIT, WITHDRAW, TRANSFER_IN, TRANSFER_OUT, TRANSFER_REVERSAL
+    private long amount; // đơn vị nhỏ, xem Money
     private String description;
     private String relatedAccount; // For transfers
     private Date timestamp;
+    private long sequence; // số thứ tự trong lịch sử của tài khoản (xem TransactionIndex), 0 nếu chưa cấp
     
     public Transaction() {
         this.timestamp = new Date();
     }
     
-    public Transaction(String accountNumber, String transactionType, double amount, String description) {
+    public Transaction(String accountNumber, String transactionType, long amount, String description) {
         this();
         this.transactionId = generateTransactionId();
         this.accountNumber = accountNumber;
@@ -24,13 +25,13 @@ public class Transaction implements Serializable {
         this.description = description;
     }
     
-    public Transaction(String accountNumber, String transactionType, double amount, String description, String relatedAccount) {
+    public Transaction(String accountNumber, String transactionType, long amount, String description, String relatedAccount) {
         this(accountNumber, transactionType, amount, description);
         this.relatedAccount = relatedAccount;
     }
     
     private String generateTransactionId() {
-        return "TXN" + System.currentTimeMillis();
+        return IdGenerator.getInstance().nextString();
     }
     
     public String getTransactionId() {
@@ -57,11 +58,11 @@ public class Transaction implements Serializable {
         this.transactionType = transactionType;
     }
     
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
     
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
     
@@ -89,6 +90,14 @@ public class Transaction implements Serializable {
         this.timestamp = timestamp;
     }
     
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    
     public String getFormattedTimestamp() {
         SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
         return sdf.format(timestamp);
@@ -102,9 +111,10 @@ public class Transaction implements Serializable {
             case "WITHDRAW": typeName = "Rút tiền"; break;
             case "TRANSFER_IN": typeName = "Nhận chuyển khoản"; break;
             case "TRANSFER_OUT": typeName = "Chuyển khoản"; break;
+            case "TRANSFER_REVERSAL": typeName = "Hoàn tiền chuyển khoản"; break;
         }
         
-        String result = String.format("[%s] %s: %.2f VNĐ", getFormattedTimestamp(), typeName, amount);
+        String result = String.format("[%s] %s: %.2f VNĐ", getFormattedTimestamp(), typeName, Money.toDouble(amount));
         if (relatedAccount != null) {
             result += " - Tài khoản: " + relatedAccount;
         }
@@ -0,0 +1,314 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chỉ mục lịch sử giao dịch theo từng tài khoản.
+ *
+ * Mỗi tài khoản có danh sách giao dịch riêng, luôn được giữ theo thứ tự thời gian khi thêm vào,
+ * nên tra cứu lịch sử chỉ tốn thời gian tỉ lệ với số giao dịch của tài khoản đó,
+ * không phải quét và sắp xếp toàn bộ giao dịch của ngân hàng.
+ *
+ * Số thứ tự (sequence) của một giao dịch được cấp khi thêm vào (sequence lớn nhất đã cấp của tài khoản + 1),
+ * lưu trong chính giao dịch (Transaction.getSequence) và được ghi vào journal cùng giao dịch.
+ * Khi nạp lại, giao dịch được xếp theo sequence đã lưu chứ không theo thứ tự ghi journal,
+ * nên sequence của một giao dịch giống nhau sau khi khởi động lại và trên bản sao.
+ * Danh sách của mỗi tài khoản luôn sắp theo sequence; sequence có thể có khoảng trống
+ * (giao dịch chưa kịp ghi journal khi server sập) nên được tìm bằng tìm kiếm nhị phân.
+ * Sequence lớn nhất đã cấp của mỗi tài khoản (kể cả giao dịch đã bị bỏ) được lưu trong checkpoint
+ * và khôi phục khi khởi động, nên không giảm qua các lần khởi động lại.
+ *
+ * Giao dịch mới được thêm trước khi ghi journal nhưng chỉ hiện ra với người đọc (lịch sử,
+ * thông báo) sau khi commit: người đọc chỉ thấy các giao dịch đứng trước giao dịch đang chờ đầu tiên,
+ * nên không đọc được giao dịch có thể bị bỏ và không bỏ sót giao dịch commit muộn hơn giao dịch sau nó.
+ *
+ * An toàn khi dùng từ nhiều luồng: mỗi danh sách được khóa riêng, nên ghi/đọc lịch sử
+ * của các tài khoản khác nhau không chờ nhau.
+ */
+public class TransactionIndex {
+    private final Map<String, History> byAccount = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Lịch sử của một tài khoản (khóa bằng chính đối tượng này)
+     */
+    private static class History {
+        final List<Transaction> list = new ArrayList<>();
+        final TreeSet<Long> pending = new TreeSet<>(); // sequence của các giao dịch chưa commit
+        long highWater; // sequence lớn nhất đã cấp, không giảm kể cả khi giao dịch bị bỏ
+
+        // Số giao dịch người đọc thấy, tính từ đầu danh sách
+        int visibleSize() {
+            return pending.isEmpty() ? list.size() : indexAfter(list, pending.first() - 1);
+        }
+
+        long lastVisibleSequence() {
+            int visible = visibleSize();
+            return visible == 0 ? 0 : list.get(visible - 1).getSequence();
+        }
+    }
+
+    /**
+     * Duyệt giao dịch theo thứ tự từ mới đến cũ
+     */
+    public interface Visitor {
+        /**
+         * @return false để dừng duyệt
+         */
+        boolean visit(long sequence, Transaction transaction);
+    }
+
+    /**
+     * Thêm giao dịch mới vào cuối lịch sử của tài khoản, cấp sequence tiếp theo
+     * (phải gọi trước khi giao dịch được ghi vào journal để sequence được lưu cùng).
+     * Giao dịch chỉ hiện ra với người đọc sau commit; sequence đã cấp không bao giờ được cấp lại
+     * @return sequence của giao dịch
+     */
+    public long append(Transaction transaction) {
+        History history = historyFor(transaction.getAccountNumber());
+        long sequence;
+        synchronized (history) {
+            sequence = ++history.highWater;
+            transaction.setSequence(sequence);
+            history.list.add(transaction);
+            history.pending.add(sequence);
+        }
+        size.incrementAndGet();
+        return sequence;
+    }
+
+    /**
+     * Giao dịch đã được ghi vào journal: hiện ra với người đọc
+     */
+    public void commit(Transaction transaction) {
+        History history = byAccount.get(transaction.getAccountNumber());
+        if (history == null) {
+            return;
+        }
+        synchronized (history) {
+            history.pending.remove(transaction.getSequence());
+        }
+    }
+
+    /**
+     * Thêm giao dịch khi nạp lịch sử lúc khởi động hoặc trên bản sao.
+     * Giao dịch được xếp theo sequence đã lưu (thường là cuối danh sách);
+     * giao dịch chưa có sequence (chuyển từ transactions.json) được cấp sequence tiếp theo.
+     */
+    public void add(Transaction transaction) {
+        History history = historyFor(transaction.getAccountNumber());
+        synchronized (history) {
+            List<Transaction> list = history.list;
+            long sequence = transaction.getSequence();
+            if (sequence <= 0) {
+                transaction.setSequence(++history.highWater);
+                list.add(transaction);
+            } else if (sequence > lastSequence(list)) {
+                history.highWater = Math.max(history.highWater, sequence);
+                list.add(transaction);
+            } else {
+                int index = indexAfter(list, sequence - 1);
+                if (index < list.size() && list.get(index).getSequence() == sequence) {
+                    return; // đã có (bản ghi được đọc lại)
+                }
+                list.add(index, transaction);
+            }
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Bỏ giao dịch vừa thêm khi thao tác không ghi được vào journal (sequence của nó không được cấp lại)
+     */
+    public void remove(Transaction transaction) {
+        History history = byAccount.get(transaction.getAccountNumber());
+        if (history == null) {
+            return;
+        }
+        synchronized (history) {
+            history.pending.remove(transaction.getSequence());
+            List<Transaction> list = history.list;
+            int index = indexAfter(list, transaction.getSequence() - 1);
+            if (index < list.size() && list.get(index) == transaction) {
+                list.remove(index);
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Sequence lớn nhất đã cấp của từng tài khoản, để lưu vào checkpoint
+     */
+    public Map<String, Long> highWaters() {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, History> entry : byAccount.entrySet()) {
+            synchronized (entry.getValue()) {
+                result.put(entry.getKey(), entry.getValue().highWater);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Khôi phục sequence lớn nhất đã cấp từ checkpoint (gọi sau khi nạp lịch sử)
+     */
+    public void restoreHighWater(String accountNumber, long highWater) {
+        History history = historyFor(accountNumber);
+        synchronized (history) {
+            history.highWater = Math.max(history.highWater, highWater);
+        }
+    }
+
+    public void addAll(List<Transaction> transactions) {
+        for (Transaction t : transactions) {
+            add(t);
+        }
+    }
+
+    /**
+     * Lịch sử giao dịch của tài khoản, mới nhất trước
+     */
+    public List<Transaction> getHistory(String accountNumber) {
+        History history = byAccount.get(accountNumber);
+        if (history == null) {
+            return new ArrayList<>();
+        }
+        synchronized (history) {
+            int visible = history.visibleSize();
+            List<Transaction> result = new ArrayList<>(visible);
+            for (int i = visible - 1; i >= 0; i--) {
+                result.add(history.list.get(i));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Lấy một trang lịch sử (mới nhất trước).
+     * Cursor là sequence (không bao gồm) của giao dịch cũ nhất đã trả về, mã hóa base 36;
+     * sequence được lưu cùng giao dịch nên cursor vẫn đúng sau khi server khởi động lại
+     * và khi trang tiếp theo được đọc từ bản sao.
+     * @param cursor null để lấy trang đầu tiên
+     */
+    public TransactionPage getPage(String accountNumber, String cursor, int limit) {
+        History history = byAccount.get(accountNumber);
+        List<Transaction> page = new ArrayList<>(limit);
+        if (history == null) {
+            return new TransactionPage(page, null, 0);
+        }
+        synchronized (history) {
+            List<Transaction> list = history.list;
+            int end = history.visibleSize();
+            if (cursor != null) {
+                try {
+                    end = Math.min(end, indexAfter(list, Long.parseLong(cursor, 36) - 1));
+                } catch (NumberFormatException e) {
+                    return new TransactionPage(page, null, history.lastVisibleSequence());
+                }
+            }
+            int start = Math.max(0, end - limit);
+            for (int i = end - 1; i >= start; i--) {
+                page.add(list.get(i));
+            }
+            String next = start > 0 ? Long.toString(list.get(start).getSequence(), 36) : null;
+            return new TransactionPage(page, next, history.lastVisibleSequence());
+        }
+    }
+
+    /**
+     * Các giao dịch có sequence lớn hơn lastSeenSequence (mới nhất trước)
+     */
+    public TransactionPage getSince(String accountNumber, long lastSeenSequence) {
+        History history = byAccount.get(accountNumber);
+        if (history == null) {
+            return new TransactionPage(new ArrayList<>(), null, 0);
+        }
+        synchronized (history) {
+            int from = indexAfter(history.list, lastSeenSequence);
+            int visible = history.visibleSize();
+            List<Transaction> result = new ArrayList<>(Math.max(0, visible - from));
+            for (int i = visible - 1; i >= from; i--) {
+                result.add(history.list.get(i));
+            }
+            return new TransactionPage(result, null, history.lastVisibleSequence());
+        }
+    }
+
+    /**
+     * Duyệt các giao dịch có sequence lớn hơn lastSeenSequence, từ mới nhất trở về trước
+     */
+    public void scanSince(String accountNumber, long lastSeenSequence, Visitor visitor) {
+        History history = byAccount.get(accountNumber);
+        if (history == null) {
+            return;
+        }
+        synchronized (history) {
+            int from = indexAfter(history.list, lastSeenSequence);
+            for (int i = history.visibleSize() - 1; i >= from; i--) {
+                Transaction t = history.list.get(i);
+                if (!visitor.visit(t.getSequence(), t)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sequence mới nhất của tài khoản, 0 nếu chưa có giao dịch
+     */
+    public long latestSequence(String accountNumber) {
+        History history = byAccount.get(accountNumber);
+        if (history == null) {
+            return 0;
+        }
+        synchronized (history) {
+            return history.lastVisibleSequence();
+        }
+    }
+
+    /**
+     * Sequence mới nhất của từng tài khoản có giao dịch
+     */
+    public Map<String, Long> latestSequences() {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, History> entry : byAccount.entrySet()) {
+            synchronized (entry.getValue()) {
+                result.put(entry.getKey(), entry.getValue().lastVisibleSequence());
+            }
+        }
+        return result;
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    private History historyFor(String accountNumber) {
+        return byAccount.computeIfAbsent(accountNumber, k -> new History());
+    }
+
+    private static long lastSequence(List<Transaction> list) {
+        return list.isEmpty() ? 0 : list.get(list.size() - 1).getSequence();
+    }
+
+    /**
+     * Vị trí của giao dịch đầu tiên có sequence lớn hơn sequence cho trước
+     */
+    private static int indexAfter(List<Transaction> list, long sequence) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).getSequence() <= sequence) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,834 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Nhật ký thay đổi dạng append-only (thay cho việc ghi lại toàn bộ transactions.json).
+ *
+ * Journal gồm nhiều segment trong thư mục journal/ (segment-00000001.log, ...).
+ * Cấu trúc mỗi segment:
+ *   [MAGIC 4 byte][VERSION 4 byte]
+ *   Mỗi bản ghi: [độ dài nội dung 4 byte][CRC32 4 byte][loại 1 byte][nội dung]
+ *
+ * Loại bản ghi: Transaction (giao dịch), Account (mở tài khoản), User (đăng ký),
+ * NotificationOutbox.Cursor (mốc thông báo đã gửi),
+ * AccountNumberAllocator.Reservation (khối số tài khoản đã ghi nhận),
+ * TransferPhase (bước chuyển khoản giữa hai shard), BulkTransfer (chuyển khoản hàng loạt),
+ * IdempotencyRecord (thao tác kèm idempotency key).
+ * Bản sao chỉ đọc (BankingReplica) theo dõi journal qua readChunk, chỉ nhận các bản ghi đã fsync.
+ * Số tiền được ghi dạng long đơn vị nhỏ (xem Money); giao dịch mang sequence trong lịch sử
+ * của tài khoản (xem TransactionIndex).
+ *
+ * Mỗi thao tác chỉ ghi thêm các bản ghi mới vào cuối segment hiện tại, nên chi phí ghi
+ * không phụ thuộc vào số giao dịch đã lưu. Segment được chuyển sang file mới khi vượt
+ * quá kích thước cho phép hoặc khi tạo checkpoint; segment đã được checkpoint
+ * được chuyển vào journal/archive/ và chỉ còn dùng để tra lịch sử.
+ *
+ * Độ bền dữ liệu (durability) có 3 chế độ:
+ *   FSYNC - mỗi thao tác ghi và fsync ngay, caller chờ đến khi xong
+ *   GROUP - gom các thao tác đồng thời thành một lần ghi + một lần fsync,
+ *           tất cả caller trong nhóm được trả về cùng lúc sau khi dữ liệu đã bền
+ *   ASYNC - caller trả về ngay, luồng nền ghi và fsync định kỳ
+ *           (có thể mất các thao tác cuối nếu server sập)
+ *
+ * Khi ghi hoặc fsync lỗi (đầy đĩa...), append ném IOException cho mọi caller của nhóm (trừ ASYNC,
+ * chỉ ghi log) và segment được cắt về vị trí trước nhóm đó; nếu không cắt được thì chuyển sang
+ * segment mới, để các byte ghi dở không nằm giữa các bản ghi sau này.
+ */
+public class TransactionJournal {
+    public enum Durability {
+        FSYNC, GROUP, ASYNC;
+
+        public static Durability parse(String value) {
+            if (value != null) {
+                for (Durability d : values()) {
+                    if (d.name().equalsIgnoreCase(value.trim())) {
+                        return d;
+                    }
+                }
+            }
+            return GROUP;
+        }
+    }
+
+    /**
+     * Một lần ghi đang chờ luồng flusher xử lý
+     */
+    private static class PendingWrite {
+        final byte[] bytes;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final int MAGIC = 0x524D4A4C; // "RMJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    static final byte RECORD_TRANSACTION = 1;
+    static final byte RECORD_ACCOUNT = 2;
+    static final byte RECORD_USER = 3;
+    static final byte RECORD_NOTIFIED = 4;
+    static final byte RECORD_ACCOUNT_RESERVATION = 5;
+    static final byte RECORD_TRANSFER_PHASE = 6;
+    static final byte RECORD_BULK_TRANSFER = 7;
+    static final byte RECORD_IDEMPOTENCY = 8;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final PendingWrite STOP = new PendingWrite(new byte[0]);
+
+    /**
+     * Vị trí cuối cùng đã được fsync (mọi byte trước vị trí này của segment đã bền)
+     */
+    private static class DurablePosition {
+        final int segmentId;
+        final long offset;
+
+        DurablePosition(int segmentId, long offset) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Xử lý từng bản ghi khi đọc lại journal
+     */
+    public interface RecordHandler {
+        void onRecord(Object record);
+    }
+
+    private final File directory;
+    private final File archiveDirectory;
+    private final long segmentBytes;
+    private final Durability durability;
+    private final long asyncFlushMillis;
+    private final BlockingQueue<PendingWrite> pending = new LinkedBlockingQueue<>();
+    private final Object writeLock = new Object();
+    private volatile FileChannel channel;
+    private int currentSegment;
+    private volatile DurablePosition durable = new DurablePosition(0, HEADER_SIZE);
+    private Thread flusher;
+    private volatile boolean running;
+
+    public TransactionJournal(File directory) {
+        this(directory, Durability.GROUP, 0, 16L << 20);
+    }
+
+    public TransactionJournal(File directory, Durability durability, long asyncFlushMillis, long segmentBytes) {
+        this.directory = directory;
+        this.archiveDirectory = new File(directory, "archive");
+        this.durability = durability;
+        this.asyncFlushMillis = asyncFlushMillis;
+        this.segmentBytes = segmentBytes;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Các segment đang hoạt động (chưa lưu trữ), theo thứ tự tăng dần
+     */
+    public List<File> segments() {
+        return listSegments(directory);
+    }
+
+    /**
+     * Các segment đã được checkpoint và lưu trữ, theo thứ tự tăng dần
+     */
+    public List<File> archivedSegments() {
+        return listSegments(archiveDirectory);
+    }
+
+    /**
+     * Mở segment cuối cùng để ghi tiếp (tạo mới nếu chưa có).
+     * Bản ghi cuối bị ghi dở (server tắt đột ngột) sẽ bị cắt bỏ.
+     * Các segment cần được replay trước khi gọi hàm này.
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+        List<File> existing = segments();
+        if (existing.isEmpty()) {
+            List<File> archived = archivedSegments();
+            currentSegment = archived.isEmpty() ? 1 : segmentId(archived.get(archived.size() - 1)) + 1;
+            openSegment(currentSegment);
+        } else {
+            File last = existing.get(existing.size() - 1);
+            long validLength = replay(last, null);
+            currentSegment = segmentId(last);
+            openSegment(currentSegment);
+            if (channel.size() > validLength) {
+                System.err.println("Journal bị ghi dở, cắt bỏ " + (channel.size() - validLength) + " byte cuối");
+                channel.truncate(validLength);
+                channel.position(validLength);
+                durable = new DurablePosition(currentSegment, validLength);
+            }
+        }
+
+        if (durability != Durability.FSYNC) {
+            running = true;
+            flusher = new Thread(this::flushLoop, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Đóng segment hiện tại và chuyển sang segment mới.
+     * @return số thứ tự của segment cuối cùng đã đóng (mọi segment <= giá trị này không còn thay đổi)
+     */
+    public int roll() throws IOException {
+        synchronized (writeLock) {
+            ensureOpen();
+            if (channel.size() > HEADER_SIZE) {
+                rollLocked();
+            }
+            return currentSegment - 1;
+        }
+    }
+
+    /**
+     * Chuyển các segment đã được checkpoint vào thư mục lưu trữ
+     */
+    public void archiveUpTo(int segmentId) throws IOException {
+        Files.createDirectories(archiveDirectory.toPath());
+        for (File segment : segments()) {
+            if (segmentId(segment) <= segmentId) {
+                Files.move(segment.toPath(), new File(archiveDirectory, segment.getName()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Ghi thêm các bản ghi (Transaction, Account, User) của một thao tác bằng một lần ghi duy nhất.
+     * Với FSYNC và GROUP, hàm chỉ trả về khi các bản ghi đã được fsync xuống đĩa.
+     */
+    public void append(List<?> records) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128 * records.size());
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (Object record : records) {
+            writeRecord(out, encode(record));
+        }
+        out.flush();
+        byte[] bytes = buffer.toByteArray();
+
+        ensureOpen();
+        if (durability == Durability.FSYNC) {
+            synchronized (writeLock) {
+                long start = channel.position();
+                try {
+                    writeFully(bytes);
+                    channel.force(false);
+                } catch (IOException e) {
+                    discardFrom(start);
+                    throw e;
+                }
+                markDurable();
+                rollIfFull();
+            }
+            return;
+        }
+
+        PendingWrite write = new PendingWrite(bytes);
+        pending.add(write);
+        if (durability == Durability.GROUP) {
+            awaitDurable(write);
+        }
+    }
+
+    /**
+     * Ghi thêm các bản ghi không cần chờ fsync (mốc thông báo: mất bản ghi chỉ làm thông báo bị gửi lại).
+     * Với GROUP và ASYNC, bản ghi được ghi cùng nhóm kế tiếp của luồng flusher; với FSYNC, bản ghi được ghi
+     * ngay nhưng chỉ bền cùng lần fsync tiếp theo. Caller không chờ ghi xong.
+     */
+    public void appendDeferred(List<?> records) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * records.size());
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (Object record : records) {
+            writeRecord(out, encode(record));
+        }
+        out.flush();
+        byte[] bytes = buffer.toByteArray();
+
+        ensureOpen();
+        if (durability == Durability.FSYNC) {
+            synchronized (writeLock) {
+                long start = channel.position();
+                try {
+                    writeFully(bytes);
+                } catch (IOException e) {
+                    discardFrom(start);
+                    throw e;
+                }
+            }
+            return;
+        }
+        pending.add(new PendingWrite(bytes));
+    }
+
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = flusher;
+            flusher = null;
+        }
+        if (t != null) {
+            // Không dùng interrupt vì FileChannel sẽ tự đóng khi luồng bị ngắt giữa lúc ghi
+            pending.add(STOP);
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    flushPending();
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Lỗi đóng journal: " + e.getMessage());
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Luồng flusher: lấy tất cả các lần ghi đang chờ, ghi liên tiếp,
+     * fsync một lần rồi báo hoàn tất cho toàn bộ nhóm
+     */
+    private void flushLoop() {
+        while (running) {
+            List<PendingWrite> batch = new ArrayList<>();
+            try {
+                batch.add(pending.take());
+                if (durability == Durability.ASYNC && asyncFlushMillis > 0 && running) {
+                    Thread.sleep(asyncFlushMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pending.drainTo(batch);
+            batch.remove(STOP);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        }
+    }
+
+    private void flushPending() {
+        List<PendingWrite> batch = new ArrayList<>();
+        pending.drainTo(batch);
+        batch.remove(STOP);
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        try {
+            synchronized (writeLock) {
+                long start = channel.position();
+                try {
+                    for (PendingWrite write : batch) {
+                        writeFully(write.bytes);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    discardFrom(start);
+                    throw e;
+                }
+                markDurable();
+                rollIfFull();
+            }
+            for (PendingWrite write : batch) {
+                write.done.complete(null);
+            }
+        } catch (IOException e) {
+            System.err.println("Lỗi ghi journal: " + e.getMessage());
+            for (PendingWrite write : batch) {
+                write.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Bỏ phần ghi dở của một lần ghi lỗi: cắt segment về vị trí trước lần ghi,
+     * không cắt được thì đóng segment và ghi tiếp sang segment mới
+     * (khi replay, segment cũ dừng ở bản ghi hợp lệ cuối cùng). Gọi khi giữ writeLock.
+     */
+    private void discardFrom(long start) {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+            channel.force(false);
+            markDurable();
+            return;
+        } catch (IOException e) {
+            System.err.println("Không cắt được phần ghi dở của journal: " + e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Segment bị bỏ
+        }
+        try {
+            currentSegment++;
+            openSegment(currentSegment);
+        } catch (IOException e) {
+            System.err.println("Không mở được segment journal mới: " + e.getMessage());
+        }
+    }
+
+    private void awaitDurable(PendingWrite write) throws IOException {
+        try {
+            write.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bị ngắt khi chờ ghi journal", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("Journal chưa được mở");
+        }
+    }
+
+    private void writeFully(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Chuyển segment khi đầy. Các bản ghi đã bền nên lỗi khi chuyển chỉ được ghi log
+     * (không báo lỗi cho caller), lần ghi sau thử lại
+     */
+    private void rollIfFull() {
+        try {
+            if (channel.size() >= segmentBytes) {
+                rollLocked();
+            }
+        } catch (IOException e) {
+            System.err.println("Lỗi chuyển segment journal: " + e.getMessage());
+        }
+    }
+
+    private void rollLocked() throws IOException {
+        channel.force(false);
+        channel.close();
+        currentSegment++;
+        openSegment(currentSegment);
+    }
+
+    private void openSegment(int segmentId) throws IOException {
+        File file = segmentFile(directory, segmentId);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(false);
+        }
+        channel.position(channel.size());
+        markDurable();
+    }
+
+    private void markDurable() throws IOException {
+        durable = new DurablePosition(currentSegment, channel.size());
+    }
+
+    static int segmentId(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static File segmentFile(File dir, int segmentId) {
+        return new File(dir, String.format("%s%08d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+    }
+
+    private static List<File> listSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Đọc các bản ghi hợp lệ của một segment.
+     * @return vị trí kết thúc của bản ghi hợp lệ cuối cùng
+     */
+    public static long replay(File segment, RecordHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(segment), 1 << 16))) {
+            long fileLength = segment.length();
+            if (fileLength < HEADER_SIZE) {
+                return HEADER_SIZE;
+            }
+            if (in.readInt() != MAGIC) {
+                throw new IOException("File " + segment.getName() + " không phải journal hợp lệ");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Không hỗ trợ phiên bản journal: " + version);
+            }
+
+            long position = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (position + RECORD_HEADER_SIZE <= fileLength) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || position + RECORD_HEADER_SIZE + length > fileLength) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (handler != null) {
+                    Object record = decode(new DataInputStream(new ByteArrayInputStream(body)));
+                    if (record != null) {
+                        handler.onRecord(record);
+                    }
+                }
+                position += RECORD_HEADER_SIZE + length;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Đọc song song nhiều segment trên ForkJoinPool chung.
+     * Mỗi segment là một khối độc lập; kết quả giữ đúng thứ tự các segment.
+     */
+    public static List<List<Object>> readSegments(List<File> segments) throws IOException {
+        try {
+            return segments.parallelStream().map(segment -> {
+                List<Object> records = new ArrayList<>();
+                try {
+                    replay(segment, records::add);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return records;
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Tìm segment theo số thứ tự (đang hoạt động hoặc đã lưu trữ), null nếu không có
+     */
+    public File findSegment(int segmentId) {
+        File file = segmentFile(directory, segmentId);
+        if (file.exists()) {
+            return file;
+        }
+        file = segmentFile(archiveDirectory, segmentId);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Đọc các bản ghi nguyên vẹn của một segment từ vị trí offset, tối đa khoảng maxBytes
+     * (luôn có ít nhất một bản ghi nếu còn). Dùng cho bản sao chỉ đọc theo dõi journal (xem BankingReplica).
+     * Chỉ trả về dữ liệu đã fsync, nên bản sao không thấy thao tác có thể mất khi server chính sập.
+     */
+    public JournalChunk readChunk(int segmentId, long offset, int maxBytes) throws IOException {
+        DurablePosition position = durable;
+        if (segmentId > position.segmentId) {
+            return new JournalChunk(segmentId, VERSION, offset, offset, new byte[0], false, true);
+        }
+        File segment = findSegment(segmentId);
+        if (segment == null) {
+            // Segment không còn (hoặc chưa từng có): chuyển sang segment tiếp theo
+            return new JournalChunk(segmentId, VERSION, offset, offset, new byte[0],
+                    segmentId < position.segmentId, segmentId == position.segmentId);
+        }
+        try {
+            return readChunk(segment, segmentId, offset, maxBytes, position);
+        } catch (FileNotFoundException e) {
+            // Segment vừa được chuyển vào thư mục lưu trữ
+            return readChunk(findSegment(segmentId), segmentId, offset, maxBytes, position);
+        }
+    }
+
+    private static JournalChunk readChunk(File segment, int segmentId, long offset, int maxBytes,
+                                          DurablePosition position) throws IOException {
+        if (segment == null) {
+            throw new FileNotFoundException("Không tìm thấy segment " + segmentId);
+        }
+        boolean sealed = segmentId < position.segmentId;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            long end = sealed ? file.length() : Math.min(file.length(), position.offset);
+            if (end < HEADER_SIZE) {
+                return new JournalChunk(segmentId, VERSION, offset, offset, new byte[0], sealed, !sealed);
+            }
+            if (file.readInt() != MAGIC) {
+                throw new IOException("File " + segment.getName() + " không phải journal hợp lệ");
+            }
+            int version = file.readInt();
+            if (version != VERSION) {
+                throw new IOException("Không hỗ trợ phiên bản journal: " + version);
+            }
+            long start = Math.max(offset, HEADER_SIZE);
+            file.seek(start);
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream(Math.min(maxBytes, 1 << 16));
+            long pos = start;
+            boolean limited = false;
+            CRC32 crc = new CRC32();
+            while (pos + RECORD_HEADER_SIZE <= end) {
+                if (data.size() >= maxBytes) {
+                    limited = true;
+                    break;
+                }
+                int length = file.readInt();
+                int checksum = file.readInt();
+                if (length <= 0 || pos + RECORD_HEADER_SIZE + length > end) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                file.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                writeRecord(new DataOutputStream(data), withoutCredentials(body));
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            // Segment đã đóng được đọc hết (hoặc gặp bản ghi hỏng như khi replay) thì chuyển segment tiếp theo
+            return new JournalChunk(segmentId, version, start, pos, data.toByteArray(),
+                    sealed && !limited, !sealed && !limited);
+        }
+    }
+
+    /**
+     * Bản ghi gửi cho bản sao: bản ghi người dùng được ghi lại với mật khẩu rỗng, các bản ghi khác giữ nguyên
+     */
+    private static byte[] withoutCredentials(byte[] body) throws IOException {
+        if (body[0] != RECORD_USER) {
+            return body;
+        }
+        User user = (User) decode(new DataInputStream(new ByteArrayInputStream(body)));
+        return encode(new User(user.getUsername(), "", user.getAccountNumber(), user.getFullName()));
+    }
+
+    /**
+     * Giải mã các bản ghi của một đoạn journal (bỏ qua loại bản ghi không biết)
+     */
+    public static List<Object> decodeChunk(JournalChunk chunk) throws IOException {
+        if (chunk.getVersion() != VERSION) {
+            throw new IOException("Không hỗ trợ phiên bản journal: " + chunk.getVersion());
+        }
+        List<Object> records = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(chunk.getData()));
+        while (in.available() > 0) {
+            int length = in.readInt();
+            in.readInt(); // CRC đã được kiểm tra khi đọc
+            byte[] body = new byte[length];
+            in.readFully(body);
+            Object record = decode(new DataInputStream(new ByteArrayInputStream(body)));
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        out.writeInt(body.length);
+        out.writeInt((int) crc.getValue());
+        out.write(body);
+    }
+
+    private static byte[] encode(Object record) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(buffer);
+        if (record instanceof Transaction) {
+            Transaction t = (Transaction) record;
+            out.writeByte(RECORD_TRANSACTION);
+            writeTransaction(out, t);
+        } else if (record instanceof Account) {
+            Account a = (Account) record;
+            out.writeByte(RECORD_ACCOUNT);
+            writeString(out, a.getAccountNumber());
+            out.writeLong(a.getBalance());
+        } else if (record instanceof User) {
+            User u = (User) record;
+            out.writeByte(RECORD_USER);
+            writeString(out, u.getUsername());
+            writeString(out, u.getPassword());
+            writeString(out, u.getAccountNumber());
+            writeString(out, u.getFullName());
+        } else if (record instanceof NotificationOutbox.Cursor) {
+            NotificationOutbox.Cursor c = (NotificationOutbox.Cursor) record;
+            out.writeByte(RECORD_NOTIFIED);
+            writeString(out, c.getAccountNumber());
+            out.writeLong(c.getSequence());
+        } else if (record instanceof AccountNumberAllocator.Reservation) {
+            out.writeByte(RECORD_ACCOUNT_RESERVATION);
+            out.writeLong(((AccountNumberAllocator.Reservation) record).getHighWaterMark());
+        } else if (record instanceof TransferPhase) {
+            TransferPhase p = (TransferPhase) record;
+            out.writeByte(RECORD_TRANSFER_PHASE);
+            out.writeByte(p.getPhase());
+            writeString(out, p.getTransferId());
+            out.writeBoolean(p.getTransaction() != null);
+            if (p.getTransaction() != null) {
+                writeTransaction(out, p.getTransaction());
+            }
+        } else if (record instanceof BulkTransfer) {
+            BulkTransfer b = (BulkTransfer) record;
+            out.writeByte(RECORD_BULK_TRANSFER);
+            writeTransaction(out, b.getDebit());
+            out.writeInt(b.getCredits().size());
+            for (Transaction t : b.getCredits()) {
+                writeTransaction(out, t);
+            }
+        } else if (record instanceof IdempotencyRecord) {
+            IdempotencyRecord r = (IdempotencyRecord) record;
+            out.writeByte(RECORD_IDEMPOTENCY);
+            writeString(out, r.getKey());
+            writeString(out, r.getRequest());
+            writeString(out, r.getResult());
+            out.writeLong(r.getCreatedAt());
+            out.writeInt(r.getTransactions().size());
+            for (Transaction t : r.getTransactions()) {
+                writeTransaction(out, t);
+            }
+        } else {
+            throw new IOException("Không hỗ trợ ghi bản ghi: " + record);
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static Object decode(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case RECORD_TRANSACTION:
+                return readTransaction(in);
+            case RECORD_ACCOUNT:
+                return new Account(readString(in), in.readLong());
+            case RECORD_USER:
+                return new User(readString(in), readString(in), readString(in), readString(in));
+            case RECORD_NOTIFIED:
+                return new NotificationOutbox.Cursor(readString(in), in.readLong());
+            case RECORD_ACCOUNT_RESERVATION:
+                return new AccountNumberAllocator.Reservation(in.readLong());
+            case RECORD_TRANSFER_PHASE: {
+                byte phase = in.readByte();
+                String transferId = readString(in);
+                Transaction t = in.readBoolean() ? readTransaction(in) : null;
+                return new TransferPhase(phase, transferId, t);
+            }
+            case RECORD_BULK_TRANSFER: {
+                Transaction debit = readTransaction(in);
+                int count = in.readInt();
+                List<Transaction> credits = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    credits.add(readTransaction(in));
+                }
+                return new BulkTransfer(debit, credits);
+            }
+            case RECORD_IDEMPOTENCY: {
+                String key = readString(in);
+                String request = readString(in);
+                String result = readString(in);
+                long createdAt = in.readLong();
+                int count = in.readInt();
+                List<Transaction> transactions = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    transactions.add(readTransaction(in));
+                }
+                return new IdempotencyRecord(key, request, result, createdAt, transactions);
+            }
+            default:
+                // Loại bản ghi không biết (phiên bản mới hơn), bỏ qua
+                return null;
+        }
+    }
+
+    private static void writeTransaction(DataOutputStream out, Transaction t) throws IOException {
+        writeString(out, t.getTransactionId());
+        writeString(out, t.getAccountNumber());
+        writeString(out, t.getTransactionType());
+        out.writeLong(t.getAmount());
+        writeString(out, t.getDescription());
+        writeString(out, t.getRelatedAccount());
+        out.writeLong(t.getTimestamp().getTime());
+        out.writeLong(t.getSequence());
+    }
+
+    private static Transaction readTransaction(DataInputStream in) throws IOException {
+        Transaction t = new Transaction();
+        t.setTransactionId(readString(in));
+        t.setAccountNumber(readString(in));
+        t.setTransactionType(readString(in));
+        t.setAmount(in.readLong());
+        t.setDescription(readString(in));
+        t.setRelatedAccount(readString(in));
+        t.setTimestamp(new Date(in.readLong()));
+        t.setSequence(in.readLong());
+        return t;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Một trang lịch sử giao dịch (mới nhất trước) kèm cursor để lấy trang tiếp theo.
+ * sequence là số thứ tự của giao dịch mới nhất của tài khoản tại thời điểm đọc,
+ * dùng làm mốc cho getTransactionsSince. Sequence và cursor được lưu cùng giao dịch trong journal
+ * (xem TransactionIndex) nên vẫn dùng được sau khi server khởi động lại hoặc khi đọc từ bản sao.
+ */
+public class TransactionPage implements Serializable {
+    private List<Transaction> transactions;
+    private String nextCursor; // null nếu đã hết lịch sử
+    private long sequence;
+    
+    public TransactionPage() {
+    }
+    
+    public TransactionPage(List<Transaction> transactions, String nextCursor, long sequence) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+        this.sequence = sequence;
+    }
+    
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+    
+    public void setTransactions(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
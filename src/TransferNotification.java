@@ -0,0 +1,85 @@
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Thông báo một khoản chuyển khoản đến, dùng cho callback theo lô (BankingBatchCallback).
+ * sequence là số thứ tự của giao dịch nhận tiền trong lịch sử tài khoản nhận (xem TransactionIndex).
+ */
+public class TransferNotification implements Serializable {
+    private long sequence;
+    private String fromAccount;
+    private String toAccount;
+    private double amount;
+    private String content;
+    private double newBalance;
+    private Date timestamp;
+    
+    public TransferNotification() {
+    }
+    
+    public TransferNotification(long sequence, String fromAccount, String toAccount, double amount, String content, double newBalance, Date timestamp) {
+        this.sequence = sequence;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.content = content;
+        this.newBalance = newBalance;
+        this.timestamp = timestamp;
+    }
+    
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+    
+    public String getFromAccount() {
+        return fromAccount;
+    }
+    
+    public void setFromAccount(String fromAccount) {
+        this.fromAccount = fromAccount;
+    }
+    
+    public String getToAccount() {
+        return toAccount;
+    }
+    
+    public void setToAccount(String toAccount) {
+        this.toAccount = toAccount;
+    }
+    
+    public double getAmount() {
+        return amount;
+    }
+    
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+    
+    public String getContent() {
+        return content;
+    }
+    
+    public void setContent(String content) {
+        this.content = content;
+    }
+    
+    public double getNewBalance() {
+        return newBalance;
+    }
+    
+    public void setNewBalance(double newBalance) {
+        this.newBalance = newBalance;
+    }
+    
+    public Date getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(Date timestamp) {
+        this.timestamp = timestamp;
+    }
+}
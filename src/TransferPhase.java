@@ -0,0 +1,50 @@
+/**
+ * Bản ghi journal của một bước chuyển khoản giữa hai shard (giao thức hai pha, xem BankingRouter).
+ *
+ *   PREPARE_DEBIT  - shard gốc đã trừ tiền (giữ tiền) cho giao dịch, transaction là chiều TRANSFER_OUT
+ *   PREPARE_CREDIT - shard nhận đã xác nhận tài khoản nhận, transaction là chiều TRANSFER_IN
+ *                    (chưa cộng tiền, chỉ lưu lại để dùng khi commit)
+ *   COMMIT         - shard nhận cộng tiền (transaction là chiều TRANSFER_IN), shard gốc không có transaction
+ *   ABORT          - shard gốc hoàn tiền (transaction là TRANSFER_REVERSAL), shard nhận không có transaction
+ *
+ * Mỗi bước là một bản ghi duy nhất nên số dư và trạng thái giao dịch không thể lệch nhau khi server sập.
+ */
+public class TransferPhase {
+    public static final byte PREPARE_DEBIT = 1;
+    public static final byte PREPARE_CREDIT = 2;
+    public static final byte COMMIT = 3;
+    public static final byte ABORT = 4;
+
+    final byte phase;
+    final String transferId;
+    final Transaction transaction; // có thể null
+
+    public TransferPhase(byte phase, String transferId, Transaction transaction) {
+        this.phase = phase;
+        this.transferId = transferId;
+        this.transaction = transaction;
+    }
+
+    public byte getPhase() {
+        return phase;
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Giao dịch của bản ghi làm thay đổi số dư và được đưa vào lịch sử
+     */
+    public Transaction appliedTransaction() {
+        return phase == PREPARE_CREDIT ? null : transaction;
+    }
+
+    public boolean isPrepare() {
+        return phase == PREPARE_DEBIT || phase == PREPARE_CREDIT;
+    }
+}